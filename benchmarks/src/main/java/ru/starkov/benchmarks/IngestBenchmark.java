@@ -0,0 +1,61 @@
+package ru.starkov.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.starkov.service.LongUnionFind;
+import ru.starkov.service.MappedDataExtractor;
+import ru.starkov.service.ValidDataExtractor;
+import ru.starkov.service.metrics.ExecutionMetrics;
+import ru.starkov.service.parser.CellCodec;
+import ru.starkov.service.parser.LongRowParser;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading and validating an input file with every reader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IngestBenchmark {
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Benchmark
+    public List<List<Long>> bufferedBoxed(LngDataset dataset) throws IOException {
+        return longExtractor().getValidData(dataset.file);
+    }
+
+    @Benchmark
+    public List<long[]> bufferedPrimitive(LngDataset dataset) throws IOException {
+        return longExtractor().getValidData(dataset.file, LongUnionFind::toRow);
+    }
+
+    @Benchmark
+    public List<long[]> mapped(LngDataset dataset) throws IOException {
+        return new MappedDataExtractor<>(LongRowParser::new, threads).getValidData(dataset.file);
+    }
+
+    @Benchmark
+    public int streaming(LngDataset dataset) throws IOException {
+        return new MappedDataExtractor<>(LongRowParser::new, threads).getValidRowList(dataset.file).size();
+    }
+
+    private ValidDataExtractor<Long> longExtractor() {
+        return new ValidDataExtractor<>(CellCodec.longs(), threads, new ExecutionMetrics());
+    }
+}
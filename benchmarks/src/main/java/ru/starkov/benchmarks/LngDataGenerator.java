@@ -0,0 +1,68 @@
+package ru.starkov.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic input files in the format of the {@code lng} task data:
+ * lines of quoted 11-digit numbers separated by semicolons, with some empty cells.
+ * <p>
+ * The collision rate is the probability that a non-empty cell takes its value from a small shared
+ * pool of the column instead of a fresh one, which controls how many rows end up in common groups.
+ * A small share of lines is malformed, so validation is exercised as well.
+ */
+public final class LngDataGenerator {
+
+    private static final double EMPTY_CELL_RATE = 0.2;
+    private static final double INVALID_LINE_RATE = 0.001;
+    private static final long MIN_VALUE = 10_000_000_000L;
+    private static final long MAX_VALUE = 99_999_999_999L;
+
+    private LngDataGenerator() {
+    }
+
+    /**
+     * Writes a dataset into a new file in the given directory.
+     *
+     * @param directory     the directory to create the file in
+     * @param rows          the number of lines
+     * @param columns       the maximum number of cells in a line; every line has between one and this many cells
+     * @param collisionRate the probability that a non-empty cell reuses a value shared with other lines
+     * @param seed          the seed of the random generator, so that datasets are reproducible
+     * @return the path of the created file
+     * @throws IOException if the file cannot be written
+     */
+    public static Path generate(Path directory, int rows, int columns, double collisionRate, long seed) throws IOException {
+        final var random = new SplittableRandom(seed);
+        final int poolSize = Math.max(1, (int) (rows * collisionRate / 4));
+        final var file = Files.createTempFile(directory, "lng-" + rows + "x" + columns + "-", ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            final var line = new StringBuilder();
+            for (int row = 0; row < rows; row++) {
+                line.setLength(0);
+                final int cells = 1 + random.nextInt(columns);
+                for (int col = 0; col < cells; col++) {
+                    if (col > 0) {
+                        line.append(';');
+                    }
+                    line.append('"');
+                    if (random.nextDouble() >= EMPTY_CELL_RATE) {
+                        line.append(random.nextDouble() < collisionRate
+                                ? MIN_VALUE + col * (long) poolSize + random.nextInt(poolSize)
+                                : random.nextLong(MIN_VALUE, MAX_VALUE));
+                    }
+                    line.append('"');
+                }
+                if (random.nextDouble() < INVALID_LINE_RATE) {
+                    line.append("\"x");
+                }
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+}
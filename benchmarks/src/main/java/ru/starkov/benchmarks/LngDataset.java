@@ -0,0 +1,45 @@
+package ru.starkov.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A synthetic dataset generated once per trial into a temporary file.
+ * <p>
+ * The size and shape are set through JMH parameters, for example
+ * {@code -p rows=10000000 -p columns=10 -p collisionRate=0.3}.
+ */
+@State(Scope.Benchmark)
+public class LngDataset {
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    @Param({"3"})
+    public int columns;
+
+    @Param({"0.1"})
+    public double collisionRate;
+
+    public File file;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        final Path directory = Path.of(System.getProperty("java.io.tmpdir"));
+        file = LngDataGenerator.generate(directory, rows, columns, collisionRate, 42L).toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,69 @@
+package ru.starkov.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.starkov.infrastructure.impl.LocalPathFileWriter;
+import ru.starkov.model.DataType;
+import ru.starkov.service.DynamicTypeDetector;
+import ru.starkov.service.LongUnionFind;
+import ru.starkov.service.MappedDataExtractor;
+import ru.starkov.service.parser.LongRowParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures type detection and writing the grouped rows to the output file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class OutputBenchmark {
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private List<List<long[]>> groups;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void group(LngDataset dataset) throws IOException {
+        groups = new LongUnionFind(new MappedDataExtractor<>(LongRowParser::new).getValidData(dataset.file))
+                .groupValues();
+        output = Files.createTempFile("output-", ".txt");
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public DataType detectType(LngDataset dataset) throws IOException {
+        return DynamicTypeDetector.determineDataType(dataset.file);
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        new LocalPathFileWriter<long[]>(null, threads).writeToTxtFile(groups, output.toString(), Duration.ZERO, DataType.LONG);
+        return Files.size(output);
+    }
+}
@@ -0,0 +1,69 @@
+package ru.starkov.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.starkov.model.DataType;
+import ru.starkov.service.IsNotEmptyFunctionProvider;
+import ru.starkov.service.LongUnionFind;
+import ru.starkov.service.MappedDataExtractor;
+import ru.starkov.service.UnionFind;
+import ru.starkov.service.parser.LongRowParser;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures linking rows into groups and ordering the groups, on rows read once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class UnionFindBenchmark {
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private List<long[]> rows;
+    private List<List<Long>> boxedRows;
+    private LongUnionFind linked;
+
+    @Setup(Level.Trial)
+    public void read(LngDataset dataset) throws IOException {
+        rows = new MappedDataExtractor<>(LongRowParser::new).getValidData(dataset.file);
+        boxedRows = rows.stream()
+                .map(row -> Arrays.stream(row).boxed().toList())
+                .toList();
+        linked = new LongUnionFind(rows, threads);
+    }
+
+    @Benchmark
+    public int linkBoxed() {
+        return new UnionFind<>(boxedRows, IsNotEmptyFunctionProvider.getIsNotEmptyPredicate(DataType.LONG))
+                .getComponentCount();
+    }
+
+    @Benchmark
+    public int linkPrimitive() {
+        return new LongUnionFind(rows, threads).getComponentCount();
+    }
+
+    @Benchmark
+    public List<List<long[]>> groupValues() {
+        return linked.groupValues();
+    }
+}
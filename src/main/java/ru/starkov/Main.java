@@ -1,86 +1,294 @@
 package ru.starkov;
 
+import ru.starkov.config.CommandLineOptions;
+import ru.starkov.infrastructure.impl.HttpGroupingServer;
 import ru.starkov.infrastructure.impl.LocalFileLoader;
 import ru.starkov.infrastructure.impl.LocalPathFileWriter;
 import ru.starkov.model.DataType;
+import ru.starkov.model.ReaderMode;
+import ru.starkov.model.TypeProfile;
+import ru.starkov.service.AbstractUnionFind;
+import ru.starkov.service.ColumnarFile;
+import ru.starkov.service.DoubleUnionFind;
 import ru.starkov.service.DynamicTypeDetector;
+import ru.starkov.service.GroupQueryIndex;
+import ru.starkov.service.IntUnionFind;
 import ru.starkov.service.IsNotEmptyFunctionProvider;
+import ru.starkov.service.LongUnionFind;
+import ru.starkov.service.MappedDataExtractor;
+import ru.starkov.service.PrimitiveUnionFind;
 import ru.starkov.service.UnionFind;
+import ru.starkov.service.UnionFindSnapshot;
 import ru.starkov.service.ValidDataExtractor;
+import ru.starkov.service.collection.StringDictionary;
+import ru.starkov.service.metrics.ExecutionMetrics;
+import ru.starkov.service.metrics.ExecutionMetrics.Counter;
+import ru.starkov.service.metrics.ExecutionMetrics.Phase;
+import ru.starkov.service.parser.CellCodec;
+import ru.starkov.service.parser.DoubleRowParser;
+import ru.starkov.service.parser.LongRowParser;
+import ru.starkov.service.parser.MixedRowParser;
+import ru.starkov.service.parser.RowParser;
+import ru.starkov.service.parser.StringRowParser;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.LocalTime;
-import java.util.function.Function;
-import java.util.function.Predicate;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 
 public class Main {
 
     public static void main(String[] args) throws IOException {
+        final var options = CommandLineOptions.parse(args);
+        if (options.servePort() != CommandLineOptions.NOT_SERVING) {
+            serve(options);
+            return;
+        }
+        if (options.findValue() != null) {
+            find(options);
+            return;
+        }
+        run(options, Path.of(options.outputPath()));
+    }
+
+    private static void find(CommandLineOptions options) throws IOException {
+        final var index = GroupQueryIndex.open(Path.of(options.indexPath()));
+        final int group = index.findGroup(options.findColumn(), options.findValue());
+        if (group == GroupQueryIndex.NOT_FOUND) {
+            System.out.printf("No group contains %s in column %d%n", options.findValue(), options.findColumn() + 1);
+            return;
+        }
+        final var dataType = index.dataType();
+        if (dataType == DataType.DOUBLE) {
+            new LocalPathFileWriter<double[]>().writeGroup(System.out, group + 1, index.groupRows(group, double[].class), dataType);
+        } else {
+            new LocalPathFileWriter<long[]>().writeGroup(System.out, group + 1, index.groupRows(group, long[].class), dataType);
+        }
+    }
+
+    private static void serve(CommandLineOptions options) throws IOException {
+        final var server = new HttpGroupingServer(options.servePort(), options.workers(), options.cacheSize(), Main::run);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.printf("Error stopping server: %s%n", e.getMessage());
+            }
+        }));
+        System.out.printf("Accepting grouping jobs on http://localhost:%d/group%n", server.port());
+    }
+
+    private static void run(CommandLineOptions options, Path outputFile) throws IOException {
         final var startTime = LocalTime.now();
 
         final var fileLoader = new LocalFileLoader();
-        final var file = fileLoader.loadFile(args[0]);
+        final var file = fileLoader.loadFile(options.filePath());
 
-        final var dataType = DynamicTypeDetector.determineDataType(file);
+        final var metrics = new ExecutionMetrics();
+        final TypeProfile typeProfile = metrics.measure(
+                Phase.DETECT_TYPE,
+                () -> DynamicTypeDetector.detect(file, options.typeSampleLines(), options.threads())
+        );
+        final var dataType = typeProfile.dataType();
+        metrics.attribute("dataType", dataType);
+        metrics.attribute("columnTypes", typeProfile.columnTypes());
+        metrics.attribute("typeSampleLines", typeProfile.sampledLines());
+        metrics.attribute("readerMode", options.readerMode());
+        metrics.attribute("threads", options.threads());
+
+        if (options.convertPath() != null) {
+            convert(file, options, typeProfile);
+            return;
+        }
 
         switch (dataType) {
-            case STRING -> processData(
-                    file,
-                    startTime,
-                    dataType,
-                    s -> s.replaceAll("^\"|\"$", ""),
-                    s -> !s.isEmpty()
-            );
-            case LONG -> processData(
-                    file,
-                    startTime,
-                    dataType,
-                    s -> s.isEmpty() ? 0L : Long.parseLong(s),
-                    s -> s.matches("^\"\\d*\"$")
-            );
-            case DOUBLE -> processData(
-                    file,
-                    startTime,
-                    dataType,
-                    s -> s.isEmpty() ? 0.0 : Double.parseDouble(s),
-                    s -> s.matches("^\"\\d+(\\.\\d+\"$)?")
-            );
+            case STRING -> processData(file, options, outputFile, metrics, startTime, typeProfile, CellCodec.strings());
+            case LONG -> processData(file, options, outputFile, metrics, startTime, typeProfile, CellCodec.longs());
+            case DOUBLE -> {
+                if (typeProfile.isMixed()) {
+                    processData(file, options, outputFile, metrics, startTime, typeProfile, CellCodec.mixed(typeProfile.columnTypes()));
+                } else {
+                    processData(file, options, outputFile, metrics, startTime, typeProfile, CellCodec.doubles());
+                }
+            }
         }
     }
 
     private static <T> void processData(
             File file,
+            CommandLineOptions options,
+            Path outputFile,
+            ExecutionMetrics metrics,
             LocalTime startTime,
-            DataType dataType,
-            Function<String, T> parseFunction,
-            Predicate<String> validationPredicate
+            TypeProfile typeProfile,
+            CellCodec<T> cellCodec
+    ) throws IOException {
+        final var dataType = typeProfile.dataType();
+        final var validDataExtractor = new ValidDataExtractor<>(cellCodec, options.threads(), metrics);
+        final var buffered = options.readerMode() == ReaderMode.BUFFERED;
+        final var columnar = ColumnarFile.isColumnar(file);
+        metrics.attribute("inputFormat", columnar ? "columnar" : "text");
+        final var dictionary = new StringDictionary();
+        final AbstractUnionFind<?> unionFind = switch (dataType) {
+            case LONG -> {
+                final List<long[]> rows = columnar
+                        ? validDataExtractor.getColumnarData(file, long[].class)
+                        : buffered
+                        ? validDataExtractor.getValidData(file, LongUnionFind::toRow)
+                        : readMapped(file, options, metrics, LongRowParser::new);
+                yield options.snapshotPath() == null
+                        ? metrics.measure(Phase.UNION, () -> new LongUnionFind(rows, options.threads(), options.memoryBudget()))
+                        : appendToSnapshot(options, metrics, rows, long[].class, LongUnionFind::new);
+            }
+            case DOUBLE -> {
+                if (typeProfile.isMixed()) {
+                    yield readMixed(file, options, metrics, typeProfile, validDataExtractor);
+                }
+                final List<double[]> rows = columnar
+                        ? validDataExtractor.getColumnarData(file, double[].class)
+                        : buffered
+                        ? validDataExtractor.getValidData(file, DoubleUnionFind::toRow)
+                        : readMapped(file, options, metrics, DoubleRowParser::new);
+                yield options.snapshotPath() == null
+                        ? metrics.measure(Phase.UNION, () -> new DoubleUnionFind(rows, options.threads(), options.memoryBudget()))
+                        : appendToSnapshot(options, metrics, rows, double[].class, DoubleUnionFind::new);
+            }
+            case STRING -> {
+                if (options.snapshotPath() != null) {
+                    throw new IllegalArgumentException("Snapshots are supported for numeric data only");
+                }
+                if (options.indexPath() != null) {
+                    throw new IllegalArgumentException("Group indexes are supported for numeric data only");
+                }
+                if (buffered) {
+                    final var rows = validDataExtractor.getValidData(file);
+                    yield metrics.measure(Phase.UNION, () -> new UnionFind<>(
+                            rows,
+                            IsNotEmptyFunctionProvider.getIsNotEmptyPredicate(dataType)
+                    ));
+                }
+                final List<int[]> rows = readMapped(file, options, metrics, () -> new StringRowParser(dictionary));
+                yield metrics.measure(Phase.UNION, () -> new IntUnionFind(rows, options.threads(), options.memoryBudget()));
+            }
+        };
+        writeGroups(unionFind, options, outputFile, metrics, startTime, typeProfile, dictionary);
+    }
+
+    private static void convert(File file, CommandLineOptions options, TypeProfile typeProfile) throws IOException {
+        if (ColumnarFile.isColumnar(file)) {
+            throw new IllegalArgumentException("Input file is already in the binary columnar format: " + file);
+        }
+        if (typeProfile.isMixed()) {
+            throw new IllegalArgumentException("Files mixing integer and decimal columns cannot be converted");
+        }
+        final int rows = ColumnarFile.convert(file, Path.of(options.convertPath()), typeProfile.dataType(), options.threads());
+        System.out.printf("Converted %d rows to %s%n", rows, options.convertPath());
+    }
+
+    private static <R> PrimitiveUnionFind<R> appendToSnapshot(
+            CommandLineOptions options,
+            ExecutionMetrics metrics,
+            List<R> batch,
+            Class<R> rowType,
+            BiFunction<UnionFindSnapshot<R>, List<R>, PrimitiveUnionFind<R>> engineFactory
     ) throws IOException {
-        final var validDataExtractor = new ValidDataExtractor<>(
-                parseFunction,
-                validationPredicate
+        final var snapshotPath = Path.of(options.snapshotPath());
+        final UnionFindSnapshot<R> base = metrics.measure(
+                Phase.LOAD_SNAPSHOT,
+                () -> Files.exists(snapshotPath)
+                        ? UnionFindSnapshot.read(snapshotPath, rowType)
+                        : UnionFindSnapshot.empty(rowType)
         );
-        final var validData = validDataExtractor.getValidData(file);
-        final var unionFind = new UnionFind<>(
-                validData,
-                IsNotEmptyFunctionProvider.getIsNotEmptyPredicate(dataType)
+        final var unionFind = metrics.measure(Phase.UNION, () -> engineFactory.apply(base, batch));
+        metrics.add(Counter.DUPLICATE_ROWS, batch.size() - unionFind.getAppendedRowCount());
+        metrics.add(Counter.APPENDED_ROWS, unionFind.getAppendedRowCount());
+        metrics.add(Counter.CHANGED_COMPONENTS, unionFind.getChangedComponentCount());
+        metrics.measure(Phase.SAVE_SNAPSHOT, () -> unionFind.snapshot().write(snapshotPath));
+        return unionFind;
+    }
+
+    /**
+     * Reads a file mixing integer and decimal columns into rows of raw keys, every column being parsed by the
+     * codec of its own type, and links them as {@code long[]} rows.
+     */
+    private static LongUnionFind readMixed(
+            File file,
+            CommandLineOptions options,
+            ExecutionMetrics metrics,
+            TypeProfile typeProfile,
+            ValidDataExtractor<?> validDataExtractor
+    ) throws IOException {
+        if (options.snapshotPath() != null || options.indexPath() != null) {
+            throw new IllegalArgumentException("Snapshots and group indexes are not supported for files mixing integer and decimal columns");
+        }
+        final List<long[]> rows = options.readerMode() == ReaderMode.BUFFERED
+                ? validDataExtractor.getValidData(file, LongUnionFind::toRow)
+                : readMapped(file, options, metrics, () -> new MixedRowParser(typeProfile.columnTypes()));
+        return metrics.measure(Phase.UNION, () -> new LongUnionFind(rows, options.threads(), options.memoryBudget()));
+    }
+
+    private static <R> List<R> readMapped(
+            File file,
+            CommandLineOptions options,
+            ExecutionMetrics metrics,
+            Supplier<RowParser<R>> rowParserFactory
+    ) throws IOException {
+        final var extractor = new MappedDataExtractor<>(rowParserFactory, options.threads(), metrics);
+        return options.readerMode() == ReaderMode.STREAMING
+                ? extractor.getValidRowList(file)
+                : extractor.getValidData(file);
+    }
+
+    private static <R> void writeGroups(
+            AbstractUnionFind<R> unionFind,
+            CommandLineOptions options,
+            Path outputFile,
+            ExecutionMetrics metrics,
+            LocalTime startTime,
+            TypeProfile typeProfile,
+            StringDictionary dictionary
+    ) throws IOException {
+        final var dataType = typeProfile.dataType();
+        final var groupedData = metrics.measure(
+                Phase.GROUP,
+                () -> unionFind.groupValues(options.minGroupSize(), options.maxGroups())
         );
-        final var groupedData = unionFind.groupValues();
         final var endTime = LocalTime.now();
 
         final var duration = Duration.between(startTime, endTime);
-        final var fileWriter = new LocalPathFileWriter<T>();
-        fileWriter.writeToTxtFile(
+        final var fileWriter = new LocalPathFileWriter<R>(dictionary, typeProfile.columnTypes(), options.threads());
+        metrics.measure(Phase.WRITE, () -> fileWriter.writeToTxtFile(
                 groupedData,
-                "Output.txt",
+                outputFile.toString(),
                 duration,
-                dataType
-        );
+                dataType,
+                unionFind.getMultiElementComponentCount()
+        ));
         System.out.printf("Job done. Execution time: %d seconds%n", duration.getSeconds());
         System.out.printf(
                 "Number of groups with more than 1 element: %d%n",
-                groupedData.stream().filter(group -> group.size() > 1).count()
+                unionFind.getMultiElementComponentCount()
         );
+
+        if (options.indexPath() != null) {
+            metrics.measure(
+                    Phase.WRITE_INDEX,
+                    () -> GroupQueryIndex.write(Path.of(options.indexPath()), dataType, groupedData, unionFind.getDistinctKeyCount())
+            );
+        }
+
+        metrics.add(Counter.DISTINCT_KEYS, unionFind.getDistinctKeyCount());
+        if (unionFind instanceof PrimitiveUnionFind<R> primitiveUnionFind) {
+            metrics.add(Counter.SPILLED_RUNS, primitiveUnionFind.getSpilledRunCount());
+        }
+        metrics.add(Counter.COMPONENTS, unionFind.getComponentCount());
+        metrics.add(Counter.MULTI_ELEMENT_COMPONENTS, unionFind.getMultiElementComponentCount());
+        Files.writeString(ExecutionMetrics.metricsFileFor(outputFile), metrics.toJson());
     }
 }
@@ -0,0 +1,230 @@
+package ru.starkov.config;
+
+import ru.starkov.model.ReaderMode;
+import ru.starkov.service.DynamicTypeDetector;
+import ru.starkov.service.PrimitiveUnionFind;
+
+import java.util.Locale;
+
+/**
+ * Options of a single run parsed from the command line.
+ * <p>
+ * The first argument that does not start with {@code --} is the input file path. Options are given
+ * in the {@code --name=value} form:
+ * <ul>
+ *     <li>{@code --reader=mapped|streaming|buffered}: the strategy used to read the input file,
+ *     {@code mapped} by default.</li>
+ *     <li>{@code --threads=N}: the number of threads reading the input file and linking numeric rows,
+ *     the number of available processors by default.</li>
+ *     <li>{@code --snapshot=PATH}: a union-find snapshot of numeric data the input file is appended to.
+ *     The snapshot is created if it does not exist and is updated after the run. Not used by default.</li>
+ *     <li>{@code --min-group-size=N}: only groups with at least N rows are written, 1 by default.</li>
+ *     <li>{@code --top=K}: only the K largest groups are written, all groups by default.</li>
+ *     <li>{@code --convert=PATH}: the numeric input file is converted into the binary columnar format
+ *     at the given path instead of being grouped. Not used by default.</li>
+ *     <li>{@code --type-sample=N|all}: the number of lines spread over the input file from which the types
+ *     of its columns are inferred, or {@code all} to check every line; 10000 by default.</li>
+ *     <li>{@code --memory-budget=SIZE}: the memory the column value index may occupy, in bytes or with a
+ *     {@code k}, {@code m} or {@code g} suffix; a larger index is spilled to disk. Unlimited by default.</li>
+ *     <li>{@code --output=PATH}: the file the groups are written to, {@code Output.txt} by default; the metrics
+ *     are written next to it.</li>
+ *     <li>{@code --serve=PORT}: instead of grouping a file, grouping jobs are accepted over HTTP on the given
+ *     local port, {@code 0} for any free port. The input file path is not required then.</li>
+ *     <li>{@code --workers=N}: the number of jobs the server runs at the same time, 1 by default.</li>
+ *     <li>{@code --cache-size=N}: the number of results the server keeps, 16 by default.</li>
+ *     <li>{@code --index=PATH}: a group query index of numeric data written next to the output. Not written
+ *     by default.</li>
+ *     <li>{@code --find=COLUMN:VALUE}: instead of grouping a file, the group containing the value in the given
+ *     column, numbered from 1, is looked up in the index given by {@code --index}. The input file path is not
+ *     required then.</li>
+ * </ul>
+ *
+ * @param filePath        the path of the input file
+ * @param readerMode      the strategy used to read the input file
+ * @param threads         the number of threads reading the input file and linking numeric rows
+ * @param snapshotPath    the path of the snapshot the input file is appended to, or {@code null} if not used
+ * @param minGroupSize    the minimum number of rows in a written group
+ * @param maxGroups       the maximum number of written groups
+ * @param convertPath     the path the input file is converted to, or {@code null} if the input file is grouped
+ * @param typeSampleLines the number of lines sampled to infer the types, {@link Integer#MAX_VALUE} for all lines
+ * @param memoryBudget    the number of bytes the column value index may occupy in memory
+ * @param outputPath      the path of the output file
+ * @param servePort       the local port jobs are accepted on, or {@link #NOT_SERVING} if the input file is grouped
+ * @param workers         the number of jobs the server runs at the same time
+ * @param cacheSize       the number of results the server keeps
+ * @param indexPath       the path of the group query index, or {@code null} if not used
+ * @param findColumn      the index of the column looked up in the group query index, starting from {@code 0}
+ * @param findValue       the value looked up in the group query index, or {@code null} if the input file is grouped
+ */
+public record CommandLineOptions(
+        String filePath,
+        ReaderMode readerMode,
+        int threads,
+        String snapshotPath,
+        int minGroupSize,
+        int maxGroups,
+        String convertPath,
+        int typeSampleLines,
+        long memoryBudget,
+        String outputPath,
+        int servePort,
+        int workers,
+        int cacheSize,
+        String indexPath,
+        int findColumn,
+        String findValue
+) {
+
+    /**
+     * The port of a run grouping a single file instead of serving jobs.
+     */
+    public static final int NOT_SERVING = -1;
+
+    private static final String OPTION_PREFIX = "--";
+    private static final String ALL_LINES = "all";
+    private static final String DEFAULT_OUTPUT_PATH = "Output.txt";
+    private static final int MAX_PORT = 65_535;
+    private static final int DEFAULT_CACHE_SIZE = 16;
+    private static final char FIND_SEPARATOR = ':';
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args the command line arguments
+     * @return the parsed options
+     * @throws IllegalArgumentException if the input file is missing or an option is unknown or malformed
+     */
+    public static CommandLineOptions parse(String[] args) {
+        String filePath = null;
+        ReaderMode readerMode = ReaderMode.MAPPED;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String snapshotPath = null;
+        int minGroupSize = 1;
+        int maxGroups = Integer.MAX_VALUE;
+        String convertPath = null;
+        int typeSampleLines = DynamicTypeDetector.DEFAULT_SAMPLE_LINES;
+        long memoryBudget = PrimitiveUnionFind.UNLIMITED_MEMORY;
+        String outputPath = DEFAULT_OUTPUT_PATH;
+        int servePort = NOT_SERVING;
+        int workers = 1;
+        int cacheSize = DEFAULT_CACHE_SIZE;
+        String indexPath = null;
+        int findColumn = 0;
+        String findValue = null;
+        for (String arg : args) {
+            if (!arg.startsWith(OPTION_PREFIX)) {
+                if (filePath != null) {
+                    throw new IllegalArgumentException("Only one input file can be specified: " + arg);
+                }
+                filePath = arg;
+                continue;
+            }
+            final int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Option must be given as --name=value: " + arg);
+            }
+            final var name = arg.substring(OPTION_PREFIX.length(), separator);
+            final var value = arg.substring(separator + 1);
+            switch (name) {
+                case "reader" -> readerMode = ReaderMode.valueOf(value.toUpperCase(Locale.ROOT));
+                case "threads" -> threads = parsePositiveInt(arg, value);
+                case "snapshot" -> snapshotPath = parseNonEmpty(arg, value);
+                case "min-group-size" -> minGroupSize = parsePositiveInt(arg, value);
+                case "top" -> maxGroups = parsePositiveInt(arg, value);
+                case "convert" -> convertPath = parseNonEmpty(arg, value);
+                case "type-sample" -> typeSampleLines = ALL_LINES.equals(value)
+                        ? Integer.MAX_VALUE
+                        : parsePositiveInt(arg, value);
+                case "memory-budget" -> memoryBudget = parseSize(arg, value);
+                case "output" -> outputPath = parseNonEmpty(arg, value);
+                case "serve" -> servePort = parsePort(arg, value);
+                case "workers" -> workers = parsePositiveInt(arg, value);
+                case "cache-size" -> cacheSize = parsePositiveInt(arg, value);
+                case "index" -> indexPath = parseNonEmpty(arg, value);
+                case "find" -> {
+                    final int columnEnd = value.indexOf(FIND_SEPARATOR);
+                    if (columnEnd < 0) {
+                        throw new IllegalArgumentException("Option value must be COLUMN:VALUE: " + arg);
+                    }
+                    findColumn = parsePositiveInt(arg, value.substring(0, columnEnd)) - 1;
+                    findValue = parseNonEmpty(arg, value.substring(columnEnd + 1));
+                }
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (findValue != null && indexPath == null) {
+            throw new IllegalArgumentException("Option --find requires --index");
+        }
+        if (filePath == null && servePort == NOT_SERVING && findValue == null) {
+            throw new IllegalArgumentException("Input file path is not specified");
+        }
+        return new CommandLineOptions(
+                filePath,
+                readerMode,
+                threads,
+                snapshotPath,
+                minGroupSize,
+                maxGroups,
+                convertPath,
+                typeSampleLines,
+                memoryBudget,
+                outputPath,
+                servePort,
+                workers,
+                cacheSize,
+                indexPath,
+                findColumn,
+                findValue
+        );
+    }
+
+    private static String parseNonEmpty(String arg, String value) {
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("Option value must not be empty: " + arg);
+        }
+        return value;
+    }
+
+    private static int parsePort(String arg, String value) {
+        try {
+            final int port = Integer.parseInt(value);
+            if (port >= 0 && port <= MAX_PORT) {
+                return port;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Option value must be a port number: " + arg);
+    }
+
+    private static long parseSize(String arg, String value) {
+        final int shift = switch (value.isEmpty() ? ' ' : Character.toLowerCase(value.charAt(value.length() - 1))) {
+            case 'k' -> 10;
+            case 'm' -> 20;
+            case 'g' -> 30;
+            default -> 0;
+        };
+        final var digits = shift == 0 ? value : value.substring(0, value.length() - 1);
+        try {
+            final long number = Long.parseLong(digits);
+            if (number > 0 && number <= Long.MAX_VALUE >> shift) {
+                return number << shift;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Option value must be a positive size: " + arg);
+    }
+
+    private static int parsePositiveInt(String arg, String value) {
+        try {
+            final int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Option value must be a positive integer: " + arg);
+    }
+}
@@ -0,0 +1,53 @@
+package ru.starkov.infrastructure;
+
+import ru.starkov.config.CommandLineOptions;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Interface for a long-running service accepting grouping jobs.
+ * <p>
+ * A single JVM serves all jobs, so the code stays compiled between them, and the results of repeated jobs
+ * may be returned without running them again.
+ */
+public interface GroupingServer extends AutoCloseable {
+
+    /**
+     * Starts accepting jobs.
+     *
+     * @throws IOException if the server cannot be started
+     */
+    void start() throws IOException;
+
+    /**
+     * Returns the local port the server accepts jobs on.
+     *
+     * @return the port
+     */
+    int port();
+
+    /**
+     * Stops accepting jobs, waits for the running ones and releases the cached results.
+     *
+     * @throws IOException if the cached results cannot be deleted
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Runs a single grouping job.
+     */
+    @FunctionalInterface
+    interface Job {
+
+        /**
+         * Groups the input file of the options and writes the result to the given file.
+         *
+         * @param options    the options of the job
+         * @param outputFile the file the groups are written to
+         * @throws IOException if the input cannot be read or the result cannot be written
+         */
+        void run(CommandLineOptions options, Path outputFile) throws IOException;
+    }
+}
@@ -0,0 +1,308 @@
+package ru.starkov.infrastructure.impl;
+
+import ru.starkov.model.ColumnType;
+import ru.starkov.model.DataType;
+import ru.starkov.service.collection.StringDictionary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormatSymbols;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Encodes groups of rows in the output format straight into a reusable byte buffer, which is handed to
+ * a {@link Sink} whenever it fills up.
+ * <p>
+ * Numbers are written digit by digit instead of through {@link String#format}, producing exactly the same bytes:
+ * a {@code double} is rounded half-up to one fractional digit from its shortest decimal representation, as
+ * {@link java.util.Formatter} does. Values without a decimal representation of at most 15 significant digits,
+ * and locales whose digits are not ASCII, fall back to {@link String#format}. String values of a
+ * {@link StringDictionary} are copied as bytes when they are ASCII and re-encoded otherwise, so malformed
+ * input is replaced the same way as by a {@code Writer}.
+ */
+final class GroupEncoder {
+
+    private static final int MAX_NUMBER_BYTES = 32;
+    private static final int MAX_EXACT_SCALE = 15;
+    private static final long MAX_EXACT_VALUE = 1_000_000_000_000_000L;
+    private static final byte QUOTE = '"';
+    private static final byte SEPARATOR = ';';
+    private static final byte[] EMPTY_LONG = "\"           \"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EMPTY_DOUBLE = "\"\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GROUP_PREFIX = "Group ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final long[] LONG_POWERS = new long[MAX_EXACT_SCALE + 1];
+    private static final double[] DOUBLE_POWERS = new double[MAX_EXACT_SCALE + 1];
+
+    static {
+        LONG_POWERS[0] = 1;
+        DOUBLE_POWERS[0] = 1;
+        for (int i = 1; i <= MAX_EXACT_SCALE; i++) {
+            LONG_POWERS[i] = LONG_POWERS[i - 1] * 10;
+            DOUBLE_POWERS[i] = LONG_POWERS[i];
+        }
+    }
+
+    private final DataType dataType;
+    private final StringDictionary dictionary;
+    private final List<ColumnType> columnTypes;
+    private final Sink sink;
+    private final byte[] buffer;
+    private final boolean asciiDigits;
+    private final byte decimalSeparator;
+    private byte[] scratch = new byte[64];
+    private int position;
+
+    /**
+     * Constructs an encoder for rows of the given type.
+     *
+     * @param dataType    the type of the data in the rows
+     * @param dictionary  the dictionary string rows of ids refer to, {@code null} if there is none
+     * @param columnTypes the types of the columns, telling the integer columns of {@code long[]} rows of
+     *                    {@link DataType#DOUBLE} data mixing integer and decimal columns
+     * @param bufferSize  the size of the buffer in bytes
+     * @param sink        the receiver of the encoded bytes
+     */
+    GroupEncoder(DataType dataType, StringDictionary dictionary, List<ColumnType> columnTypes, int bufferSize, Sink sink) {
+        this.dataType = dataType;
+        this.dictionary = dictionary;
+        this.columnTypes = columnTypes;
+        this.sink = sink;
+        this.buffer = new byte[Math.max(bufferSize, MAX_NUMBER_BYTES * 4)];
+        final var symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+        this.asciiDigits = symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() < 0x80;
+        this.decimalSeparator = (byte) symbols.getDecimalSeparator();
+    }
+
+    /**
+     * Encodes text as UTF-8.
+     *
+     * @param text the text
+     * @throws IOException if the sink fails
+     */
+    void writeText(String text) throws IOException {
+        writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encodes a group: its header line, every row on its own line and an empty line.
+     *
+     * @param number the number of the group in the output
+     * @param group  the rows of the group
+     * @throws IOException if the sink fails
+     */
+    void writeGroup(int number, List<?> group) throws IOException {
+        if (asciiDigits) {
+            writeBytes(GROUP_PREFIX);
+            ensureCapacity(MAX_NUMBER_BYTES);
+            position = writeDigits(buffer, position, number);
+            buffer[position++] = ':';
+            writeBytes(LINE_SEPARATOR);
+        } else {
+            writeText(String.format("Group %d:%n", number));
+        }
+        for (Object row : group) {
+            writeRow(row);
+            writeBytes(LINE_SEPARATOR);
+        }
+        writeBytes(LINE_SEPARATOR);
+    }
+
+    /**
+     * Hands the buffered bytes to the sink.
+     *
+     * @throws IOException if the sink fails
+     */
+    void flush() throws IOException {
+        if (position > 0) {
+            sink.write(buffer, position);
+            position = 0;
+        }
+    }
+
+    private void writeRow(Object row) throws IOException {
+        switch (dataType) {
+            case LONG -> {
+                final long[] values = (long[]) row;
+                for (int i = 0; i < values.length; i++) {
+                    writeSeparator(i);
+                    writeLongCell(values[i]);
+                }
+            }
+            case DOUBLE -> {
+                if (row instanceof long[] keys) {
+                    writeMixedRow(keys);
+                } else {
+                    final double[] values = (double[]) row;
+                    for (int i = 0; i < values.length; i++) {
+                        writeSeparator(i);
+                        writeDoubleCell(values[i]);
+                    }
+                }
+            }
+            default -> {
+                if (row instanceof int[] ids) {
+                    for (int i = 0; i < ids.length; i++) {
+                        writeSeparator(i);
+                        writeDictionaryValue(ids[i]);
+                    }
+                } else {
+                    final List<?> values = (List<?>) row;
+                    for (int i = 0; i < values.size(); i++) {
+                        writeSeparator(i);
+                        writeText(values.get(i).toString());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a row mixing integer and decimal columns, whose cells hold the values of the integer columns and
+     * the bits of the values of the decimal ones. Every cell, empty ones included, is written the same way as
+     * in data of the type of its column.
+     */
+    private void writeMixedRow(long[] keys) throws IOException {
+        for (int i = 0; i < keys.length; i++) {
+            writeSeparator(i);
+            if (ColumnType.isIntegerColumn(columnTypes, i)) {
+                writeLongCell(keys[i]);
+            } else {
+                writeDoubleCell(Double.longBitsToDouble(keys[i]));
+            }
+        }
+    }
+
+    private void writeSeparator(int colIndex) throws IOException {
+        if (colIndex > 0) {
+            ensureCapacity(1);
+            buffer[position++] = SEPARATOR;
+        }
+    }
+
+    private void writeLongCell(long value) throws IOException {
+        if (value == 0) {
+            writeBytes(EMPTY_LONG);
+        } else if (value < 0) {
+            writeText("\"" + value + "\"");
+        } else {
+            ensureCapacity(MAX_NUMBER_BYTES);
+            buffer[position++] = QUOTE;
+            position = writeDigits(buffer, position, value);
+            buffer[position++] = QUOTE;
+        }
+    }
+
+    private void writeDoubleCell(double value) throws IOException {
+        if (value == 0) {
+            writeBytes(EMPTY_DOUBLE);
+            return;
+        }
+        ensureCapacity(MAX_NUMBER_BYTES);
+        if (!asciiDigits || !writeRoundedDouble(value)) {
+            writeText(String.format("\"%.1f\"", value));
+        }
+    }
+
+    /**
+     * Writes a positive value with one fractional digit if its shortest decimal representation has at most
+     * 15 significant digits; that representation is the one with the fewest fractional digits which still
+     * converts back to the value.
+     *
+     * @return {@code true} if the value was written, {@code false} if it needs the general formatting
+     */
+    private boolean writeRoundedDouble(double value) {
+        if (!(value > 0) || value >= MAX_EXACT_VALUE) {
+            return false;
+        }
+        for (int scale = 0; scale <= MAX_EXACT_SCALE; scale++) {
+            final double scaled = Math.rint(value * DOUBLE_POWERS[scale]);
+            if (scaled >= MAX_EXACT_VALUE) {
+                return false;
+            }
+            if (scaled / DOUBLE_POWERS[scale] == value) {
+                long tenths = (long) scaled;
+                if (scale == 0) {
+                    tenths *= 10;
+                } else if (scale > 1) {
+                    final long divisor = LONG_POWERS[scale - 1];
+                    final long remainder = tenths % divisor;
+                    tenths /= divisor;
+                    if (remainder * 2 >= divisor) {
+                        tenths++;
+                    }
+                }
+                buffer[position++] = QUOTE;
+                position = writeDigits(buffer, position, tenths / 10);
+                buffer[position++] = decimalSeparator;
+                buffer[position++] = (byte) ('0' + tenths % 10);
+                buffer[position++] = QUOTE;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeDictionaryValue(int id) throws IOException {
+        final int length = dictionary.length(id);
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length << 1)];
+        }
+        dictionary.copy(id, scratch, 0);
+        for (int i = 0; i < length; i++) {
+            if (scratch[i] < 0) {
+                writeText(dictionary.value(id));
+                return;
+            }
+        }
+        writeBytes(scratch, length);
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeBytes(bytes, bytes.length);
+    }
+
+    private void writeBytes(byte[] bytes, int length) throws IOException {
+        if (length > buffer.length) {
+            flush();
+            sink.write(bytes, length);
+            return;
+        }
+        ensureCapacity(length);
+        System.arraycopy(bytes, 0, buffer, position, length);
+        position += length;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (buffer.length - position < length) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the decimal digits of a non-negative value.
+     *
+     * @return the position following the last digit
+     */
+    private static int writeDigits(byte[] target, int offset, long value) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        int end = offset + digits;
+        for (int i = end - 1; i >= offset; i--) {
+            target[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Receives the encoded bytes.
+     */
+    @FunctionalInterface
+    interface Sink {
+        void write(byte[] bytes, int length) throws IOException;
+    }
+}
@@ -0,0 +1,343 @@
+package ru.starkov.infrastructure.impl;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ru.starkov.config.CommandLineOptions;
+import ru.starkov.infrastructure.GroupingServer;
+import ru.starkov.model.DataType;
+import ru.starkov.service.DynamicTypeDetector;
+import ru.starkov.service.collection.LruCache;
+import ru.starkov.service.metrics.ExecutionMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of the GroupingServer interface accepting jobs over HTTP on the loopback interface.
+ * <p>
+ * A job is submitted with {@code POST /group}, whose body holds the command line arguments of a single run,
+ * one per line: the path of the input file followed by any options. The response is the grouped output.
+ * {@code GET /health} answers {@code OK} while the server is running.
+ * <p>
+ * Requests are served by virtual threads, while the jobs themselves run on a fixed number of workers with a
+ * bounded queue; a job that does not fit into the queue is refused with {@code 503}. Results are kept in
+ * files and cached in an {@link LruCache} by the SHA-256 hash of the input file content, its
+ * {@link DataType} and the options selecting the written groups, so resubmitting a file, even under another
+ * path, returns the cached result at once, with its execution time line reporting the time taken to serve it
+ * rather than the time of the job that produced it. Content hashes are themselves cached by path, size and modification
+ * time, and a job already running for the same key is awaited instead of being started again.
+ */
+public class HttpGroupingServer implements GroupingServer {
+
+    private static final String GROUP_PATH = "/group";
+    private static final String HEALTH_PATH = "/health";
+    private static final int MAX_QUEUED_JOBS = 32;
+    private static final int HASH_BUFFER_SIZE = 1 << 20;
+    private static final int HASHES_PER_RESULT = 4;
+    private static final int STOP_DELAY_SECONDS = 1;
+    private static final int HEADER_BYTES = 1 << 10;
+    private static final int EXECUTION_TIME_LINE = 2;
+
+    private final int requestedPort;
+    private final int workers;
+    private final Job job;
+    private final LruCache<ResultKey, Path> results;
+    private final LruCache<FileVersion, String> contentHashes;
+    private final ConcurrentHashMap<ResultKey, Future<Path>> runningJobs = new ConcurrentHashMap<>();
+    private final AtomicLong jobCount = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService requestExecutor;
+    private ThreadPoolExecutor jobExecutor;
+    private Path resultDirectory;
+
+    /**
+     * Constructs a server which is not started yet.
+     *
+     * @param port      the local port to listen on, {@code 0} for any free port
+     * @param workers   the number of jobs running at the same time
+     * @param cacheSize the number of results kept
+     * @param job       the job grouping a single input file
+     * @throws IllegalArgumentException if the number of workers or the cache size is not positive
+     */
+    public HttpGroupingServer(int port, int workers, int cacheSize, Job job) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Number of workers must be positive: " + workers);
+        }
+        this.requestedPort = port;
+        this.workers = workers;
+        this.job = job;
+        this.results = new LruCache<>(cacheSize, (key, result) -> deleteResult(result));
+        this.contentHashes = new LruCache<>(cacheSize * HASHES_PER_RESULT, (version, hash) -> { });
+    }
+
+    @Override
+    public void start() throws IOException {
+        resultDirectory = Files.createTempDirectory("grouping-results-");
+        jobExecutor = new ThreadPoolExecutor(
+                workers,
+                workers,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_JOBS)
+        );
+        requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), requestedPort), 0);
+        server.setExecutor(requestExecutor);
+        server.createContext(GROUP_PATH, exchange -> respond(exchange, this::handleGroup));
+        server.createContext(HEALTH_PATH, exchange -> respond(exchange, this::handleHealth));
+        server.start();
+    }
+
+    @Override
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (server == null) {
+            return;
+        }
+        server.stop(STOP_DELAY_SECONDS);
+        jobExecutor.close();
+        requestExecutor.close();
+        try (final var files = Files.list(resultDirectory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(resultDirectory);
+        server = null;
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        sendText(exchange, 200, "OK");
+    }
+
+    private void handleGroup(HttpExchange exchange) throws IOException {
+        final long startTime = System.nanoTime();
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendText(exchange, 405, "Jobs are submitted with POST");
+            return;
+        }
+        final String[] args;
+        try (final var body = exchange.getRequestBody()) {
+            args = new String(body.readAllBytes(), StandardCharsets.UTF_8).lines()
+                    .map(String::strip)
+                    .filter(line -> !line.isEmpty())
+                    .toArray(String[]::new);
+        }
+        final var options = CommandLineOptions.parse(args);
+        checkJobOptions(options);
+        final var file = new LocalFileLoader().loadFile(options.filePath());
+        final var key = new ResultKey(
+                contentHash(file),
+                DynamicTypeDetector.detect(file, options.typeSampleLines(), options.threads()).dataType(),
+                options.minGroupSize(),
+                options.maxGroups()
+        );
+
+        final var cachedResult = open(results.get(key));
+        final boolean cached = cachedResult != null;
+        try (final var result = cached ? cachedResult : FileChannel.open(awaitResult(key, options), StandardOpenOption.READ);
+             final InputStream content = Channels.newInputStream(result)) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.getResponseHeaders().set("X-Cache", cached ? "HIT" : "MISS");
+            exchange.getResponseHeaders().set("X-Data-Type", key.dataType().name());
+            final byte[] header = cached
+                    ? refreshExecutionTime(result, Duration.ofNanos(System.nanoTime() - startTime))
+                    : new byte[0];
+            exchange.sendResponseHeaders(200, header.length + result.size() - result.position());
+            exchange.getResponseBody().write(header);
+            content.transferTo(exchange.getResponseBody());
+        }
+    }
+
+    /**
+     * Returns the header lines of a cached result up to its execution time line, which reports the given time
+     * instead of the time of the job that produced the result, and positions the result after that line.
+     * A result without such a line is served unchanged.
+     */
+    private static byte[] refreshExecutionTime(FileChannel result, Duration executionTime) throws IOException {
+        final var header = ByteBuffer.allocate(HEADER_BYTES);
+        final int length = Math.max(result.read(header, 0), 0);
+        int timeLineStart = 0;
+        int lineEnd = -1;
+        for (int line = 0; line < EXECUTION_TIME_LINE; line++) {
+            timeLineStart = lineEnd + 1;
+            lineEnd = timeLineStart;
+            while (lineEnd < length && header.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == length) {
+                return new byte[0];
+            }
+        }
+        final byte[] timeLine = LocalPathFileWriter.executionTimeLine(executionTime).getBytes(StandardCharsets.UTF_8);
+        final byte[] refreshed = Arrays.copyOf(header.array(), timeLineStart + timeLine.length);
+        System.arraycopy(timeLine, 0, refreshed, timeLineStart, timeLine.length);
+        result.position(lineEnd + 1);
+        return refreshed;
+    }
+
+    private static void checkJobOptions(CommandLineOptions options) {
+        if (options.snapshotPath() != null || options.convertPath() != null || options.indexPath() != null) {
+            throw new IllegalArgumentException("Snapshots, conversion and indexes are not supported by server jobs");
+        }
+        if (options.servePort() != CommandLineOptions.NOT_SERVING) {
+            throw new IllegalArgumentException("A job cannot start a server");
+        }
+    }
+
+    /**
+     * Opens a cached result, or returns {@code null} if there is none or it has just been evicted.
+     */
+    private static FileChannel open(Path result) throws IOException {
+        if (result == null) {
+            return null;
+        }
+        try {
+            return FileChannel.open(result, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private Path awaitResult(ResultKey key, CommandLineOptions options) throws IOException {
+        final var future = runningJobs.computeIfAbsent(key, k -> jobExecutor.submit(() -> runJob(k, options)));
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the job", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Job failed", e.getCause());
+        }
+    }
+
+    private Path runJob(ResultKey key, CommandLineOptions options) throws IOException {
+        final var outputFile = resultDirectory.resolve("job-" + jobCount.incrementAndGet() + ".txt");
+        try {
+            job.run(options, outputFile);
+            results.put(key, outputFile);
+            return outputFile;
+        } catch (IOException | RuntimeException e) {
+            deleteResult(outputFile);
+            throw e;
+        } finally {
+            runningJobs.remove(key);
+        }
+    }
+
+    private String contentHash(File file) throws IOException {
+        final var version = new FileVersion(file.getAbsolutePath(), file.length(), file.lastModified());
+        final var cached = contentHashes.get(version);
+        if (cached != null) {
+            return cached;
+        }
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        try (final var input = Files.newInputStream(file.toPath())) {
+            final var buffer = new byte[HASH_BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            System.err.printf("Error reading file: %s", file.getAbsolutePath());
+            throw e;
+        }
+        final var hash = HexFormat.of().formatHex(digest.digest());
+        contentHashes.put(version, hash);
+        return hash;
+    }
+
+    private static void deleteResult(Path outputFile) {
+        try {
+            Files.deleteIfExists(outputFile);
+            Files.deleteIfExists(ExecutionMetrics.metricsFileFor(outputFile));
+        } catch (IOException e) {
+            System.err.printf("Error deleting file: %s", outputFile);
+        }
+    }
+
+    /**
+     * Runs a handler, answering {@code 400} for invalid jobs, {@code 503} when the job queue is full and
+     * {@code 500} for any other failure.
+     */
+    private static void respond(HttpExchange exchange, Handler handler) {
+        try (exchange) {
+            try {
+                handler.handle(exchange);
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+            } catch (RejectedExecutionException e) {
+                sendText(exchange, 503, "Too many jobs are queued");
+            } catch (IOException | RuntimeException e) {
+                sendText(exchange, 500, "Job failed: " + e);
+            }
+        } catch (IOException e) {
+            System.err.printf("Error responding to %s%n", exchange.getRequestURI());
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        final var bytes = (text + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * Identifies the result of a job: the content of the input file and everything deciding what is written.
+     */
+    private record ResultKey(String contentHash, DataType dataType, int minGroupSize, int maxGroups) {
+    }
+
+    /**
+     * Identifies a version of a file whose content hash has been computed.
+     */
+    private record FileVersion(String path, long size, long lastModified) {
+    }
+}
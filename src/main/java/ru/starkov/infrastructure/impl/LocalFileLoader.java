@@ -1,9 +1,13 @@
 package ru.starkov.infrastructure.impl;
 
 import ru.starkov.infrastructure.FileLoader;
+import ru.starkov.service.ColumnarFile;
+import ru.starkov.service.GzipBlockReader;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Objects;
 
@@ -19,7 +23,8 @@ public class LocalFileLoader implements FileLoader {
      * @return the loaded File object
      * @throws NullPointerException if the file path is null
      * @throws IllegalArgumentException if the file does not exist, is not a file,
-     * is not readable, or has an unsupported format (non-.txt file)
+     * is not readable, or has an unsupported format (not a .txt, .csv or binary columnar .bin file,
+     * or a .txt or .csv file compressed with gzip into a .gz file)
      */
     @Override
     public File loadFile(String filePath) {
@@ -32,13 +37,41 @@ public class LocalFileLoader implements FileLoader {
             throw new IllegalArgumentException("Provided path is not a file: " + filePath);
         }
         filePath = filePath.toLowerCase();
-        if (!filePath.endsWith(".txt") && !filePath.endsWith(".csv")) {
-            throw new IllegalArgumentException("Unsupported file format. Expected a file with .txt or .csv extension: " + filePath);
+        final boolean compressed = filePath.endsWith(GzipBlockReader.EXTENSION);
+        final var textPath = compressed
+                ? filePath.substring(0, filePath.length() - GzipBlockReader.EXTENSION.length())
+                : filePath;
+        if (!textPath.endsWith(".txt") && !textPath.endsWith(".csv")
+                && (compressed || !filePath.endsWith(ColumnarFile.EXTENSION))) {
+            throw new IllegalArgumentException(
+                    "Unsupported file format. Expected a file with .txt, .csv, .txt.gz, .csv.gz or .bin extension: " + filePath);
         }
 
         if (!Files.isReadable(path)) {
             throw new IllegalArgumentException("File is not readable: " + filePath);
         }
+        if (filePath.endsWith(ColumnarFile.EXTENSION) && !isColumnar(path)) {
+            throw new IllegalArgumentException("Not a binary columnar file: " + filePath);
+        }
+        if (compressed && !isGzip(path)) {
+            throw new IllegalArgumentException("Not a gzip file: " + filePath);
+        }
         return path.toFile();
     }
+
+    private static boolean isColumnar(Path path) {
+        try {
+            return ColumnarFile.isColumnar(path.toFile());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("File is not readable: " + path, e);
+        }
+    }
+
+    private static boolean isGzip(Path path) {
+        try {
+            return GzipBlockReader.isGzip(path.toFile());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("File is not readable: " + path, e);
+        }
+    }
 }
@@ -1,27 +1,108 @@
 package ru.starkov.infrastructure.impl;
 
 import ru.starkov.infrastructure.PathFileWriter;
+import ru.starkov.model.ColumnType;
 import ru.starkov.model.DataType;
+import ru.starkov.service.collection.StringDictionary;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
 /**
  * Universal implementation of the PathFileWriter interface for writing data of any type to a file.
- * The groups are sorted and their contents are formatted as strings.
+ * <p>
+ * Rows are encoded straight into a reusable byte buffer by a {@link GroupEncoder}, without building a string
+ * per cell or per line, and the buffer is written to the file through a {@link FileChannel}.
+ * With more than one thread, the groups are split into contiguous ranges of a similar number of rows which
+ * are rendered concurrently into recycled direct buffers, every range numbering its groups from its own offset.
+ * The rendered chunks are written in order with positional writes as soon as the ranges before them are written.
+ * Every range may get at most {@value #CHUNKS_PER_SHARD} chunks ahead of the writes, its renderer waiting for the
+ * writer beyond that, so the direct memory in use depends on the number of threads, not on the size of the output.
+ * <p>
+ * Rows are expected as {@code long[]} for {@link DataType#LONG}, {@code double[]} for {@link DataType#DOUBLE}
+ * or {@code long[]} of raw keys when integer and decimal columns are mixed, and, for {@link DataType#STRING},
+ * either as {@code int[]} ids of a {@link StringDictionary} or as lists of values.
  * <p>
  * If the output path is not specified, the file will be created in the current directory.
+ *
+ * @param <R> the type of a single row
  */
-public class LocalPathFileWriter<T> implements PathFileWriter<List<List<List<T>>>> {
+public class LocalPathFileWriter<R> implements PathFileWriter<List<List<R>>> {
 
     private static final String DEFAULT_OUTPUT_FILE = "output.txt";
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int SHARD_BUFFER_SIZE = 1 << 18;
+    private static final int SHARDS_PER_THREAD = 4;
+    private static final int CHUNKS_PER_SHARD = 2;
+    private static final int MIN_ROWS_PER_SHARD = 10_000;
+    private static final ByteBuffer END_OF_SHARD = ByteBuffer.allocate(0);
+
+    private final StringDictionary dictionary;
+    private final List<ColumnType> columnTypes;
+    private final int threads;
+
+    /**
+     * Constructs a writer for rows that hold their values directly.
+     */
+    public LocalPathFileWriter() {
+        this(null);
+    }
+
+    /**
+     * Constructs a writer resolving string rows of dictionary ids through the given dictionary.
+     *
+     * @param dictionary the dictionary the string rows refer to
+     */
+    public LocalPathFileWriter(StringDictionary dictionary) {
+        this(dictionary, 1);
+    }
+
+    /**
+     * Constructs a writer rendering the groups on the given number of threads.
+     *
+     * @param dictionary the dictionary the string rows refer to, {@code null} if there is none
+     * @param threads    the number of threads rendering the groups
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public LocalPathFileWriter(StringDictionary dictionary, int threads) {
+        this(dictionary, List.of(), threads);
+    }
+
+    /**
+     * Constructs a writer rendering the groups on the given number of threads, writing the {@code long[]} rows of
+     * {@link DataType#DOUBLE} data mixing integer and decimal columns by the types of their columns.
+     *
+     * @param dictionary  the dictionary the string rows refer to, {@code null} if there is none
+     * @param columnTypes the types of the columns of the data
+     * @param threads     the number of threads rendering the groups
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public LocalPathFileWriter(StringDictionary dictionary, List<ColumnType> columnTypes, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        this.dictionary = dictionary;
+        this.columnTypes = List.copyOf(columnTypes);
+        this.threads = threads;
+    }
 
     /**
      * Writes a list of grouped data to a file.
@@ -33,25 +114,62 @@ public class LocalPathFileWriter<T> implements PathFileWriter<List<List<List<T>>
      * @throws IOException if an I/O error occurs during file writing
      */
     @Override
-    public void writeToTxtFile(List<List<List<T>>> groups, String outputPath, Duration executionTime, DataType dataType) throws IOException {
+    public void writeToTxtFile(List<List<R>> groups, String outputPath, Duration executionTime, DataType dataType) throws IOException {
+        long groupsWithTwoOrMoreElements = groups.stream()
+                .filter(group -> group.size() > 1)
+                .count();
+        writeToTxtFile(groups, outputPath, executionTime, dataType, groupsWithTwoOrMoreElements);
+    }
+
+    /**
+     * Writes a list of grouped data to a file, reporting the given number of groups with more than one element
+     * in the header. This allows writing only some of the groups while the header still describes all of them.
+     *
+     * @param groups                      the list of groups to write to the file
+     * @param outputPath                  the path to the output file; if null or empty, the file will be created
+     *                                    in the current directory
+     * @param executionTime               the execution time reported in the header
+     * @param dataType                    the type of the data in the rows
+     * @param groupsWithTwoOrMoreElements the number of groups with more than one element reported in the header
+     * @throws IOException if an I/O error occurs during file writing
+     */
+    public void writeToTxtFile(
+            List<List<R>> groups,
+            String outputPath,
+            Duration executionTime,
+            DataType dataType,
+            long groupsWithTwoOrMoreElements
+    ) throws IOException {
         String filePath = Optional.ofNullable(outputPath)
                 .filter(path -> !path.isEmpty())
                 .orElse(DEFAULT_OUTPUT_FILE);
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            int groupCounter = 1;
-
-            long groupsWithTwoOrMoreElements = groups.stream()
-                    .filter(group -> group.size() > 1)
-                    .count();
-
-            writer.write(String.format("Number of groups with more than 1 element: %d%n", groupsWithTwoOrMoreElements));
-            writer.write(String.format("Execution time (excluding file writing): %d seconds%n",
-                    executionTime.get(ChronoUnit.SECONDS)));
-            writer.write(System.lineSeparator());
+        try (FileChannel channel = FileChannel.open(
+                Path.of(filePath),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        )) {
+            final var encoder = new GroupEncoder(dataType, dictionary, columnTypes, BUFFER_SIZE, (bytes, length) -> {
+                final var source = ByteBuffer.wrap(bytes, 0, length);
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+            });
+            encoder.writeText(String.format("Number of groups with more than 1 element: %d%n", groupsWithTwoOrMoreElements));
+            encoder.writeText(executionTimeLine(executionTime));
+            encoder.writeText(System.lineSeparator());
 
-            for (List<List<T>> group : groups) {
-                writeGroup(writer, group, groupCounter++, dataType);
+            final int[] shardStarts = splitIntoShards(groups);
+            if (shardStarts.length <= 2) {
+                int groupCounter = 1;
+                for (List<R> group : groups) {
+                    encoder.writeGroup(groupCounter++, group);
+                }
+                encoder.flush();
+            } else {
+                encoder.flush();
+                writeShards(channel, groups, shardStarts, dataType);
             }
         } catch (IOException e) {
             System.err.printf("Error writing to file: %s", filePath);
@@ -59,43 +177,141 @@ public class LocalPathFileWriter<T> implements PathFileWriter<List<List<List<T>>
         }
     }
 
-    private void writeGroup(BufferedWriter writer, List<List<T>> group, int groupCounter, DataType dataType) throws IOException {
-        writer.write(String.format("Group %d:%n", groupCounter));
-        for (List<T> line : group) {
-            writer.write(formatLine(line, dataType) + System.lineSeparator());
+    /**
+     * Returns the line of the header reporting the execution time, the second line of the output file.
+     *
+     * @param executionTime the execution time
+     * @return the line, ending with a line separator
+     */
+    public static String executionTimeLine(Duration executionTime) {
+        return String.format("Execution time (excluding file writing): %d seconds%n", executionTime.get(ChronoUnit.SECONDS));
+    }
+
+    /**
+     * Writes a single group to a stream in the same format as the groups of the output file.
+     *
+     * @param output   the stream to write to
+     * @param number   the number of the group in the output file
+     * @param group    the rows of the group
+     * @param dataType the type of the data in the rows
+     * @throws IOException if an I/O error occurs during writing
+     */
+    public void writeGroup(OutputStream output, int number, List<R> group, DataType dataType) throws IOException {
+        final var encoder = new GroupEncoder(dataType, dictionary, columnTypes, BUFFER_SIZE, (bytes, length) -> output.write(bytes, 0, length));
+        encoder.writeGroup(number, group);
+        encoder.flush();
+        output.flush();
+    }
+
+    /**
+     * Splits the groups into contiguous ranges holding a similar number of rows.
+     *
+     * @return the index of the first group of every range, followed by the number of groups
+     */
+    private int[] splitIntoShards(List<List<R>> groups) {
+        final long totalRows = groups.stream().mapToLong(List::size).sum();
+        final long rowsPerShard = Math.max(MIN_ROWS_PER_SHARD, totalRows / ((long) threads * SHARDS_PER_THREAD));
+        if (threads == 1 || totalRows < rowsPerShard * 2) {
+            return new int[]{0, groups.size()};
         }
-        writer.write(System.lineSeparator());  // Add an empty line between groups for readability
+        final var starts = IntStream.builder().add(0);
+        long rowsInShard = 0;
+        for (int i = 0; i < groups.size(); i++) {
+            rowsInShard += groups.get(i).size();
+            if (rowsInShard >= rowsPerShard && i + 1 < groups.size()) {
+                starts.add(i + 1);
+                rowsInShard = 0;
+            }
+        }
+        return starts.add(groups.size()).build().toArray();
     }
 
-    private String formatLine(List<T> line, DataType dataType) {
-        switch (dataType) {
-            case LONG -> {
-                return line.stream()
-                        .map(obj -> (Long) obj)
-                        .map(Objects::toString)
-                        .map(string -> {
-                            if (string.equals("0")) {
-                                return "\"           \"";
-                            }
-                            return String.format("\"%s\"", string);
-                        }).collect(Collectors.joining(";"));
+    /**
+     * Renders the ranges of groups concurrently and writes the rendered chunks in order at consecutive positions
+     * of the file following its current position. Every chunk of the range being written is written as soon as
+     * it is rendered and its buffer is then handed back to the renderers. The ranges are rendered in order by a
+     * fixed pool of threads, and a renderer waits once its range has {@value #CHUNKS_PER_SHARD} chunks waiting to be
+     * written, so the range being written is always rendered while the renderers ahead of it stop, and new direct
+     * buffers are allocated only until every range in flight has its chunks.
+     */
+    private void writeShards(FileChannel channel, List<List<R>> groups, int[] shardStarts, DataType dataType) throws IOException {
+        long position = channel.position();
+        final int shardCount = shardStarts.length - 1;
+        final var freeBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+        try (final var pool = Executors.newFixedThreadPool(threads)) {
+            try {
+                final var renderedShards = new ArrayList<BlockingQueue<ByteBuffer>>(shardCount);
+                final var renderings = new ArrayList<Future<Void>>(shardCount);
+                for (int shard = 0; shard < shardCount; shard++) {
+                    final int from = shardStarts[shard];
+                    final int to = shardStarts[shard + 1];
+                    final var rendered = new ArrayBlockingQueue<ByteBuffer>(CHUNKS_PER_SHARD);
+                    renderedShards.add(rendered);
+                    renderings.add(pool.submit(() -> {
+                        try {
+                            renderShard(groups, from, to, dataType, rendered, freeBuffers);
+                        } finally {
+                            rendered.put(END_OF_SHARD);
+                        }
+                        return null;
+                    }));
+                }
+                for (int shard = 0; shard < shardCount; shard++) {
+                    final var rendered = renderedShards.get(shard);
+                    for (ByteBuffer chunk = rendered.take(); chunk != END_OF_SHARD; chunk = rendered.take()) {
+                        while (chunk.hasRemaining()) {
+                            position += channel.write(chunk, position);
+                        }
+                        freeBuffers.offer(chunk.clear());
+                    }
+                    renderings.get(shard).get();
+                }
+            } finally {
+                pool.shutdownNow();
             }
-            case DOUBLE -> {
-                return line.stream()
-                        .map(obj -> (Double) obj)  // Преобразуем объект в Double
-                        .map(d -> {
-                            if (d == 0) {  // Если число равно 0
-                                return "\"\"";  // Возвращаем пустую строку
-                            }
-                            return String.format("\"%.1f\"", d);  // Форматируем число с одной цифрой после запятой
-                        })
-                        .collect(Collectors.joining(";"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing groups", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
             }
-            default -> {
-                return line.stream()
-                        .map(Object::toString)
-                        .collect(Collectors.joining(";"));
+            throw new IllegalStateException("Failed to render groups", e.getCause());
+        }
+    }
+
+    /**
+     * Renders the groups {@code [from, to)} into direct buffers, numbering them by their position in the list.
+     * Buffers are taken from the free ones when there are any, and a rendered chunk waits for room in the queue
+     * of the range.
+     */
+    private void renderShard(
+            List<List<R>> groups,
+            int from,
+            int to,
+            DataType dataType,
+            BlockingQueue<ByteBuffer> rendered,
+            Queue<ByteBuffer> freeBuffers
+    ) throws IOException {
+        final var encoder = new GroupEncoder(dataType, dictionary, columnTypes, SHARD_BUFFER_SIZE, (bytes, length) -> {
+            for (int offset = 0; offset < length; ) {
+                var chunk = freeBuffers.poll();
+                if (chunk == null) {
+                    chunk = ByteBuffer.allocateDirect(SHARD_BUFFER_SIZE);
+                }
+                final int chunkLength = Math.min(length - offset, chunk.capacity());
+                try {
+                    rendered.put(chunk.put(bytes, offset, chunkLength).flip());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while rendering groups");
+                }
+                offset += chunkLength;
             }
+        });
+        for (int i = from; i < to; i++) {
+            encoder.writeGroup(i + 1, groups.get(i));
         }
+        encoder.flush();
     }
 }
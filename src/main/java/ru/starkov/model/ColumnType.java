@@ -0,0 +1,39 @@
+package ru.starkov.model;
+
+import java.util.List;
+
+/**
+ * Enumeration of the narrowest representations that fit all sampled values of a single column.
+ *
+ * <ul>
+ *     <li><b>EMPTY</b>: No non-empty value was sampled, so any representation fits.</li>
+ *     <li><b>INT</b>: Every value is a quoted integer fitting into 32 bits.</li>
+ *     <li><b>LONG</b>: Every value is a quoted integer fitting into 64 bits.</li>
+ *     <li><b>DOUBLE</b>: Every value is a quoted decimal number.</li>
+ *     <li><b>STRING</b>: The values are kept as strings in a dictionary.</li>
+ * </ul>
+ */
+public enum ColumnType {
+    EMPTY, INT, LONG, DOUBLE, STRING;
+
+    /**
+     * Tells whether the values of the column are integers.
+     *
+     * @return {@code true} for {@link #INT} and {@link #LONG}
+     */
+    public boolean isInteger() {
+        return this == INT || this == LONG;
+    }
+
+    /**
+     * Tells whether a column of a file mixing integer and decimal columns holds integers. A column without
+     * sampled values, or beyond the sampled ones, holds decimals, the type of such a file.
+     *
+     * @param columnTypes the types of the columns of the file
+     * @param colIndex    the index of the column
+     * @return {@code true} if the column holds integers
+     */
+    public static boolean isIntegerColumn(List<ColumnType> columnTypes, int colIndex) {
+        return colIndex < columnTypes.size() && columnTypes.get(colIndex).isInteger();
+    }
+}
@@ -0,0 +1,16 @@
+package ru.starkov.model;
+
+/**
+ * Enumeration of the strategies used to read the input file.
+ *
+ * <ul>
+ *     <li><b>BUFFERED</b>: Reads the file line by line as text and validates cells with string predicates.</li>
+ *     <li><b>MAPPED</b>: Memory-maps the file and parses cells straight from its bytes. Numbers are kept
+ *     as primitives and strings as ids of an off-heap dictionary.</li>
+ *     <li><b>STREAMING</b>: Memory-maps the file and keeps only the offsets of valid lines; rows are parsed
+ *     again whenever they are needed, so memory use does not depend on the number of cells.</li>
+ * </ul>
+ */
+public enum ReaderMode {
+    BUFFERED, MAPPED, STREAMING
+}
@@ -0,0 +1,23 @@
+package ru.starkov.model;
+
+import java.util.List;
+
+/**
+ * The types inferred for a file from a sample of its lines.
+ *
+ * @param dataType     the type of the data of the whole file, the narrowest one fitting every column
+ * @param columnTypes  the narrowest type of every column
+ * @param sampledLines the number of lines the types were inferred from
+ */
+public record TypeProfile(DataType dataType, List<ColumnType> columnTypes, long sampledLines) {
+
+    /**
+     * Tells whether the file holds integer columns along with decimal ones. Such a file has the
+     * {@link DataType#DOUBLE} type, while every column is read and written in its own type.
+     *
+     * @return {@code true} if the file mixes integer and decimal columns
+     */
+    public boolean isMixed() {
+        return dataType == DataType.DOUBLE && columnTypes.stream().anyMatch(ColumnType::isInteger);
+    }
+}
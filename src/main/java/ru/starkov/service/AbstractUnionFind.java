@@ -0,0 +1,371 @@
+package ru.starkov.service;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Base class of the Union-Find (or Disjoint Set Union) engines that group rows of data
+ * based on shared non-empty column values.
+ * <p>
+ * The class owns the parent array and the grouping of rows by their roots. Subclasses decide how
+ * rows are stored and how column values are indexed, and call {@link #union(int, int)} for every
+ * pair of rows sharing a value in the same column.
+ * <p>
+ * Sets are merged by size, so the smaller tree is always attached to the root of the larger one and
+ * trees stay logarithmically shallow even before path compression applies. The number of components
+ * and the size of each component are maintained during the merges and can be read in constant time.
+ *
+ * @param <R> the type of a single row
+ */
+public abstract class AbstractUnionFind<R> {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    protected final List<R> rawData;
+    private final int[] parent;
+    private final int[] size;
+    private int componentCount;
+    private int multiElementComponentCount;
+
+    /**
+     * Constructs the disjoint set forest with every row in its own set.
+     *
+     * @param rawData the rows to group
+     */
+    protected AbstractUnionFind(List<R> rawData) {
+        this.rawData = rawData;
+        this.parent = initializeParents(rawData.size());
+        this.size = new int[rawData.size()];
+        Arrays.fill(size, 1);
+        this.componentCount = rawData.size();
+    }
+
+    /**
+     * Groups rows based on shared non-empty column values.
+     * <p>
+     * Groups are ordered by the number of rows and then by the total number of cells, both descending;
+     * rows within a group are ordered by their number of cells, descending. Ties keep the order in which
+     * groups and rows first appear in the data. The groups are read-only views over a single permutation
+     * of row indices, and every row is fetched from the raw data only when it is accessed.
+     * <p>
+     * The permutation is built by two stable counting sorts, first of the rows by their number of cells and then
+     * of those by group, so the rows are placed by linear scans without sorting any group.
+     *
+     * @return a list of groups, where each group is a list of rows.
+     */
+    public List<List<R>> groupValues() {
+        return groupValues(1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Groups rows like {@link #groupValues()}, keeping only the groups with at least the given number of rows
+     * and, of those, only the given number of first groups in the order of {@link #groupValues()}.
+     * <p>
+     * Groups are selected by the component sizes maintained during the merges, so the rows of smaller groups
+     * are never fetched. The groups are ordered by a counting sort on their sizes, and only the groups of the sizes
+     * reaching into the first {@code maxGroups} ones are then ordered by their numbers of cells.
+     *
+     * @param minGroupSize the minimum number of rows in a returned group
+     * @param maxGroups    the maximum number of returned groups
+     * @return a list of at most {@code maxGroups} groups, where each group is a list of rows
+     * @throws IllegalArgumentException if either limit is not positive
+     */
+    public List<List<R>> groupValues(int minGroupSize, int maxGroups) {
+        if (minGroupSize < 1 || maxGroups < 1) {
+            throw new IllegalArgumentException("Group limits must be positive: " + minGroupSize + ", " + maxGroups);
+        }
+        final int rowCount = rawData.size();
+        final int[] rowLengths = new int[rowCount];
+        final int[] rootToGroup = new int[rowCount];
+        Arrays.fill(rootToGroup, -1);
+        final int[] groupSizes = new int[componentCount];
+        final long[] groupElements = new long[componentCount];
+        int groupCount = 0;
+        int maxRowLength = 0;
+        for (int i = 0; i < rowCount; i++) {
+            final int root = find(i);
+            if (size[root] < minGroupSize) {
+                continue;
+            }
+            if (rootToGroup[root] < 0) {
+                rootToGroup[root] = groupCount++;
+            }
+            final int group = rootToGroup[root];
+            rowLengths[i] = rowLengthAt(i);
+            maxRowLength = Math.max(maxRowLength, rowLengths[i]);
+            groupSizes[group]++;
+            groupElements[group] += rowLengths[i];
+        }
+
+        final int[] groupOrder = selectGroups(groupCount, maxGroups, groupSizes, groupElements);
+        final int[] groupStarts = new int[groupCount];
+        Arrays.fill(groupStarts, -1);
+        int position = 0;
+        for (int group : groupOrder) {
+            groupStarts[group] = position;
+            position += groupSizes[group];
+        }
+
+        final int[] lengthStarts = new int[maxRowLength + 1];
+        for (int i = 0; i < rowCount; i++) {
+            if (isSelected(i, rootToGroup, groupStarts)) {
+                lengthStarts[rowLengths[i]]++;
+            }
+        }
+        int lengthPosition = 0;
+        for (int length = maxRowLength; length >= 0; length--) {
+            final int count = lengthStarts[length];
+            lengthStarts[length] = lengthPosition;
+            lengthPosition += count;
+        }
+        final int[] rowsByLength = new int[position];
+        for (int i = 0; i < rowCount; i++) {
+            if (isSelected(i, rootToGroup, groupStarts)) {
+                rowsByLength[lengthStarts[rowLengths[i]]++] = i;
+            }
+        }
+
+        final int[] permutation = new int[position];
+        final int[] nextPositions = groupStarts.clone();
+        for (int row : rowsByLength) {
+            permutation[nextPositions[rootToGroup[find(row)]]++] = row;
+        }
+
+        final List<List<R>> groups = new ArrayList<>(groupOrder.length);
+        for (int group : groupOrder) {
+            groups.add(new RowGroup(permutation, groupStarts[group], groupSizes[group]));
+        }
+        return groups;
+    }
+
+    /**
+     * Returns the number of disjoint groups, including groups consisting of a single row.
+     *
+     * @return the number of groups
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * Returns the number of groups containing more than one row.
+     *
+     * @return the number of groups with more than one row
+     */
+    public int getMultiElementComponentCount() {
+        return multiElementComponentCount;
+    }
+
+    /**
+     * Returns the number of rows in the group containing the given row.
+     *
+     * @param rowIndex the index of a row
+     * @return the size of the row's group
+     */
+    public int getComponentSize(int rowIndex) {
+        return size[find(rowIndex)];
+    }
+
+    /**
+     * Returns the number of distinct non-empty values over all columns, a value counted once per column
+     * it appears in.
+     *
+     * @return the number of distinct column values
+     */
+    public abstract long getDistinctKeyCount();
+
+    /**
+     * Returns the number of columns in the row.
+     *
+     * @param row the row
+     * @return the number of columns
+     */
+    protected abstract int rowLength(R row);
+
+    /**
+     * Returns the number of columns in the row at the given index. Engines whose rows are held in flat arrays
+     * override it to read the length without fetching the row.
+     *
+     * @param rowIndex the index of the row
+     * @return the number of columns
+     */
+    protected int rowLengthAt(int rowIndex) {
+        return rowLength(rawData.get(rowIndex));
+    }
+
+    protected int find(int index) {
+        int root = index;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        while (index != root) {
+            int next = parent[index];
+            parent[index] = root;
+            index = next;
+        }
+        return root;
+    }
+
+    protected void union(int x, int y) {
+        int rootX = find(x);
+        int rootY = find(y);
+        if (rootX != rootY) {
+            if (size[rootX] < size[rootY]) {
+                int tmp = rootX;
+                rootX = rootY;
+                rootY = tmp;
+            }
+            if (size[rootX] > 1 && size[rootY] > 1) {
+                multiElementComponentCount--;
+            } else if (size[rootX] == 1) {
+                multiElementComponentCount++;
+            }
+            parent[rootY] = rootX;
+            size[rootX] += size[rootY];
+            componentCount--;
+        }
+    }
+
+    /**
+     * Replaces the forest with the components built elsewhere, for example by a concurrent
+     * disjoint set, and recomputes the component sizes and counters.
+     *
+     * @param rootOf a function returning the root of every row's component
+     */
+    protected void adoptRoots(IntUnaryOperator rootOf) {
+        Arrays.fill(size, 0);
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = rootOf.applyAsInt(i);
+            size[parent[i]]++;
+        }
+        componentCount = 0;
+        multiElementComponentCount = 0;
+        for (int i = 0; i < parent.length; i++) {
+            if (parent[i] == i) {
+                componentCount++;
+                if (size[i] > 1) {
+                    multiElementComponentCount++;
+                }
+            }
+        }
+    }
+
+    private int[] initializeParents(int size) {
+        int[] parents = new int[size];
+        for (int i = 0; i < size; i++) {
+            parents[i] = i;
+        }
+        return parents;
+    }
+
+    /**
+     * Returns the ids of the first {@code maxGroups} groups in output order. The groups are placed by a stable
+     * counting sort on their precomputed sizes, and only the runs of equally sized groups that reach into the
+     * requested groups are then ordered by their numbers of cells, with a stable merge sort on primitive arrays.
+     */
+    private static int[] selectGroups(int groupCount, int maxGroups, int[] groupSizes, long[] groupElements) {
+        int maxSize = 0;
+        for (int group = 0; group < groupCount; group++) {
+            maxSize = Math.max(maxSize, groupSizes[group]);
+        }
+        final int[] sizeStarts = new int[maxSize + 2];
+        for (int group = 0; group < groupCount; group++) {
+            sizeStarts[maxSize - groupSizes[group] + 1]++;
+        }
+        for (int i = 1; i < sizeStarts.length; i++) {
+            sizeStarts[i] += sizeStarts[i - 1];
+        }
+        final int[] groupOrder = new int[groupCount];
+        final int[] nextPositions = Arrays.copyOf(sizeStarts, maxSize + 1);
+        for (int group = 0; group < groupCount; group++) {
+            groupOrder[nextPositions[maxSize - groupSizes[group]]++] = group;
+        }
+
+        final int selected = Math.min(maxGroups, groupCount);
+        int[] buffer = null;
+        for (int bucket = 0; bucket <= maxSize && sizeStarts[bucket] < selected; bucket++) {
+            final int from = sizeStarts[bucket];
+            final int to = sizeStarts[bucket + 1];
+            if (to - from > 1) {
+                if (buffer == null) {
+                    buffer = new int[groupCount];
+                }
+                sortByElements(groupOrder, buffer, from, to, groupElements);
+            }
+        }
+        return selected == groupCount ? groupOrder : Arrays.copyOf(groupOrder, selected);
+    }
+
+    /**
+     * Sorts the range {@code [from, to)} of the groups by their numbers of cells, descending, keeping the order of
+     * groups with equal numbers of cells, that is the order of their first appearance.
+     */
+    private static void sortByElements(int[] groups, int[] buffer, int from, int to, long[] groupElements) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                final int group = groups[i];
+                int j = i - 1;
+                while (j >= from && groupElements[groups[j]] < groupElements[group]) {
+                    groups[j + 1] = groups[j];
+                    j--;
+                }
+                groups[j + 1] = group;
+            }
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        sortByElements(groups, buffer, from, middle, groupElements);
+        sortByElements(groups, buffer, middle, to, groupElements);
+        if (groupElements[groups[middle - 1]] >= groupElements[groups[middle]]) {
+            return;
+        }
+        System.arraycopy(groups, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right == to || left < middle && groupElements[buffer[left]] >= groupElements[buffer[right]]) {
+                groups[i] = buffer[left++];
+            } else {
+                groups[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Tells whether the row belongs to one of the selected groups.
+     */
+    private boolean isSelected(int rowIndex, int[] rootToGroup, int[] groupStarts) {
+        final int group = rootToGroup[find(rowIndex)];
+        return group >= 0 && groupStarts[group] >= 0;
+    }
+
+    /**
+     * A read-only view of a group as a range of the row permutation.
+     */
+    private final class RowGroup extends AbstractList<R> implements RandomAccess {
+        private final int[] permutation;
+        private final int from;
+        private final int size;
+
+        private RowGroup(int[] permutation, int from, int size) {
+            this.permutation = permutation;
+            this.from = from;
+            this.size = size;
+        }
+
+        @Override
+        public R get(int index) {
+            return rawData.get(permutation[from + Objects.checkIndex(index, size)]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
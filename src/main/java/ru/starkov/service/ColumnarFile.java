@@ -0,0 +1,344 @@
+package ru.starkov.service;
+
+import ru.starkov.model.DataType;
+import ru.starkov.service.metrics.ExecutionMetrics;
+import ru.starkov.service.metrics.ExecutionMetrics.Counter;
+import ru.starkov.service.parser.DoubleRowParser;
+import ru.starkov.service.parser.LongRowParser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A compact binary form of numeric input, converted once from the semicolon-separated text format
+ * and read back by memory-mapping without any parsing.
+ * <p>
+ * The file holds the distinct valid rows of the text file in the order of their first appearance. It starts
+ * with a fixed header: the magic number, the format version, the {@link DataType}, the number of columns,
+ * the number of rows and the numbers of lines and valid rows of the source file, so that a run over the
+ * binary file reports the same counters as a run over the text. The header is followed by the number of
+ * cells of every row and then by the columns one after another. A column is a bitmap marking its empty cells
+ * followed by one fixed-width 64-bit value per row: a {@code long}, or the raw bits of a {@code double}.
+ * A cell is empty when it is missing from a shorter row or when its value is zero, which the grouping
+ * treats as an empty cell anyway. All sections are aligned to eight bytes.
+ * <p>
+ * Only {@code long[]} and {@code double[]} rows are supported.
+ */
+public final class ColumnarFile {
+
+    /**
+     * The extension of converted files.
+     */
+    public static final String EXTENSION = ".bin";
+
+    private static final int MAGIC = 0x4C4E4743;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MIN_ROWS_PER_TASK = 1 << 16;
+
+    private ColumnarFile() {
+    }
+
+    /**
+     * Checks whether a file starts with the header of the binary format.
+     *
+     * @param file the file to check
+     * @return {@code true} if the file is in the binary format
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isColumnar(File file) throws IOException {
+        try (final var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final var magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // reads until the magic number is complete or the file ends
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Reads the type of the data stored in a file in the binary format.
+     *
+     * @param file the file in the binary format
+     * @return the type of the data
+     * @throws IOException if the file cannot be read or is not in the binary format
+     */
+    public static DataType readDataType(File file) throws IOException {
+        try (final var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return Header.read(channel, file).dataType();
+        }
+    }
+
+    /**
+     * Converts a text file of numeric rows into the binary format. The target is first written next to itself
+     * and then moved over the previous file, if any.
+     *
+     * @param source   the text file
+     * @param target   the path of the binary file
+     * @param dataType the type of the data in the text file
+     * @param threads  the number of threads parsing the text file
+     * @return the number of rows written
+     * @throws IOException if the text file cannot be read or the binary file cannot be written
+     * @throws IllegalArgumentException if the data is not numeric
+     */
+    public static int convert(File source, Path target, DataType dataType, int threads) throws IOException {
+        Objects.requireNonNull(source, "File can't be null");
+        final var metrics = new ExecutionMetrics();
+        return switch (dataType) {
+            case LONG -> {
+                final var rows = new MappedDataExtractor<>(LongRowParser::new, threads, metrics).getValidData(source);
+                write(target, dataType, rows, metrics);
+                yield rows.size();
+            }
+            case DOUBLE -> {
+                final var rows = new MappedDataExtractor<>(DoubleRowParser::new, threads, metrics).getValidData(source);
+                write(target, dataType, rows, metrics);
+                yield rows.size();
+            }
+            case STRING -> throw new IllegalArgumentException("Binary format supports numeric data only");
+        };
+    }
+
+    /**
+     * Reads the rows of a file in the binary format by memory-mapping it; ranges of rows are decoded
+     * on the given number of threads.
+     *
+     * @param file    the file in the binary format
+     * @param rowType the expected type of a row, {@code long[].class} or {@code double[].class}
+     * @param threads the number of threads decoding the rows
+     * @param <R>     the type of a row
+     * @return the rows together with the counts of the source file
+     * @throws IOException if the file cannot be read, is not in the binary format or holds rows of another type
+     */
+    static <R> ColumnarRows<R> read(File file, Class<R> rowType, int threads) throws IOException {
+        try (final var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final var header = Header.read(channel, file);
+            if (rowTypeOf(header.dataType()) != rowType) {
+                throw new IOException("File holds " + header.dataType() + " rows, expected " + rowType.getSimpleName());
+            }
+            final int rowCount = header.rowCount();
+            long position = HEADER_SIZE;
+            final IntBuffer widths = map(channel, position, (long) rowCount * Integer.BYTES).asIntBuffer();
+            position += align((long) rowCount * Integer.BYTES);
+            final var bitmaps = new LongBuffer[header.columnCount()];
+            final var values = new LongBuffer[header.columnCount()];
+            for (int col = 0; col < header.columnCount(); col++) {
+                final long bitmapSize = (long) bitmapWords(rowCount) * Long.BYTES;
+                bitmaps[col] = map(channel, position, bitmapSize).asLongBuffer();
+                position += bitmapSize;
+                values[col] = map(channel, position, (long) rowCount * Long.BYTES).asLongBuffer();
+                position += (long) rowCount * Long.BYTES;
+            }
+            final int taskCount = Math.max(1, Math.min(threads, rowCount / MIN_ROWS_PER_TASK));
+            final var tasks = new ArrayList<Callable<List<R>>>(taskCount);
+            for (int i = 0; i < taskCount; i++) {
+                final int from = (int) ((long) rowCount * i / taskCount);
+                final int to = (int) ((long) rowCount * (i + 1) / taskCount);
+                tasks.add(() -> decode(rowType, widths, bitmaps, values, from, to));
+            }
+            final var rows = new ArrayList<R>(rowCount);
+            for (List<R> range : invokeAll(tasks, threads)) {
+                rows.addAll(range);
+            }
+            return new ColumnarRows<>(rows, header.sourceLines(), header.validRows());
+        } catch (IOException e) {
+            System.err.printf("Error reading file: %s", file.getAbsolutePath());
+            throw e;
+        }
+    }
+
+    private static <R> void write(Path target, DataType dataType, List<R> rows, ExecutionMetrics metrics) throws IOException {
+        final var path = target.toAbsolutePath();
+        final var temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        final int columnCount = rows.stream().mapToInt(ColumnarFile::width).max().orElse(0);
+        try {
+            try (final var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+                final long sourceLines = metrics.get(Counter.LINES_READ);
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(dataType.ordinal());
+                output.writeInt(columnCount);
+                output.writeLong(rows.size());
+                output.writeLong(sourceLines);
+                output.writeLong(sourceLines - metrics.get(Counter.LINES_REJECTED));
+                for (R row : rows) {
+                    output.writeInt(width(row));
+                }
+                if (rows.size() % 2 != 0) {
+                    output.writeInt(0);
+                }
+                for (int col = 0; col < columnCount; col++) {
+                    long word = 0;
+                    for (int i = 0; i < rows.size(); i++) {
+                        if (cell(rows.get(i), col) == 0) {
+                            word |= 1L << i;
+                        }
+                        if ((i & 63) == 63) {
+                            output.writeLong(word);
+                            word = 0;
+                        }
+                    }
+                    if ((rows.size() & 63) != 0) {
+                        output.writeLong(word);
+                    }
+                    for (R row : rows) {
+                        output.writeLong(cell(row, col));
+                    }
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            System.err.printf("Error writing to file: %s", path);
+            throw e;
+        }
+    }
+
+    private static <R> List<R> decode(
+            Class<R> rowType,
+            IntBuffer widths,
+            LongBuffer[] bitmaps,
+            LongBuffer[] values,
+            int from,
+            int to
+    ) {
+        final var rows = new ArrayList<R>(to - from);
+        final boolean longs = rowType == long[].class;
+        for (int i = from; i < to; i++) {
+            final int width = widths.get(i);
+            final var cells = longs ? new long[width] : null;
+            final var doubles = longs ? null : new double[width];
+            for (int col = 0; col < width; col++) {
+                if ((bitmaps[col].get(i >>> 6) & (1L << i)) != 0) {
+                    continue;
+                }
+                final long bits = values[col].get(i);
+                if (longs) {
+                    cells[col] = bits;
+                } else {
+                    doubles[col] = Double.longBitsToDouble(bits);
+                }
+            }
+            rows.add(rowType.cast(longs ? cells : doubles));
+        }
+        return rows;
+    }
+
+    private static <C> List<C> invokeAll(List<Callable<C>> tasks, int threads) throws IOException {
+        if (tasks.size() == 1) {
+            try {
+                return List.of(tasks.get(0).call());
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to decode file", e);
+            }
+        }
+        try (final var pool = new ForkJoinPool(threads)) {
+            final var results = new ArrayList<C>(tasks.size());
+            for (Future<C> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding file", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Failed to decode file", e.getCause());
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Section at offset " + position + " exceeds " + Integer.MAX_VALUE + " bytes");
+        }
+        if (position + size > channel.size()) {
+            throw new IOException("File is truncated at offset " + position);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    private static long align(long size) {
+        return (size + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    private static int bitmapWords(int rowCount) {
+        return (rowCount + 63) >>> 6;
+    }
+
+    private static int width(Object row) {
+        return switch (row) {
+            case long[] cells -> cells.length;
+            case double[] cells -> cells.length;
+            default -> throw new IllegalArgumentException("Unsupported row type: " + row.getClass().getSimpleName());
+        };
+    }
+
+    private static long cell(Object row, int colIndex) {
+        return switch (row) {
+            case long[] cells -> colIndex < cells.length ? cells[colIndex] : 0;
+            case double[] cells -> colIndex < cells.length && cells[colIndex] != 0
+                    ? Double.doubleToRawLongBits(cells[colIndex])
+                    : 0;
+            default -> throw new IllegalArgumentException("Unsupported row type: " + row.getClass().getSimpleName());
+        };
+    }
+
+    private static Class<?> rowTypeOf(DataType dataType) {
+        return switch (dataType) {
+            case LONG -> long[].class;
+            case DOUBLE -> double[].class;
+            case STRING -> String.class;
+        };
+    }
+
+    /**
+     * The rows of a binary file, and the numbers of lines and valid rows of the text file it was converted from.
+     */
+    record ColumnarRows<R>(List<R> rows, long sourceLines, long validRows) {
+    }
+
+    private record Header(DataType dataType, int columnCount, int rowCount, long sourceLines, long validRows) {
+
+        private static Header read(FileChannel channel, File file) throws IOException {
+            final var buffer = ByteBuffer.allocate(HEADER_SIZE);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // reads until the header is complete or the file ends
+            }
+            if (buffer.hasRemaining() || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a binary columnar file: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported version " + buffer.getInt(4) + " of binary columnar file: " + file);
+            }
+            final int type = buffer.getInt(8);
+            final long rowCount = buffer.getLong(16);
+            if (type < 0 || type >= DataType.values().length || rowCount < 0 || rowCount > Integer.MAX_VALUE
+                    || buffer.getInt(12) < 0) {
+                throw new IOException("Malformed header of binary columnar file: " + file);
+            }
+            return new Header(DataType.values()[type], buffer.getInt(12), (int) rowCount, buffer.getLong(24), buffer.getLong(32));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.starkov.service;
+
+import java.util.List;
+
+/**
+ * Union-Find engine specialised for {@code double} data.
+ * <p>
+ * Rows are kept as {@code double[]} and every non-empty cell is indexed by its column and the
+ * 64-bit pattern of its value in a primitive column index. Values are compared the same way as by
+ * {@link Double#equals(Object)}, and {@code 0.0}, whose bit pattern is {@code 0}, denotes an empty cell.
+ */
+public final class DoubleUnionFind extends PrimitiveUnionFind<double[]> {
+
+    /**
+     * Constructs an instance of the DoubleUnionFind class for the given raw data.
+     *
+     * @param rawData a list of rows, where each element of a row is a column value
+     */
+    public DoubleUnionFind(List<double[]> rawData) {
+        this(rawData, 1);
+    }
+
+    /**
+     * Constructs an instance of the DoubleUnionFind class linking the rows on the given number of threads.
+     *
+     * @param rawData a list of rows, where each element of a row is a column value
+     * @param threads the number of threads linking the rows
+     */
+    public DoubleUnionFind(List<double[]> rawData, int threads) {
+        this(rawData, threads, UNLIMITED_MEMORY);
+    }
+
+    /**
+     * Constructs an instance of the DoubleUnionFind class linking the rows on the given number of threads,
+     * spilling the column index to disk if it is expected to exceed the memory budget.
+     *
+     * @param rawData           a list of rows, where each element of a row is a column value
+     * @param threads           the number of threads linking the rows
+     * @param indexMemoryBudget the number of bytes the column index may occupy in memory
+     */
+    public DoubleUnionFind(List<double[]> rawData, int threads, long indexMemoryBudget) {
+        super(rawData, threads, indexMemoryBudget);
+        initializeUnionFind();
+    }
+
+    /**
+     * Constructs an instance of the DoubleUnionFind class resuming from a snapshot, linking only the rows
+     * of the batch that are not present in the snapshot yet.
+     *
+     * @param base  the snapshot to resume from; it is consumed and must not be used afterwards
+     * @param batch a list of new rows, where each element of a row is a column value
+     */
+    public DoubleUnionFind(UnionFindSnapshot<double[]> base, List<double[]> batch) {
+        super(base, batch);
+        initializeUnionFind();
+    }
+
+    /**
+     * Converts a parsed row of boxed {@link Double} values into a primitive row.
+     *
+     * @param columns the parsed row
+     * @return the row as a {@code double[]}
+     */
+    public static double[] toRow(List<?> columns) {
+        final var row = new double[columns.size()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = (Double) columns.get(i);
+        }
+        return row;
+    }
+
+    @Override
+    protected int rowLength(double[] row) {
+        return row.length;
+    }
+
+    @Override
+    protected long cellKey(double[] row, int colIndex) {
+        return Double.doubleToLongBits(row[colIndex]);
+    }
+}
@@ -1,57 +1,332 @@
 package ru.starkov.service;
 
+import ru.starkov.model.ColumnType;
 import ru.starkov.model.DataType;
+import ru.starkov.model.TypeProfile;
+import ru.starkov.service.parser.ByteBufferChars;
+import ru.starkov.service.parser.CellCodec;
+import ru.starkov.service.parser.RowParser;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+/**
+ * Infers the type of every column of a file from a sample of its lines, and the type of the whole file from
+ * the types of its columns.
+ * <p>
+ * The file is split into windows spread over all of it, and the first lines of every window are sampled,
+ * the windows being scanned in parallel. Every non-empty cell is checked with the same {@link CellCodec}s
+ * that later validate the cells of the file, and a column gets the type whose codec accepts the most of its
+ * sampled values, the narrowest one among equally good types. The cells that codec rejects, whether no numeric
+ * codec accepts them, such as stray quotes inside a number, or they are a stray decimal in an integer column or
+ * the other way round, are counted as malformed: as long as they are at most one in twenty cells of the column,
+ * they are left to be rejected with their lines, otherwise the column holds strings. The file gets the narrowest type
+ * accepted by every column. As decimal cells are not valid integer cells and vice versa, a file with both
+ * integer and decimal columns gets the decimal type and is {@link TypeProfile#isMixed() mixed}: every column
+ * is then read with the codec of its own type instead of rejecting the lines of one kind. Sampling every line
+ * verifies the whole file.
+ * <p>
+ * A gzip-compressed file cannot be split into windows without inflating all of it, so its first lines are
+ * sampled instead, inflation stopping once enough lines are sampled.
+ */
 public class DynamicTypeDetector {
 
+    /**
+     * The number of lines sampled by default.
+     */
+    public static final int DEFAULT_SAMPLE_LINES = 10_000;
+
+    private static final int SAMPLE_WINDOWS = 64;
+    private static final long MIN_WINDOW_SIZE = 1L << 12;
+    private static final long MAX_WINDOW_SIZE = 1L << 30;
+    private static final int INT_BIT = 1;
+    private static final int LONG_BIT = 1 << 1;
+    private static final int DOUBLE_BIT = 1 << 2;
+    private static final int ALL_TYPES = INT_BIT | LONG_BIT | DOUBLE_BIT;
+    private static final int MAX_MALFORMED_SHARE = 20;
+
+    /**
+     * Determines the type of the data of a file from the default sample of its lines, on a single thread.
+     *
+     * @param file the file
+     * @return the type of the data
+     * @throws IOException if the file cannot be read
+     */
     public static DataType determineDataType(File file) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            int linesToCheck = 10;
-            int linesChecked = 0;
-
-            while ((line = reader.readLine()) != null && linesChecked < linesToCheck) {
-                String[] values = line.split(";");
-                for (String value : values) {
-                    String cleanedValue = value.replaceAll("\"", "");
-                    if (cleanedValue.isEmpty()) {
-                        continue;
-                    }
-                    if (isDouble(cleanedValue)) {
-                        return DataType.DOUBLE;
-                    } else if (isLong(cleanedValue)) {
-                        return DataType.LONG;
-                    } else {
-                        return DataType.STRING;
-                    }
+        return detect(file, DEFAULT_SAMPLE_LINES, 1).dataType();
+    }
+
+    /**
+     * Infers the types of the columns of a file and the type of the whole file. The type of a file in the
+     * {@link ColumnarFile binary format} is read from its header.
+     *
+     * @param file        the file
+     * @param sampleLines the number of lines to sample, {@link Integer#MAX_VALUE} to check every line
+     * @param threads     the number of threads scanning the sampled windows
+     * @return the inferred types
+     * @throws IOException if the file cannot be read
+     */
+    public static TypeProfile detect(File file, int sampleLines, int threads) throws IOException {
+        if (ColumnarFile.isColumnar(file)) {
+            return new TypeProfile(ColumnarFile.readDataType(file), List.of(), 0);
+        }
+        if (GzipBlockReader.isGzip(file)) {
+            return detectCompressed(file, sampleLines);
+        }
+        try (final var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final int windows = (int) Math.max(SAMPLE_WINDOWS, (size + MAX_WINDOW_SIZE - 1) / MAX_WINDOW_SIZE);
+            final long[] boundaries = LineBoundarySplitter.split(channel, windows, MIN_WINDOW_SIZE);
+            final int windowCount = boundaries.length - 1;
+            final int linesPerWindow = sampleLines == Integer.MAX_VALUE
+                    ? Integer.MAX_VALUE
+                    : (sampleLines + windowCount - 1) / windowCount;
+            final var tasks = new ArrayList<Callable<Sample>>(windowCount);
+            for (int i = 0; i < windowCount; i++) {
+                final long start = boundaries[i];
+                final long length = boundaries[i + 1] - start;
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Line starting near offset " + start + " exceeds " + MAX_WINDOW_SIZE + " bytes");
+                }
+                tasks.add(() -> sampleWindow(channel.map(FileChannel.MapMode.READ_ONLY, start, length), linesPerWindow));
+            }
+            return profile(merge(invokeAll(tasks, threads)));
+        } catch (IOException e) {
+            System.err.printf("Error reading file: %s", file.getAbsolutePath());
+            throw e;
+        }
+    }
+
+    private static TypeProfile detectCompressed(File file, int sampleLines) throws IOException {
+        final var samples = new ArrayList<Sample>();
+        long remaining = sampleLines;
+        try (final var blocks = new GzipBlockReader(file)) {
+            for (var block = blocks.next(); block != null && remaining > 0; block = blocks.next()) {
+                final var sample = sampleWindow(block.buffer(), (int) remaining);
+                samples.add(sample);
+                remaining -= sample.lines();
+            }
+        } catch (IOException e) {
+            System.err.printf("Error reading file: %s", file.getAbsolutePath());
+            throw e;
+        }
+        return profile(merge(samples));
+    }
+
+    private static Sample sampleWindow(ByteBuffer window, int maxLines) {
+        final var chars = new ByteBufferChars().wrap(window);
+        final var columns = new ArrayList<ColumnSample>();
+        long lines = 0;
+        int lineStart = 0;
+        final int limit = window.limit();
+        while (lineStart < limit && lines < maxLines) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && window.get(lineEnd) != '\n' && window.get(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            sampleLine(chars, lineStart, lineEnd, columns);
+            lines++;
+            if (lineEnd + 1 < limit && window.get(lineEnd) == '\r' && window.get(lineEnd + 1) == '\n') {
+                lineEnd++;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return new Sample(columns, lines);
+    }
+
+    /**
+     * Narrows the types accepted by every column to those accepting the non-empty cells of the line occupying
+     * the range {@code [start, end)} of the window. Bytes are read as ISO-8859-1 characters, the same way the
+     * {@link RowParser}s hand them to the codecs, so multi-byte characters never pass as digits, quotes or
+     * separators.
+     */
+    private static void sampleLine(CharSequence window, int start, int end, List<ColumnSample> columns) {
+        int colIndex = 0;
+        int cellStart = start;
+        while (cellStart <= end) {
+            int cellEnd = cellStart;
+            while (cellEnd < end && window.charAt(cellEnd) != ';') {
+                cellEnd++;
+            }
+            if (hasValue(window, cellStart, cellEnd)) {
+                while (columns.size() <= colIndex) {
+                    columns.add(new ColumnSample());
+                }
+                columns.get(colIndex).add(acceptedTypes(window, cellStart, cellEnd));
+            }
+            colIndex++;
+            cellStart = cellEnd + 1;
+        }
+    }
+
+    private static int acceptedTypes(CharSequence line, int start, int end) {
+        int types = 0;
+        final Long value = CellCodec.longs().decode(line, start, end);
+        if (value != null) {
+            types |= value <= Integer.MAX_VALUE ? LONG_BIT | INT_BIT : LONG_BIT;
+        }
+        if (CellCodec.doubles().decode(line, start, end) != null) {
+            types |= DOUBLE_BIT;
+        }
+        return types;
+    }
+
+    private static boolean hasValue(CharSequence line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (line.charAt(i) != '"') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Sample merge(List<Sample> samples) {
+        final var columns = new ArrayList<ColumnSample>();
+        long lines = 0;
+        for (Sample sample : samples) {
+            for (int i = 0; i < sample.columns().size(); i++) {
+                if (i == columns.size()) {
+                    columns.add(new ColumnSample());
                 }
-                linesChecked++;
+                columns.get(i).merge(sample.columns().get(i));
+            }
+            lines += sample.lines();
+        }
+        return new Sample(columns, lines);
+    }
+
+    private static TypeProfile profile(Sample sample) {
+        final var columnTypes = new ArrayList<ColumnType>(sample.columns().size());
+        var fileType = ColumnType.EMPTY;
+        int fileTypes = ALL_TYPES;
+        for (ColumnSample column : sample.columns()) {
+            final var columnType = column.type();
+            columnTypes.add(columnType);
+            if (columnType == ColumnType.STRING) {
+                fileType = ColumnType.STRING;
+            } else if (columnType != ColumnType.EMPTY && fileType != ColumnType.STRING) {
+                fileTypes &= column.types();
+                fileType = fileTypes == 0 ? ColumnType.DOUBLE : narrowest(fileTypes);
             }
         }
-        return DataType.STRING;
+        final var dataType = switch (fileType) {
+            case INT, LONG -> DataType.LONG;
+            case DOUBLE -> DataType.DOUBLE;
+            default -> DataType.STRING;
+        };
+        return new TypeProfile(dataType, List.copyOf(columnTypes), sample.lines());
     }
 
-    private static boolean isLong(String value) {
-        try {
-            Long.parseLong(value);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+    private static ColumnType narrowest(int types) {
+        if ((types & INT_BIT) != 0) {
+            return ColumnType.INT;
+        }
+        if ((types & LONG_BIT) != 0) {
+            return ColumnType.LONG;
+        }
+        if ((types & DOUBLE_BIT) != 0) {
+            return ColumnType.DOUBLE;
         }
+        return ColumnType.STRING;
     }
 
-    private static boolean isDouble(String value) {
-        try {
-            Double.parseDouble(value);
-            return value.contains(".") || value.toLowerCase().contains("e");
-        } catch (NumberFormatException e) {
-            return false;
+    private static <C> List<C> invokeAll(List<Callable<C>> tasks, int threads) throws IOException {
+        try (final var pool = new ForkJoinPool(Math.max(1, threads))) {
+            final var results = new ArrayList<C>(tasks.size());
+            for (Future<C> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sampling file", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException("Failed to sample file", e.getCause());
         }
     }
 
+    /**
+     * The sampled columns and the number of sampled lines.
+     */
+    private record Sample(List<ColumnSample> columns, long lines) {
+    }
+
+    /**
+     * The numbers of the sampled cells of a column and of the cells accepted by the codec of every type.
+     */
+    private static final class ColumnSample {
+
+        private long cells;
+        private long intCells;
+        private long longCells;
+        private long doubleCells;
+
+        void add(int cellTypes) {
+            cells++;
+            if ((cellTypes & INT_BIT) != 0) {
+                intCells++;
+            }
+            if ((cellTypes & LONG_BIT) != 0) {
+                longCells++;
+            }
+            if ((cellTypes & DOUBLE_BIT) != 0) {
+                doubleCells++;
+            }
+        }
+
+        void merge(ColumnSample other) {
+            cells += other.cells;
+            intCells += other.intCells;
+            longCells += other.longCells;
+            doubleCells += other.doubleCells;
+        }
+
+        /**
+         * Returns the number of cells accepted by the best type, the cells it rejects being malformed.
+         */
+        private long wellFormedCells() {
+            return Math.max(longCells, doubleCells);
+        }
+
+        /**
+         * Returns the types accepting every well-formed cell.
+         */
+        int types() {
+            final long wellFormed = wellFormedCells();
+            int types = 0;
+            if (intCells == wellFormed) {
+                types |= INT_BIT;
+            }
+            if (longCells == wellFormed) {
+                types |= LONG_BIT;
+            }
+            if (doubleCells == wellFormed) {
+                types |= DOUBLE_BIT;
+            }
+            return types;
+        }
+
+        ColumnType type() {
+            if (cells == 0) {
+                return ColumnType.EMPTY;
+            }
+            final long malformedCells = cells - wellFormedCells();
+            if (malformedCells * MAX_MALFORMED_SHARE > cells || malformedCells == cells) {
+                return ColumnType.STRING;
+            }
+            return narrowest(types());
+        }
+    }
 }
@@ -0,0 +1,388 @@
+package ru.starkov.service;
+
+import ru.starkov.model.DataType;
+import ru.starkov.service.parser.CellCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A persistent index answering which written group contains a value in a given column, and which rows the
+ * group holds, without reading the input or grouping again.
+ * <p>
+ * The index is written next to the output of a run and covers the groups of that output, numbered the same
+ * way. It starts with a fixed header: the magic number, the format version, the {@link DataType}, the numbers
+ * of groups, rows, cells, hash slots and distinct values. The header is followed by four sections:
+ * <ul>
+ *     <li>an open-addressing hash table mapping every (column index, raw 64-bit value) pair of the written
+ *     rows to its group, sixteen bytes per slot: the value, the column index plus one ({@code 0} marking a
+ *     free slot) and the group;</li>
+ *     <li>the offset of the first row of every group in the row section, followed by the number of rows;</li>
+ *     <li>the offset of the first cell of every row in the cell section, followed by the number of cells;</li>
+ *     <li>the cells of every row in output order, a {@code long} or the raw bits of a {@code double},
+ *     {@code 0} for an empty cell.</li>
+ * </ul>
+ * Opening the index only maps these sections, and a lookup probes a few slots of the table, so a query
+ * takes microseconds whatever the size of the data. All sections are aligned to eight bytes.
+ * <p>
+ * Only numeric data is supported: {@code long[]} rows for {@link DataType#LONG} and {@code double[]} rows for {@link DataType#DOUBLE}.
+ */
+public final class GroupQueryIndex {
+
+    /**
+     * Returned by lookups when no written group contains the value.
+     */
+    public static final int NOT_FOUND = -1;
+
+    private static final int MAGIC = 0x47514958;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 48;
+    private static final int SLOT_SIZE = 16;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long PHI = 0x9E3779B97F4A7C15L;
+
+    private final DataType dataType;
+    private final int groupCount;
+    private final long keyCount;
+    private final ByteBuffer slots;
+    private final long slotMask;
+    private final LongBuffer groupStarts;
+    private final LongBuffer rowStarts;
+    private final LongBuffer cells;
+
+    private GroupQueryIndex(
+            DataType dataType,
+            int groupCount,
+            long keyCount,
+            ByteBuffer slots,
+            LongBuffer groupStarts,
+            LongBuffer rowStarts,
+            LongBuffer cells
+    ) {
+        this.dataType = dataType;
+        this.groupCount = groupCount;
+        this.keyCount = keyCount;
+        this.slots = slots;
+        this.slotMask = slots.capacity() / SLOT_SIZE - 1;
+        this.groupStarts = groupStarts;
+        this.rowStarts = rowStarts;
+        this.cells = cells;
+    }
+
+    /**
+     * Writes the index of the written groups. The index is first written next to itself and then moved over
+     * the previous file, if any.
+     *
+     * @param target       the path of the index
+     * @param dataType     the type of the data in the rows
+     * @param groups       the written groups, in output order
+     * @param expectedKeys the expected number of distinct (column index, value) pairs, used to size the table
+     * @param <R>          the type of a row
+     * @throws IOException if the index cannot be written
+     * @throws IllegalArgumentException if the data is not numeric
+     */
+    public static <R> void write(Path target, DataType dataType, List<List<R>> groups, long expectedKeys) throws IOException {
+        if (dataType == DataType.STRING) {
+            throw new IllegalArgumentException("Group indexes are supported for numeric data only");
+        }
+        long rowCount = 0;
+        long cellCount = 0;
+        for (List<R> group : groups) {
+            rowCount += group.size();
+            for (R row : group) {
+                cellCount += width(row);
+            }
+        }
+        final long slotCount = slotCountFor(Math.min(Math.max(expectedKeys, 0), cellCount));
+        final var path = target.toAbsolutePath();
+        final var temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (final var channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final long dataStart = HEADER_SIZE + slotCount * SLOT_SIZE;
+                final MappedByteBuffer table = map(channel, FileChannel.MapMode.READ_WRITE, HEADER_SIZE, slotCount * SLOT_SIZE);
+                channel.position(dataStart);
+                final var output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+                long rowStart = 0;
+                for (List<R> group : groups) {
+                    output.writeLong(rowStart);
+                    rowStart += group.size();
+                }
+                output.writeLong(rowStart);
+                long cellStart = 0;
+                for (List<R> group : groups) {
+                    for (R row : group) {
+                        output.writeLong(cellStart);
+                        cellStart += width(row);
+                    }
+                }
+                output.writeLong(cellStart);
+                long keyCount = 0;
+                for (int groupIndex = 0; groupIndex < groups.size(); groupIndex++) {
+                    for (R row : groups.get(groupIndex)) {
+                        for (int colIndex = 0; colIndex < width(row); colIndex++) {
+                            final long key = cell(row, colIndex);
+                            output.writeLong(key);
+                            if (key != 0 && insert(table, slotCount - 1, colIndex, key, groupIndex)) {
+                                keyCount++;
+                            }
+                        }
+                    }
+                }
+                output.flush();
+                final var header = ByteBuffer.allocate(HEADER_SIZE)
+                        .putInt(MAGIC)
+                        .putInt(VERSION)
+                        .putInt(dataType.ordinal())
+                        .putInt(groups.size())
+                        .putLong(rowCount)
+                        .putLong(cellCount)
+                        .putLong(slotCount)
+                        .putLong(keyCount)
+                        .flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            System.err.printf("Error writing to file: %s", path);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an index by memory-mapping it.
+     *
+     * @param path the path of the index
+     * @return the index
+     * @throws IOException if the file cannot be read or is not a group index
+     */
+    public static GroupQueryIndex open(Path path) throws IOException {
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // reads until the header is complete or the file ends
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a group index: " + path);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported version " + header.getInt(4) + " of group index: " + path);
+            }
+            final int type = header.getInt(8);
+            final int groupCount = header.getInt(12);
+            final long rowCount = header.getLong(16);
+            final long cellCount = header.getLong(24);
+            final long slotCount = header.getLong(32);
+            if (type < 0 || type >= DataType.values().length || groupCount < 0 || rowCount < 0 || cellCount < 0
+                    || slotCount < 1 || Long.bitCount(slotCount) != 1) {
+                throw new IOException("Malformed header of group index: " + path);
+            }
+            long position = HEADER_SIZE;
+            final var slots = map(channel, FileChannel.MapMode.READ_ONLY, position, slotCount * SLOT_SIZE);
+            position += slotCount * SLOT_SIZE;
+            final var groupStarts = map(channel, FileChannel.MapMode.READ_ONLY, position, (groupCount + 1L) * Long.BYTES);
+            position += (groupCount + 1L) * Long.BYTES;
+            final var rowStarts = map(channel, FileChannel.MapMode.READ_ONLY, position, (rowCount + 1) * Long.BYTES);
+            position += (rowCount + 1) * Long.BYTES;
+            final var cells = map(channel, FileChannel.MapMode.READ_ONLY, position, cellCount * Long.BYTES);
+            return new GroupQueryIndex(
+                    DataType.values()[type],
+                    groupCount,
+                    header.getLong(40),
+                    slots,
+                    groupStarts.asLongBuffer(),
+                    rowStarts.asLongBuffer(),
+                    cells.asLongBuffer()
+            );
+        } catch (IOException e) {
+            System.err.printf("Error reading file: %s", path.toAbsolutePath());
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the type of the indexed data.
+     *
+     * @return the type of the data
+     */
+    public DataType dataType() {
+        return dataType;
+    }
+
+    /**
+     * Returns the number of indexed groups.
+     *
+     * @return the number of groups
+     */
+    public int groupCount() {
+        return groupCount;
+    }
+
+    /**
+     * Returns the number of distinct (column index, value) pairs of the indexed rows.
+     *
+     * @return the number of distinct values
+     */
+    public long keyCount() {
+        return keyCount;
+    }
+
+    /**
+     * Finds the group containing the raw 64-bit value in the given column.
+     *
+     * @param colIndex the index of the column, starting from {@code 0}
+     * @param key      the raw value: a {@code long}, or the raw bits of a {@code double}
+     * @return the index of the group, starting from {@code 0}, or {@link #NOT_FOUND}
+     */
+    public int findGroup(int colIndex, long key) {
+        if (key == 0 || colIndex < 0) {
+            return NOT_FOUND;
+        }
+        for (long slot = mix(colIndex, key) & slotMask; ; slot = (slot + 1) & slotMask) {
+            final int offset = (int) (slot * SLOT_SIZE);
+            final int storedColumn = slots.getInt(offset + Long.BYTES);
+            if (storedColumn == 0) {
+                return NOT_FOUND;
+            }
+            if (storedColumn == colIndex + 1 && slots.getLong(offset) == key) {
+                return slots.getInt(offset + Long.BYTES + Integer.BYTES);
+            }
+        }
+    }
+
+    /**
+     * Finds the group containing the value in the given column. The value is validated and parsed the same
+     * way as the cells of the input, with or without the surrounding quotes.
+     *
+     * @param colIndex the index of the column, starting from {@code 0}
+     * @param value    the value as written in the input
+     * @return the index of the group, starting from {@code 0}, or {@link #NOT_FOUND}
+     * @throws IllegalArgumentException if the value is not valid for the type of the data
+     */
+    public int findGroup(int colIndex, String value) {
+        final var quoted = value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"") ? value : '"' + value + '"';
+        final Object parsed = CellCodec.forType(dataType).decode(quoted, 0, quoted.length());
+        final long key = switch (parsed) {
+            case Long number -> number;
+            case Double number -> number == 0 ? 0 : Double.doubleToRawLongBits(number);
+            case null, default -> throw new IllegalArgumentException("Not a valid " + dataType + " value: " + value);
+        };
+        return findGroup(colIndex, key);
+    }
+
+    /**
+     * Returns the rows of a group in output order.
+     *
+     * @param group   the index of the group, starting from {@code 0}
+     * @param rowType the type of a row, {@code long[].class} or {@code double[].class} as the data requires
+     * @param <R>     the type of a row
+     * @return the rows of the group
+     * @throws IndexOutOfBoundsException if there is no such group
+     * @throws IllegalArgumentException if the row type does not match the data
+     */
+    public <R> List<R> groupRows(int group, Class<R> rowType) {
+        Objects.checkIndex(group, groupCount);
+        if (rowType != (dataType == DataType.DOUBLE ? double[].class : long[].class)) {
+            throw new IllegalArgumentException("Index holds " + dataType + " rows, not " + rowType.getSimpleName());
+        }
+        final int from = (int) groupStarts.get(group);
+        final int to = (int) groupStarts.get(group + 1);
+        final var rows = new ArrayList<R>(to - from);
+        for (int rowIndex = from; rowIndex < to; rowIndex++) {
+            final int cellStart = (int) rowStarts.get(rowIndex);
+            final int width = (int) rowStarts.get(rowIndex + 1) - cellStart;
+            if (dataType == DataType.DOUBLE) {
+                final var row = new double[width];
+                for (int colIndex = 0; colIndex < width; colIndex++) {
+                    row[colIndex] = Double.longBitsToDouble(cells.get(cellStart + colIndex));
+                }
+                rows.add(rowType.cast(row));
+            } else {
+                final var row = new long[width];
+                cells.get(cellStart, row);
+                rows.add(rowType.cast(row));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Stores the group of a pair unless the pair is already present.
+     *
+     * @return {@code true} if the pair was new
+     */
+    private static boolean insert(ByteBuffer table, long mask, int colIndex, long key, int group) {
+        for (long slot = mix(colIndex, key) & mask; ; slot = (slot + 1) & mask) {
+            final int offset = (int) (slot * SLOT_SIZE);
+            final int storedColumn = table.getInt(offset + Long.BYTES);
+            if (storedColumn == 0) {
+                table.putLong(offset, key);
+                table.putInt(offset + Long.BYTES, colIndex + 1);
+                table.putInt(offset + Long.BYTES + Integer.BYTES, group);
+                return true;
+            }
+            if (storedColumn == colIndex + 1 && table.getLong(offset) == key) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns a power of two keeping the table at most three quarters full.
+     */
+    private static long slotCountFor(long keys) {
+        final long required = Math.max(2, (keys * 4 + 2) / 3 + 1);
+        return Long.highestOneBit(required - 1) << 1;
+    }
+
+    private static long mix(int colIndex, long key) {
+        long h = key + colIndex * PHI;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Section at offset " + position + " exceeds " + Integer.MAX_VALUE + " bytes");
+        }
+        if (mode == FileChannel.MapMode.READ_ONLY && position + size > channel.size()) {
+            throw new IOException("File is truncated at offset " + position);
+        }
+        return channel.map(mode, position, size);
+    }
+
+    private static int width(Object row) {
+        return switch (row) {
+            case long[] cells -> cells.length;
+            case double[] cells -> cells.length;
+            default -> throw new IllegalArgumentException("Unsupported row type: " + row.getClass().getSimpleName());
+        };
+    }
+
+    private static long cell(Object row, int colIndex) {
+        return switch (row) {
+            case long[] cells -> cells[colIndex];
+            case double[] cells -> cells[colIndex] != 0 ? Double.doubleToRawLongBits(cells[colIndex]) : 0;
+            default -> throw new IllegalArgumentException("Unsupported row type: " + row.getClass().getSimpleName());
+        };
+    }
+}
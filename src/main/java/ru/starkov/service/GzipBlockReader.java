@@ -0,0 +1,265 @@
+package ru.starkov.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a gzip-compressed file as a sequence of blocks of whole lines, inflated on a background thread.
+ * <p>
+ * The inflating thread fills blocks of {@value #BLOCK_SIZE} bytes and hands them to the reading thread through
+ * a bounded queue, so that inflating the next blocks overlaps with parsing the current one, while at most
+ * {@value #MAX_BLOCKS} blocks exist at a time. Every block but the last ends right after a line terminator,
+ * the bytes of an incomplete line being carried over to the next block, so a block can be scanned like a
+ * memory-mapped window of a plain file. A block is recycled once the next one is requested.
+ */
+public class GzipBlockReader implements AutoCloseable {
+
+    /**
+     * The extension of a gzip-compressed file.
+     */
+    public static final String EXTENSION = ".gz";
+
+    private static final int MAGIC = 0x8B1F;
+    private static final int BLOCK_SIZE = 1 << 22;
+    private static final int MAX_BLOCKS = 4;
+    private static final int INFLATER_BUFFER_SIZE = 1 << 16;
+    private static final Block END = new Block(new byte[0], 0);
+
+    private final BlockingQueue<Block> filledBlocks = new ArrayBlockingQueue<>(MAX_BLOCKS);
+    private final BlockingQueue<byte[]> freeBlocks = new ArrayBlockingQueue<>(MAX_BLOCKS);
+    private final InputStream input;
+    private final Thread inflater;
+    private volatile IOException failure;
+    private Block current;
+    private boolean finished;
+
+    /**
+     * Opens a compressed file and starts inflating it.
+     *
+     * @param file the gzip-compressed file
+     * @throws IOException if the file cannot be opened or is not in the gzip format
+     */
+    public GzipBlockReader(File file) throws IOException {
+        final var compressed = Files.newInputStream(file.toPath());
+        try {
+            this.input = new GZIPInputStream(compressed, INFLATER_BUFFER_SIZE);
+        } catch (IOException e) {
+            compressed.close();
+            throw e;
+        }
+        this.inflater = Thread.ofPlatform()
+                .name("gzip-inflater-" + file.getName())
+                .daemon()
+                .start(this::inflate);
+    }
+
+    /**
+     * Tells whether a file is compressed with gzip, judging by its first bytes.
+     *
+     * @param file the file
+     * @return {@code true} if the file starts with the gzip magic number
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isGzip(File file) throws IOException {
+        try (final var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final var magic = ByteBuffer.allocate(Short.BYTES);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // reads until the magic number is complete or the file ends
+            }
+            return !magic.hasRemaining() && (magic.get(0) & 0xFF | (magic.get(1) & 0xFF) << 8) == MAGIC;
+        }
+    }
+
+    /**
+     * Returns the next block of inflated lines, waiting until it is inflated. The previously returned block
+     * must not be used any more.
+     *
+     * @return the next block, or {@code null} if the whole file has been read
+     * @throws IOException if the file cannot be read or is not a valid gzip stream
+     */
+    public Block next() throws IOException {
+        if (current != null) {
+            freeBlocks.offer(current.bytes());
+            current = null;
+        }
+        if (finished) {
+            return null;
+        }
+        final Block block;
+        try {
+            block = filledBlocks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while inflating file", e);
+        }
+        if (block == END) {
+            finished = true;
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+        current = block;
+        return block;
+    }
+
+    /**
+     * Returns a stream of the inflated bytes read block by block; closing the stream closes the reader.
+     *
+     * @return the stream of inflated bytes
+     */
+    public InputStream asInputStream() {
+        return new BlockInputStream();
+    }
+
+    /**
+     * Stops inflating and closes the file.
+     */
+    @Override
+    public void close() {
+        inflater.interrupt();
+        try {
+            inflater.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void inflate() {
+        try (input) {
+            var carry = new byte[0];
+            int carryLength = 0;
+            int allocatedBlocks = 0;
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                var block = freeBlocks.poll();
+                if (block == null && allocatedBlocks < MAX_BLOCKS) {
+                    block = new byte[BLOCK_SIZE];
+                    allocatedBlocks++;
+                } else if (block == null) {
+                    block = freeBlocks.take();
+                }
+                if (carryLength >= block.length) {
+                    block = new byte[carryLength << 1];
+                }
+                System.arraycopy(carry, 0, block, 0, carryLength);
+                int filled = carryLength;
+                int cut = 0;
+                while (cut == 0 && !endOfInput) {
+                    if (filled == block.length) {
+                        block = Arrays.copyOf(block, block.length << 1);
+                    }
+                    while (filled < block.length) {
+                        final int read = input.read(block, filled, block.length - filled);
+                        if (read < 0) {
+                            endOfInput = true;
+                            break;
+                        }
+                        filled += read;
+                    }
+                    cut = endOfInput ? filled : lastLineEnd(block, filled);
+                }
+                carryLength = filled - cut;
+                if (carryLength > carry.length) {
+                    carry = new byte[carryLength];
+                }
+                System.arraycopy(block, cut, carry, 0, carryLength);
+                if (cut > 0) {
+                    filledBlocks.put(new Block(block, cut));
+                } else {
+                    freeBlocks.offer(block);
+                }
+            }
+            filledBlocks.put(END);
+        } catch (IOException e) {
+            failure = e;
+            filledBlocks.clear();
+            filledBlocks.offer(END);
+        } catch (InterruptedException e) {
+            // the reader was closed before the whole file was inflated
+        }
+    }
+
+    /**
+     * Returns the index following the last line terminator of the block, {@code 0} if there is none. A carriage
+     * return ending the filled bytes is not taken, as a line feed may follow it in the next block.
+     */
+    private static int lastLineEnd(byte[] block, int filled) {
+        for (int i = filled - 1; i >= 0; i--) {
+            if (block[i] == '\n' || block[i] == '\r' && i + 1 < filled) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * A block of inflated lines occupying the first {@code length} bytes of the array.
+     *
+     * @param bytes  the array holding the block
+     * @param length the number of bytes of the block
+     */
+    public record Block(byte[] bytes, int length) {
+
+        /**
+         * Returns the block as a buffer whose limit is the length of the block.
+         *
+         * @return the buffer
+         */
+        public ByteBuffer buffer() {
+            return ByteBuffer.wrap(bytes, 0, length);
+        }
+    }
+
+    /**
+     * Reads the inflated bytes across the blocks.
+     */
+    private final class BlockInputStream extends InputStream {
+        private int position;
+
+        @Override
+        public int read() throws IOException {
+            final var block = currentBlock();
+            return block == null ? -1 : block.bytes()[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            final var block = currentBlock();
+            if (block == null) {
+                return -1;
+            }
+            final int count = Math.min(length, block.length() - position);
+            System.arraycopy(block.bytes(), position, target, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            GzipBlockReader.this.close();
+        }
+
+        private Block currentBlock() throws IOException {
+            while (current == null || position == current.length()) {
+                if (next() == null) {
+                    return null;
+                }
+                position = 0;
+            }
+            return current;
+        }
+    }
+}
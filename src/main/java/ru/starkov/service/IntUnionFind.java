@@ -0,0 +1,60 @@
+package ru.starkov.service;
+
+import ru.starkov.service.collection.FlatRowList;
+import ru.starkov.service.collection.StringDictionary;
+
+import java.util.List;
+
+/**
+ * Union-Find engine for rows kept as {@code int[]}.
+ * <p>
+ * Every cell is indexed by its column and raw {@code int} value in a primitive column index, and a value of
+ * {@code 0} denotes an empty cell. String data is linked by this engine with cells holding the ids of a
+ * {@link StringDictionary}, whose empty value has the id {@link StringDictionary#EMPTY_ID}. {@code long} data
+ * whose values all fit into an {@code int} is linked by {@link LongUnionFind} over a {@link FlatRowList} keeping
+ * four-byte cells instead.
+ */
+public final class IntUnionFind extends PrimitiveUnionFind<int[]> {
+
+    /**
+     * Constructs an instance of the IntUnionFind class for the given raw data.
+     *
+     * @param rawData a list of rows, where each element of a row is a column value or its dictionary id
+     */
+    public IntUnionFind(List<int[]> rawData) {
+        this(rawData, 1);
+    }
+
+    /**
+     * Constructs an instance of the IntUnionFind class linking the rows on the given number of threads.
+     *
+     * @param rawData a list of rows, where each element of a row is a column value or its dictionary id
+     * @param threads the number of threads linking the rows
+     */
+    public IntUnionFind(List<int[]> rawData, int threads) {
+        this(rawData, threads, UNLIMITED_MEMORY);
+    }
+
+    /**
+     * Constructs an instance of the IntUnionFind class linking the rows on the given number of threads,
+     * spilling the column index to disk if it is expected to exceed the memory budget.
+     *
+     * @param rawData           a list of rows, where each element of a row is a column value or its dictionary id
+     * @param threads           the number of threads linking the rows
+     * @param indexMemoryBudget the number of bytes the column index may occupy in memory
+     */
+    public IntUnionFind(List<int[]> rawData, int threads, long indexMemoryBudget) {
+        super(rawData, threads, indexMemoryBudget);
+        initializeUnionFind();
+    }
+
+    @Override
+    protected int rowLength(int[] row) {
+        return row.length;
+    }
+
+    @Override
+    protected long cellKey(int[] row, int colIndex) {
+        return row[colIndex];
+    }
+}
@@ -0,0 +1,86 @@
+package ru.starkov.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Splits a file into contiguous byte ranges that start at the beginning of a line,
+ * so that every range can be parsed independently of the others.
+ */
+public final class LineBoundarySplitter {
+
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    private LineBoundarySplitter() {
+    }
+
+    /**
+     * Splits the file into at most {@code chunks} ranges of roughly equal size. Small files are split
+     * into fewer ranges, so that no range is shorter than one mebibyte.
+     *
+     * @param channel the channel of the file to split
+     * @param chunks  the desired number of ranges
+     * @return the boundaries of the ranges: range {@code i} spans {@code [boundaries[i], boundaries[i + 1])}
+     * @throws IOException if an I/O error occurs while reading the file
+     */
+    public static long[] split(FileChannel channel, int chunks) throws IOException {
+        return split(channel, chunks, MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * Splits the file into at most {@code chunks} ranges of roughly equal size, none of them shorter than
+     * the given size.
+     *
+     * @param channel      the channel of the file to split
+     * @param chunks       the desired number of ranges
+     * @param minChunkSize the minimum size of a range in bytes
+     * @return the boundaries of the ranges: range {@code i} spans {@code [boundaries[i], boundaries[i + 1])}
+     * @throws IOException if an I/O error occurs while reading the file
+     */
+    public static long[] split(FileChannel channel, int chunks, long minChunkSize) throws IOException {
+        final long size = channel.size();
+        final int count = (int) Math.max(1, Math.min(chunks, size / Math.max(1, minChunkSize)));
+        final long[] boundaries = new long[count + 1];
+        boundaries[count] = size;
+        int distinct = 1;
+        for (int i = 1; i < count; i++) {
+            final long boundary = nextLineStart(channel, size * i / count, size);
+            if (boundary > boundaries[distinct - 1] && boundary < size) {
+                boundaries[distinct++] = boundary;
+            }
+        }
+        boundaries[distinct] = size;
+        return Arrays.copyOf(boundaries, distinct + 1);
+    }
+
+    /**
+     * Returns the offset of the first line starting at or after the given position.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        final var buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long offset = position - 1;
+        boolean carriageReturn = false;
+        while (offset < size) {
+            buffer.clear();
+            final int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                final byte b = buffer.get(i);
+                if (carriageReturn) {
+                    return b == '\n' ? offset + i + 1 : offset + i;
+                }
+                if (b == '\n') {
+                    return offset + i + 1;
+                }
+                carriageReturn = b == '\r';
+            }
+            offset += read;
+        }
+        return size;
+    }
+}
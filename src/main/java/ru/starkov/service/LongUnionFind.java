@@ -0,0 +1,81 @@
+package ru.starkov.service;
+
+import java.util.List;
+
+/**
+ * Union-Find engine specialised for {@code long} data.
+ * <p>
+ * Rows are kept as {@code long[]} and every non-empty cell is indexed by its column and raw value
+ * in a primitive column index, so no key, boxed value or map entry is allocated per cell.
+ * A value of {@code 0} denotes an empty cell.
+ */
+public final class LongUnionFind extends PrimitiveUnionFind<long[]> {
+
+    /**
+     * Constructs an instance of the LongUnionFind class for the given raw data.
+     *
+     * @param rawData a list of rows, where each element of a row is a column value
+     */
+    public LongUnionFind(List<long[]> rawData) {
+        this(rawData, 1);
+    }
+
+    /**
+     * Constructs an instance of the LongUnionFind class linking the rows on the given number of threads.
+     *
+     * @param rawData a list of rows, where each element of a row is a column value
+     * @param threads the number of threads linking the rows
+     */
+    public LongUnionFind(List<long[]> rawData, int threads) {
+        this(rawData, threads, UNLIMITED_MEMORY);
+    }
+
+    /**
+     * Constructs an instance of the LongUnionFind class linking the rows on the given number of threads,
+     * spilling the column index to disk if it is expected to exceed the memory budget.
+     *
+     * @param rawData           a list of rows, where each element of a row is a column value
+     * @param threads           the number of threads linking the rows
+     * @param indexMemoryBudget the number of bytes the column index may occupy in memory
+     */
+    public LongUnionFind(List<long[]> rawData, int threads, long indexMemoryBudget) {
+        super(rawData, threads, indexMemoryBudget);
+        initializeUnionFind();
+    }
+
+    /**
+     * Constructs an instance of the LongUnionFind class resuming from a snapshot, linking only the rows
+     * of the batch that are not present in the snapshot yet.
+     *
+     * @param base  the snapshot to resume from; it is consumed and must not be used afterwards
+     * @param batch a list of new rows, where each element of a row is a column value
+     */
+    public LongUnionFind(UnionFindSnapshot<long[]> base, List<long[]> batch) {
+        super(base, batch);
+        initializeUnionFind();
+    }
+
+    /**
+     * Converts a parsed row of boxed {@link Long} values into a primitive row.
+     *
+     * @param columns the parsed row
+     * @return the row as a {@code long[]}
+     */
+    public static long[] toRow(List<?> columns) {
+        final var row = new long[columns.size()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = (Long) columns.get(i);
+        }
+        return row;
+    }
+
+    @Override
+    protected int rowLength(long[] row) {
+        return row.length;
+    }
+
+    @Override
+    protected long cellKey(long[] row, int colIndex) {
+        return row[colIndex];
+    }
+}
@@ -0,0 +1,442 @@
+package ru.starkov.service;
+
+import ru.starkov.service.collection.ColumnSketches;
+import ru.starkov.service.collection.FlatRowList;
+import ru.starkov.service.collection.LongArrayList;
+import ru.starkov.service.metrics.ExecutionMetrics;
+import ru.starkov.service.metrics.ExecutionMetrics.Counter;
+import ru.starkov.service.metrics.ExecutionMetrics.Phase;
+import ru.starkov.service.parser.RowParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * The {@code MappedDataExtractor} class extracts valid rows from a file by memory-mapping it
+ * and scanning its bytes directly.
+ * <p>
+ * Lines are located by scanning for line terminators ({@code \n}, {@code \r} or {@code \r\n}) and handed
+ * to a {@link RowParser} as byte ranges, so no {@code String} is created for a line or a cell.
+ * The file is split into byte ranges aligned to line boundaries which are parsed in parallel, every
+ * range mapped window by window with each window starting at the beginning of a line. The rows of
+ * all ranges are then merged in their original order, and duplicates are dropped by the 64-bit hashes
+ * the parsers compute while parsing, with rows compared by content only when their hashes are equal.
+ * The cells of every valid row are also added to the {@link ColumnSketches} of its range, which are merged into
+ * the sketches of the returned list, so that the engines size their column indexes without reading the rows again.
+ * <p>
+ * A gzip-compressed file cannot be mapped: it is inflated by a {@link GzipBlockReader} on a background thread
+ * instead, and its blocks of lines are parsed the same way as mapped windows while the next ones are inflated.
+ * <p>
+ * Rows can either be materialised with {@link #getValidData(File)}, which copies their cells into the flat
+ * arrays of a {@link FlatRowList} without creating an object per row, or be kept in the mapped file
+ * with {@link #getValidRowList(File)}, which records only the offsets of the valid distinct lines.
+ *
+ * @param <R> the type of a parsed row
+ */
+public class MappedDataExtractor<R> {
+
+    private static final long MAX_WINDOW_SIZE = 1L << 30;
+    private static final long STREAMING_WINDOW_SIZE = 1L << 29;
+
+    private final Supplier<RowParser<R>> rowParserFactory;
+    private final int threads;
+    private final ExecutionMetrics metrics;
+
+    /**
+     * Constructs an instance of {@code MappedDataExtractor} parsing the file on a single thread.
+     *
+     * @param rowParserFactory a factory of parsers validating and converting lines into rows
+     */
+    public MappedDataExtractor(Supplier<RowParser<R>> rowParserFactory) {
+        this(rowParserFactory, 1);
+    }
+
+    /**
+     * Constructs an instance of {@code MappedDataExtractor} parsing the file on the given number of threads.
+     *
+     * @param rowParserFactory a factory of parsers validating and converting lines into rows;
+     *                         every thread uses its own parser
+     * @param threads          the number of threads parsing the file
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public MappedDataExtractor(Supplier<RowParser<R>> rowParserFactory, int threads) {
+        this(rowParserFactory, threads, new ExecutionMetrics());
+    }
+
+    /**
+     * Constructs an instance of {@code MappedDataExtractor} recording the reading and deduplication phases
+     * and the line counters into the given metrics.
+     *
+     * @param rowParserFactory a factory of parsers validating and converting lines into rows;
+     *                         every thread uses its own parser
+     * @param threads          the number of threads parsing the file
+     * @param metrics          the metrics of the run
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public MappedDataExtractor(Supplier<RowParser<R>> rowParserFactory, int threads, ExecutionMetrics metrics) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        this.rowParserFactory = rowParserFactory;
+        this.threads = threads;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reads a file and extracts valid data. Lines containing an invalid cell are skipped
+     * and duplicate rows are removed, keeping the first occurrence.
+     *
+     * @param file the file to read
+     * @return a list of distinct valid rows held in flat arrays
+     * @throws IOException if an I/O error occurs while reading the file
+     * @throws NullPointerException if the provided file is {@code null}
+     */
+    public FlatRowList<R> getValidData(File file) throws IOException {
+        Objects.requireNonNull(file, "File can't be null");
+        if (GzipBlockReader.isGzip(file)) {
+            return getCompressedData(file);
+        }
+        try (final var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long[] boundaries = LineBoundarySplitter.split(channel, threads);
+            final var tasks = new ArrayList<Callable<ParsedRows<R>>>(boundaries.length - 1);
+            for (int i = 0; i < boundaries.length - 1; i++) {
+                final long start = boundaries[i];
+                final long end = boundaries[i + 1];
+                tasks.add(() -> parseRange(channel, start, end));
+            }
+            final List<ParsedRows<R>> chunks = metrics.measure(Phase.READ, () -> new ArrayList<>(invokeAll(tasks)));
+            return distinctRows(chunks);
+        } catch (IOException e) {
+            System.err.printf("Error reading file: %s", file.getAbsolutePath());
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a gzip-compressed file like {@link #getValidData(File)}. The file is inflated by a
+     * {@link GzipBlockReader} on a background thread, while the blocks of lines it hands over are parsed on the
+     * calling thread.
+     */
+    private FlatRowList<R> getCompressedData(File file) throws IOException {
+        final ParsedRows<R> parsed;
+        try {
+            parsed = metrics.measure(Phase.READ, () -> {
+                try (final var blocks = new GzipBlockReader(file)) {
+                    return parseBlocks(blocks);
+                }
+            });
+        } catch (IOException e) {
+            System.err.printf("Error reading file: %s", file.getAbsolutePath());
+            throw e;
+        }
+        return distinctRows(new ArrayList<>(List.of(parsed)));
+    }
+
+    private FlatRowList<R> distinctRows(List<ParsedRows<R>> chunks) {
+        final long lines = chunks.stream().mapToLong(ParsedRows::lines).sum();
+        final int validRows = chunks.stream().mapToInt(chunk -> chunk.rows().size()).sum();
+        final FlatRowList<R> rows = metrics.measure(Phase.DEDUPLICATE, () -> mergeDistinct(chunks));
+        recordRowCounts(lines, validRows, rows.size());
+        return rows;
+    }
+
+    /**
+     * Reads a file and records the valid distinct lines without keeping their rows. The file stays mapped
+     * for the lifetime of the returned list, and every access to a row parses its line again.
+     * <p>
+     * Duplicates are detected by the 64-bit hashes of the parsed rows; only rows with equal hashes
+     * are parsed again to be compared, so the memory used is proportional to the number of rows,
+     * not the number of cells.
+     *
+     * @param file the file to read
+     * @return a list of distinct valid rows backed by the mapped file
+     * @throws IOException if an I/O error occurs while reading the file
+     * @throws NullPointerException if the provided file is {@code null}
+     * @throws IllegalArgumentException if the file is compressed, so it cannot be mapped
+     */
+    public MappedRowList<R> getValidRowList(File file) throws IOException {
+        Objects.requireNonNull(file, "File can't be null");
+        if (GzipBlockReader.isGzip(file)) {
+            throw new IllegalArgumentException("Compressed files cannot be read in the streaming mode: " + file);
+        }
+        try (final var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final int chunkCount = (int) Math.max(threads, (size + STREAMING_WINDOW_SIZE - 1) / STREAMING_WINDOW_SIZE);
+            final long[] boundaries = LineBoundarySplitter.split(channel, chunkCount);
+            final var windows = new ByteBuffer[boundaries.length - 1];
+            final List<LineCandidates> chunks = metrics.measure(Phase.READ, () -> {
+                final var tasks = new ArrayList<Callable<LineCandidates>>(windows.length);
+                for (int i = 0; i < windows.length; i++) {
+                    if (boundaries[i + 1] - boundaries[i] > MAX_WINDOW_SIZE) {
+                        throw new IOException("Line starting near offset " + boundaries[i] + " exceeds " + MAX_WINDOW_SIZE + " bytes");
+                    }
+                    final var window = channel.map(FileChannel.MapMode.READ_ONLY, boundaries[i], boundaries[i + 1] - boundaries[i]);
+                    final long windowStart = boundaries[i];
+                    windows[i] = window;
+                    tasks.add(() -> collectCandidates(window, windowStart));
+                }
+                return invokeAll(tasks);
+            });
+            final var lines = new MappedLines<>(windows, boundaries, rowParserFactory);
+            final long[] offsets = metrics.measure(Phase.DEDUPLICATE, () -> mergeDistinctOffsets(chunks, lines));
+            recordRowCounts(
+                    chunks.stream().mapToLong(LineCandidates::lines).sum(),
+                    chunks.stream().mapToInt(chunk -> chunk.offsets().size()).sum(),
+                    offsets.length
+            );
+            final int maxRowLength = chunks.stream().mapToInt(LineCandidates::maxRowLength).max().orElse(0);
+            final var sketches = new ColumnSketches();
+            chunks.forEach(chunk -> sketches.merge(chunk.sketches()));
+            return new MappedRowList<>(lines, offsets, maxRowLength, sketches);
+        } catch (IOException e) {
+            System.err.printf("Error reading file: %s", file.getAbsolutePath());
+            throw e;
+        }
+    }
+
+    private <C> List<C> invokeAll(List<Callable<C>> tasks) throws IOException {
+        if (tasks.size() == 1) {
+            try {
+                return List.of(tasks.get(0).call());
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to parse file", e);
+            }
+        }
+        try (final var pool = new ForkJoinPool(threads)) {
+            final var results = new ArrayList<C>(tasks.size());
+            for (Future<C> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing file", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Failed to parse file", e.getCause());
+        }
+    }
+
+    private ParsedRows<R> parseRange(FileChannel channel, long start, long end) throws IOException {
+        final var rowParser = rowParserFactory.get();
+        final var rows = rowParser.newFlatRows();
+        final var hashes = new LongArrayList();
+        final var sketches = new ColumnSketches();
+        final var lineCount = new int[1];
+        long position = start;
+        while (position < end) {
+            final long windowSize = Math.min(MAX_WINDOW_SIZE, end - position);
+            final boolean lastWindow = position + windowSize == end;
+            final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            final int consumed = forEachLine(buffer, lastWindow, (lineStart, lineEnd) -> {
+                lineCount[0]++;
+                if (rowParser.parseLine(buffer, lineStart, lineEnd, rows)) {
+                    hashes.add(rowParser.lastRowHash());
+                    rowParser.sketchLastRow(sketches);
+                }
+            });
+            if (consumed == 0) {
+                throw new IOException("Line starting at offset " + position + " exceeds " + MAX_WINDOW_SIZE + " bytes");
+            }
+            position += consumed;
+        }
+        rows.setColumnSketches(sketches);
+        return new ParsedRows<>(rows.build(), hashes, lineCount[0]);
+    }
+
+    private ParsedRows<R> parseBlocks(GzipBlockReader blocks) throws IOException {
+        final var rowParser = rowParserFactory.get();
+        final var rows = rowParser.newFlatRows();
+        final var hashes = new LongArrayList();
+        final var sketches = new ColumnSketches();
+        final var lineCount = new int[1];
+        for (var block = blocks.next(); block != null; block = blocks.next()) {
+            final var buffer = block.buffer();
+            forEachLine(buffer, true, (lineStart, lineEnd) -> {
+                lineCount[0]++;
+                if (rowParser.parseLine(buffer, lineStart, lineEnd, rows)) {
+                    hashes.add(rowParser.lastRowHash());
+                    rowParser.sketchLastRow(sketches);
+                }
+            });
+        }
+        rows.setColumnSketches(sketches);
+        return new ParsedRows<>(rows.build(), hashes, lineCount[0]);
+    }
+
+    private LineCandidates collectCandidates(ByteBuffer window, long windowStart) {
+        final var rowParser = rowParserFactory.get();
+        final var offsets = new LongArrayList();
+        final var hashes = new LongArrayList();
+        final var sketches = new ColumnSketches();
+        final var lineCount = new int[1];
+        final var maxRowLength = new int[1];
+        forEachLine(window, true, (lineStart, lineEnd) -> {
+            lineCount[0]++;
+            if (rowParser.parseLine(window, lineStart, lineEnd) != null) {
+                offsets.add(windowStart + lineStart);
+                hashes.add(rowParser.lastRowHash());
+                maxRowLength[0] = Math.max(maxRowLength[0], rowParser.lastRowLength());
+                rowParser.sketchLastRow(sketches);
+            }
+        });
+        return new LineCandidates(offsets, hashes, sketches, lineCount[0], maxRowLength[0]);
+    }
+
+    /**
+     * Passes every complete line of the buffer to the consumer.
+     *
+     * @return the number of bytes consumed; an incomplete last line is left for the next window
+     */
+    private int forEachLine(ByteBuffer buffer, boolean lastWindow, LineConsumer consumer) {
+        final int limit = buffer.limit();
+        int lineStart = 0;
+        for (int i = 0; i < limit; i++) {
+            final byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                if (b == '\r' && i + 1 == limit && !lastWindow) {
+                    return lineStart;
+                }
+                consumer.accept(lineStart, i);
+                if (b == '\r' && i + 1 < limit && buffer.get(i + 1) == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (lastWindow) {
+            if (lineStart < limit) {
+                consumer.accept(lineStart, limit);
+            }
+            return limit;
+        }
+        return lineStart;
+    }
+
+    private void recordRowCounts(long lines, int validRows, int distinctRows) {
+        metrics.add(Counter.LINES_READ, lines);
+        metrics.add(Counter.LINES_REJECTED, lines - validRows);
+        metrics.add(Counter.DUPLICATE_ROWS, validRows - distinctRows);
+        metrics.add(Counter.DISTINCT_ROWS, distinctRows);
+    }
+
+    /**
+     * Drops the duplicate rows of all chunks, and then moves the remaining ones into a single list, releasing
+     * the cells of every chunk as they are moved. The sketches of the chunks are merged as they are: a dropped
+     * row only repeats the cells of a kept one.
+     */
+    private FlatRowList<R> mergeDistinct(List<ParsedRows<R>> chunks) {
+        final var chunkStarts = new int[chunks.size()];
+        int total = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            chunkStarts[c] = total;
+            total += chunks.get(c).rows().size();
+        }
+        final var kept = new int[total];
+        final var distinctCount = new int[1];
+        final var deduplicator = new RowDeduplicator<R>(total, id -> rowAt(chunks, chunkStarts, kept[id]));
+        for (int c = 0; c < chunks.size(); c++) {
+            final var chunk = chunks.get(c);
+            final int chunkStart = chunkStarts[c];
+            for (int i = 0; i < chunk.rows().size(); i++) {
+                final int index = i;
+                if (deduplicator.add(chunk.hashes().get(i), () -> chunk.rows().get(index), distinctCount[0])) {
+                    kept[distinctCount[0]++] = chunkStart + i;
+                }
+            }
+        }
+        if (chunks.size() == 1 && distinctCount[0] == total) {
+            return chunks.get(0).rows();
+        }
+
+        final var rows = rowParserFactory.get().newFlatRows();
+        rows.ensureCapacity(distinctCount[0]);
+        final var sketches = new ColumnSketches();
+        int from = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            sketches.merge(chunks.get(c).rows().columnSketches());
+            final int chunkEnd = c + 1 < chunks.size() ? chunkStarts[c + 1] : total;
+            int to = from;
+            while (to < distinctCount[0] && kept[to] < chunkEnd) {
+                kept[to++] -= chunkStarts[c];
+            }
+            rows.moveRows(chunks.get(c).rows(), kept, from, to);
+            chunks.set(c, null);
+            from = to;
+        }
+        rows.setColumnSketches(sketches);
+        return rows.build();
+    }
+
+    private static <R> R rowAt(List<ParsedRows<R>> chunks, int[] chunkStarts, int position) {
+        int chunk = Arrays.binarySearch(chunkStarts, position);
+        if (chunk < 0) {
+            chunk = -chunk - 2;
+        }
+        while (chunk + 1 < chunkStarts.length && chunkStarts[chunk + 1] <= position) {
+            chunk++;
+        }
+        return chunks.get(chunk).rows().get(position - chunkStarts[chunk]);
+    }
+
+    private long[] mergeDistinctOffsets(List<LineCandidates> chunks, MappedLines<R> lines) {
+        final int total = chunks.stream().mapToInt(chunk -> chunk.offsets().size()).sum();
+        final var offsets = new LongArrayList(total);
+        final var deduplicator = new RowDeduplicator<R>(total, id -> lines.rowAt(offsets.get(id)));
+        for (LineCandidates chunk : chunks) {
+            for (int i = 0; i < chunk.offsets().size(); i++) {
+                final long offset = chunk.offsets().get(i);
+                if (deduplicator.add(chunk.hashes().get(i), () -> lines.rowAt(offset), offsets.size())) {
+                    offsets.add(offset);
+                }
+            }
+        }
+        return offsets.toArray();
+    }
+
+    /**
+     * Receives the range {@code [start, end)} of a line within the scanned buffer.
+     */
+    @FunctionalInterface
+    private interface LineConsumer {
+        void accept(int start, int end);
+    }
+
+    /**
+     * Valid rows parsed from one range together with their hashes, and the number of lines in the range.
+     */
+    private record ParsedRows<R>(FlatRowList<R> rows, LongArrayList hashes, int lines) {
+    }
+
+    /**
+     * Offsets and row hashes of the valid lines found in one window, the sketches of their columns, the number
+     * of lines in the window and the largest number of cells of a valid line.
+     */
+    private record LineCandidates(
+            LongArrayList offsets,
+            LongArrayList hashes,
+            ColumnSketches sketches,
+            int lines,
+            int maxRowLength
+    ) {
+    }
+}
@@ -0,0 +1,48 @@
+package ru.starkov.service;
+
+import ru.starkov.service.parser.RowParser;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Memory-mapped windows of a file from which single lines can be parsed by their offsets.
+ * <p>
+ * Every window starts at the beginning of a line, so no line spans two windows. Lines may be parsed
+ * concurrently; each thread uses its own {@link RowParser}.
+ *
+ * @param <R> the type of a parsed row
+ */
+class MappedLines<R> {
+
+    private final ByteBuffer[] windows;
+    private final long[] windowStarts;
+    private final ThreadLocal<RowParser<R>> rowParser;
+
+    MappedLines(ByteBuffer[] windows, long[] windowStarts, Supplier<RowParser<R>> rowParserFactory) {
+        this.windows = windows;
+        this.windowStarts = windowStarts;
+        this.rowParser = ThreadLocal.withInitial(rowParserFactory);
+    }
+
+    /**
+     * Parses the line starting at the given offset of the file.
+     *
+     * @param offset the offset of the first byte of the line
+     * @return the parsed row, or {@code null} if the line is invalid
+     */
+    R rowAt(long offset) {
+        int window = Arrays.binarySearch(windowStarts, offset);
+        if (window < 0) {
+            window = -window - 2;
+        }
+        final var buffer = windows[window];
+        final int start = (int) (offset - windowStarts[window]);
+        int end = start;
+        while (end < buffer.limit() && buffer.get(end) != '\n' && buffer.get(end) != '\r') {
+            end++;
+        }
+        return rowParser.get().parseLine(buffer, start, end);
+    }
+}
@@ -0,0 +1,66 @@
+package ru.starkov.service;
+
+import ru.starkov.service.collection.ColumnSketches;
+import ru.starkov.service.collection.SketchedRows;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A read-only list of rows that keeps only the file offsets of their lines.
+ * <p>
+ * A row is parsed from the memory-mapped file every time it is accessed, so the list occupies
+ * eight bytes per row no matter how many cells the rows have. The returned rows are fresh objects
+ * which the caller may keep or discard. The largest number of cells of a row and the sketches of the columns are
+ * recorded while the lines are collected, so that they are known without parsing the rows again.
+ *
+ * @param <R> the type of a row
+ */
+public class MappedRowList<R> extends AbstractList<R> implements RandomAccess, SketchedRows {
+
+    private final MappedLines<R> lines;
+    private final long[] offsets;
+    private final int maxRowLength;
+    private final ColumnSketches columnSketches;
+
+    MappedRowList(MappedLines<R> lines, long[] offsets, int maxRowLength, ColumnSketches columnSketches) {
+        this.lines = lines;
+        this.offsets = offsets;
+        this.maxRowLength = maxRowLength;
+        this.columnSketches = columnSketches;
+    }
+
+    @Override
+    public R get(int index) {
+        return lines.rowAt(offsets[index]);
+    }
+
+    @Override
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Returns the offset of the row's line in the file.
+     *
+     * @param index the index of the row
+     * @return the offset of the first byte of the line
+     */
+    public long offset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * Returns the largest number of cells of a row in the list.
+     *
+     * @return the number of cells of the longest row, {@code 0} if the list is empty
+     */
+    public int maxRowLength() {
+        return maxRowLength;
+    }
+
+    @Override
+    public ColumnSketches columnSketches() {
+        return columnSketches;
+    }
+}
@@ -0,0 +1,390 @@
+package ru.starkov.service;
+
+import ru.starkov.service.collection.ColumnSketches;
+import ru.starkov.service.collection.ColumnValueIndex;
+import ru.starkov.service.collection.ConcurrentColumnValueIndex;
+import ru.starkov.service.collection.ConcurrentDisjointSet;
+import ru.starkov.service.collection.ExternalColumnValueSorter;
+import ru.starkov.service.collection.FlatRowList;
+import ru.starkov.service.collection.HyperLogLog;
+import ru.starkov.service.collection.LongIntHashMap;
+import ru.starkov.service.collection.SketchedRows;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Base class of the Union-Find engines whose cells are identified by a raw 64-bit key,
+ * with the key {@code 0} denoting an empty cell.
+ * <p>
+ * With a single thread the rows are linked sequentially through a {@link ColumnValueIndex} and the
+ * union-by-size forest of {@link AbstractUnionFind}. With more threads the rows are linked concurrently
+ * through a {@link ConcurrentColumnValueIndex} and a lock-free {@link ConcurrentDisjointSet}, whose
+ * components are then adopted by the forest. Both ways produce the same groups.
+ * <p>
+ * Before linking, the number of distinct keys of every column is estimated with a {@link HyperLogLog} sketch per
+ * column, and the tables of the column index are created at their final size, so they are not rehashed while
+ * they grow. Rows read from a file carry the {@link ColumnSketches} recorded while the file was parsed; other rows
+ * held in memory are sketched by the engine itself. Rows kept in a mapped file without sketches are never
+ * sketched, as every pass over them parses the file again.
+ * <p>
+ * When the estimated size of the column index exceeds the memory budget, the rows are linked sequentially by
+ * an {@link ExternalColumnValueSorter} instead, which sorts the cells in runs spilled to disk and links the
+ * rows of equal cells while merging them. Only the parent and size arrays of the forest then grow with the data.
+ * <p>
+ * Rows held in a {@link FlatRowList} are read in place from its flat arrays, so no row object is created while
+ * the rows are sketched, linked or grouped.
+ * <p>
+ * An engine may also resume from a {@link UnionFindSnapshot}: it then adopts the roots and the column index of
+ * the snapshot, and links only the appended rows, sequentially. Such an engine can itself be saved as a snapshot.
+ *
+ * @param <R> the type of a single row
+ */
+public abstract class PrimitiveUnionFind<R> extends AbstractUnionFind<R> {
+
+    private static final int STRIPES_PER_THREAD = 4;
+    private static final int MIN_ROWS_PER_THREAD = 10_000;
+    private static final int INDEX_BYTES_PER_KEY = 24;
+
+    /**
+     * The memory budget under which the column index is never spilled to disk.
+     */
+    public static final long UNLIMITED_MEMORY = Long.MAX_VALUE;
+
+    private final int threads;
+    private final long indexMemoryBudget;
+    private final UnionFindSnapshot<R> base;
+    private final long[] rowHashes;
+    private final FlatRowList<R> flatRows;
+    private ColumnValueIndex retainedIndex;
+    private long distinctKeyCount;
+    private int spilledRunCount;
+
+    /**
+     * Constructs the engine; subclasses must call {@link #initializeUnionFind()} once constructed.
+     *
+     * @param rawData the rows to group
+     * @param threads the number of threads linking the rows
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    protected PrimitiveUnionFind(List<R> rawData, int threads) {
+        this(rawData, threads, UNLIMITED_MEMORY);
+    }
+
+    /**
+     * Constructs the engine whose column index may take at most the given memory; subclasses must call
+     * {@link #initializeUnionFind()} once constructed.
+     *
+     * @param rawData           the rows to group
+     * @param threads           the number of threads linking the rows
+     * @param indexMemoryBudget the number of bytes the column index may occupy before it is spilled to disk,
+     *                          {@link #UNLIMITED_MEMORY} to keep it in memory
+     * @throws IllegalArgumentException if the number of threads or the memory budget is not positive
+     */
+    protected PrimitiveUnionFind(List<R> rawData, int threads, long indexMemoryBudget) {
+        super(rawData);
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        if (indexMemoryBudget < 1) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + indexMemoryBudget);
+        }
+        this.threads = threads;
+        this.indexMemoryBudget = indexMemoryBudget;
+        this.base = null;
+        this.rowHashes = null;
+        this.flatRows = rawData instanceof FlatRowList<R> flat ? flat : null;
+    }
+
+    /**
+     * Constructs the engine resuming from a snapshot; subclasses must call {@link #initializeUnionFind()}
+     * once constructed. The rows of the batch that are not present in the snapshot are appended to its rows.
+     * The snapshot is consumed and must not be used afterwards.
+     *
+     * @param base  the snapshot to resume from
+     * @param batch the new rows
+     */
+    protected PrimitiveUnionFind(UnionFindSnapshot<R> base, List<R> batch) {
+        this(base, base.appendDistinct(batch));
+    }
+
+    private PrimitiveUnionFind(UnionFindSnapshot<R> base, UnionFindSnapshot.AppendedRows<R> appended) {
+        super(appended.rows());
+        this.threads = 1;
+        this.indexMemoryBudget = UNLIMITED_MEMORY;
+        this.base = base;
+        this.rowHashes = appended.hashes();
+        this.flatRows = null;
+    }
+
+    @Override
+    public long getDistinctKeyCount() {
+        return distinctKeyCount;
+    }
+
+    /**
+     * Returns the number of run files the column index was spilled to, {@code 0} if it was kept in memory.
+     *
+     * @return the number of spilled runs
+     */
+    public int getSpilledRunCount() {
+        return spilledRunCount;
+    }
+
+    /**
+     * Returns the number of rows appended to the snapshot the engine resumed from,
+     * or the number of all rows if it did not resume from a snapshot.
+     *
+     * @return the number of appended rows
+     */
+    public int getAppendedRowCount() {
+        return rawData.size() - (base == null ? 0 : base.size());
+    }
+
+    /**
+     * Returns the number of groups containing at least one appended row, that is the groups which differ
+     * from the ones of the snapshot the engine resumed from.
+     *
+     * @return the number of changed groups
+     */
+    public int getChangedComponentCount() {
+        if (base == null) {
+            return getComponentCount();
+        }
+        return (int) IntStream.range(base.size(), rawData.size()).map(this::find).distinct().count();
+    }
+
+    /**
+     * Captures the current state of an engine resumed from a snapshot, so that a later run can resume from it.
+     *
+     * @return the snapshot of the engine
+     * @throws IllegalStateException if the engine did not resume from a snapshot
+     */
+    public UnionFindSnapshot<R> snapshot() {
+        if (retainedIndex == null) {
+            throw new IllegalStateException("Only an engine resumed from a snapshot can be saved");
+        }
+        final int[] roots = IntStream.range(0, rawData.size()).map(this::find).toArray();
+        return new UnionFindSnapshot<>(base.rowType(), rawData, rowHashes, roots, retainedIndex);
+    }
+
+    /**
+     * Returns the raw 64-bit key of a cell, {@code 0} if the cell is empty.
+     *
+     * @param row      the row
+     * @param colIndex the index of the column
+     * @return the key of the cell
+     */
+    protected abstract long cellKey(R row, int colIndex);
+
+    @Override
+    protected int rowLengthAt(int rowIndex) {
+        return flatRows != null ? flatRows.rowLength(rowIndex) : super.rowLengthAt(rowIndex);
+    }
+
+    /**
+     * Links all rows sharing a non-empty key in the same column. Linking reads the rows through
+     * {@link #rowLength} and {@link #cellKey}, so the subclasses calling it from their constructors are final:
+     * their own implementations are the ones called, and no further subclass is left uninitialized.
+     */
+    protected final void initializeUnionFind() {
+        if (base != null) {
+            initializeFromSnapshot();
+            return;
+        }
+        final long[] expectedKeys = expectedKeysPerColumn();
+        if (expectedKeys != null && estimateIndexBytes(expectedKeys) > indexMemoryBudget) {
+            initializeExternally();
+        } else if (threads == 1 || rawData.size() < MIN_ROWS_PER_THREAD * 2) {
+            initializeSequentially(expectedKeys);
+        } else {
+            initializeConcurrently(expectedKeys);
+        }
+    }
+
+    private void initializeFromSnapshot() {
+        final int[] baseRoots = base.roots();
+        adoptRoots(rowIndex -> rowIndex < baseRoots.length ? baseRoots[rowIndex] : rowIndex);
+        retainedIndex = base.index();
+        linkSequentially(retainedIndex, base.size());
+    }
+
+    private void initializeSequentially(long[] expectedKeys) {
+        linkSequentially(expectedKeys != null ? new ColumnValueIndex(expectedKeys) : new ColumnValueIndex(), 0);
+    }
+
+    private void linkSequentially(ColumnValueIndex columnValueToIndex, int fromRow) {
+        for (int rowIndex = fromRow; rowIndex < rawData.size(); rowIndex++) {
+            final R row = flatRows == null ? rawData.get(rowIndex) : null;
+            final int length = rowLength(rowIndex, row);
+            final int start = flatRows == null ? 0 : flatRows.rowStart(rowIndex);
+            for (int colIndex = 0; colIndex < length; colIndex++) {
+                final long key = cellKey(start, row, colIndex);
+                if (key != 0L) {
+                    final int existingRow = columnValueToIndex.putIfAbsent(colIndex, key, rowIndex);
+                    if (existingRow != LongIntHashMap.NO_VALUE) {
+                        union(rowIndex, existingRow);
+                    }
+                }
+            }
+        }
+        distinctKeyCount = columnValueToIndex.size();
+    }
+
+    private void initializeConcurrently(long[] expectedKeys) {
+        final var columnValueToIndex = new ConcurrentColumnValueIndex(
+                expectedKeys != null ? expectedKeys : new long[maxRowLength()],
+                threads * STRIPES_PER_THREAD
+        );
+        final var disjointSet = new ConcurrentDisjointSet(rawData.size());
+        runInPool("linking rows", () -> IntStream.range(0, rawData.size()).parallel().forEach(rowIndex -> {
+            final R row = flatRows == null ? rawData.get(rowIndex) : null;
+            final int length = rowLength(rowIndex, row);
+            final int start = flatRows == null ? 0 : flatRows.rowStart(rowIndex);
+            for (int colIndex = 0; colIndex < length; colIndex++) {
+                final long key = cellKey(start, row, colIndex);
+                if (key != 0L) {
+                    final int existingRow = columnValueToIndex.putIfAbsent(colIndex, key, rowIndex);
+                    if (existingRow != LongIntHashMap.NO_VALUE) {
+                        disjointSet.union(rowIndex, existingRow);
+                    }
+                }
+            }
+        }));
+        distinctKeyCount = columnValueToIndex.size();
+        adoptRoots(disjointSet::find);
+    }
+
+    private void initializeExternally() {
+        try (final var sorter = new ExternalColumnValueSorter(indexMemoryBudget, this::union)) {
+            for (int rowIndex = 0; rowIndex < rawData.size(); rowIndex++) {
+                final R row = flatRows == null ? rawData.get(rowIndex) : null;
+                final int length = rowLength(rowIndex, row);
+                final int start = flatRows == null ? 0 : flatRows.rowStart(rowIndex);
+                for (int colIndex = 0; colIndex < length; colIndex++) {
+                    final long key = cellKey(start, row, colIndex);
+                    if (key != 0L) {
+                        sorter.add(colIndex, key, rowIndex);
+                    }
+                }
+            }
+            distinctKeyCount = sorter.finish();
+            spilledRunCount = sorter.getSpilledRunCount();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to link rows on disk", e);
+        }
+    }
+
+    /**
+     * Returns the length of a row, read in place from the flat rows if the row itself is not given.
+     */
+    private int rowLength(int rowIndex, R row) {
+        return row == null ? flatRows.rowLength(rowIndex) : rowLength(row);
+    }
+
+    /**
+     * Returns the key of a cell, read in place from the flat rows starting at the given position if the row
+     * itself is not given.
+     */
+    private long cellKey(int rowStart, R row, int colIndex) {
+        return row == null ? flatRows.cell(rowStart + colIndex) : cellKey(row, colIndex);
+    }
+
+    /**
+     * Returns the largest number of cells of a row, recorded by a {@link MappedRowList} while its lines were
+     * collected, so that its rows are not parsed again.
+     */
+    private int maxRowLength() {
+        if (rawData instanceof MappedRowList<?> mappedRows) {
+            return mappedRows.maxRowLength();
+        }
+        return IntStream.range(0, rawData.size()).map(this::rowLengthAt).max().orElse(0);
+    }
+
+    private static long estimateIndexBytes(long[] expectedKeys) {
+        long keys = 0;
+        for (long expected : expectedKeys) {
+            keys += expected;
+        }
+        return keys > Long.MAX_VALUE / INDEX_BYTES_PER_KEY ? Long.MAX_VALUE : keys * INDEX_BYTES_PER_KEY;
+    }
+
+    /**
+     * Returns the expected number of distinct non-empty keys of every column, taken from the sketches recorded
+     * while the rows were read if there are any. Otherwise rows held in memory are sketched, while rows kept in
+     * a mapped file are not, as that would parse the file again.
+     *
+     * @return the expected number of distinct keys of every column, including a margin for the error of the
+     * estimate, or {@code null} if the rows are not sketched
+     */
+    private long[] expectedKeysPerColumn() {
+        if (rawData instanceof SketchedRows sketchedRows && sketchedRows.columnSketches() != null) {
+            return sketchedRows.columnSketches().expectedKeys();
+        }
+        return isHeldInMemory() ? estimateKeysPerColumn() : null;
+    }
+
+    private boolean isHeldInMemory() {
+        return !(rawData instanceof MappedRowList<?>);
+    }
+
+    /**
+     * Estimates the number of distinct non-empty keys of every column. Ranges of rows are sketched
+     * on the configured threads and their sketches merged.
+     */
+    private long[] estimateKeysPerColumn() {
+        final int taskCount = Math.max(1, Math.min(threads, rawData.size() / MIN_ROWS_PER_THREAD));
+        final List<ColumnSketches> sketches = taskCount == 1
+                ? Collections.singletonList(sketchRows(0, rawData.size()))
+                : computeInPool("estimating column cardinalities", () -> IntStream.range(0, taskCount).parallel()
+                .mapToObj(task -> sketchRows(
+                        (int) ((long) rawData.size() * task / taskCount),
+                        (int) ((long) rawData.size() * (task + 1) / taskCount)
+                ))
+                .toList());
+        final var merged = new ColumnSketches();
+        sketches.forEach(merged::merge);
+        return merged.expectedKeys();
+    }
+
+    private ColumnSketches sketchRows(int fromRow, int toRow) {
+        final var sketches = new ColumnSketches();
+        for (int rowIndex = fromRow; rowIndex < toRow; rowIndex++) {
+            final R row = flatRows == null ? rawData.get(rowIndex) : null;
+            final int length = rowLength(rowIndex, row);
+            final int start = flatRows == null ? 0 : flatRows.rowStart(rowIndex);
+            sketches.ensureColumns(length);
+            for (int colIndex = 0; colIndex < length; colIndex++) {
+                final long key = cellKey(start, row, colIndex);
+                if (key != 0L) {
+                    sketches.add(colIndex, key);
+                }
+            }
+        }
+        return sketches;
+    }
+
+    private <V> V computeInPool(String action, Supplier<V> task) {
+        try (final var pool = new ForkJoinPool(threads)) {
+            return pool.submit(task::get).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while " + action, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed " + action, e.getCause());
+        }
+    }
+
+    private void runInPool(String action, Runnable task) {
+        computeInPool(action, () -> {
+            task.run();
+            return null;
+        });
+    }
+}
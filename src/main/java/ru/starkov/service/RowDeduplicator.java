@@ -0,0 +1,132 @@
+package ru.starkov.service;
+
+import ru.starkov.service.collection.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Detects duplicate rows by their 64-bit hashes without keeping the rows themselves.
+ * <p>
+ * Every accepted row is remembered only by its hash and its id. When a new row has the hash of an
+ * accepted one, both rows are fetched by id and compared by content; a genuine collision between
+ * different rows moves the new row to the next probe of the hash, so no distinct row is ever dropped.
+ * <p>
+ * Rows read from bytes are hashed by their {@link ru.starkov.service.parser.RowParser} while being parsed;
+ * rows built in other ways can be hashed with {@link #hashOf(Object)}.
+ *
+ * @param <R> the type of a row
+ */
+public class RowDeduplicator<R> {
+
+    private static final long PROBE_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private static final long HASH_SEED = 0x9E3779B97F4A7C15L;
+    private static final long HASH_MULTIPLIER = 0xC2B2AE3D27D4EB4FL;
+
+    private final LongIntHashMap hashToId;
+    private final IntFunction<R> rowById;
+
+    /**
+     * Constructs an empty deduplicator.
+     *
+     * @param expectedRows the number of rows expected to be accepted
+     * @param rowById      a function fetching an accepted row by its id, used only on hash collisions
+     */
+    public RowDeduplicator(int expectedRows, IntFunction<R> rowById) {
+        this.hashToId = new LongIntHashMap(expectedRows);
+        this.rowById = rowById;
+    }
+
+    /**
+     * Accepts the row under the given id unless an equal row has already been accepted.
+     *
+     * @param hash the hash of the row
+     * @param row  a supplier of the row itself, consulted only on hash collisions
+     * @param id   the id under which the row is accepted
+     * @return {@code true} if the row was accepted, {@code false} if it is a duplicate
+     */
+    public boolean add(long hash, Supplier<R> row, int id) {
+        long probe = hash;
+        R candidate = null;
+        while (true) {
+            final int existingId = hashToId.putIfAbsent(probe, id);
+            if (existingId == LongIntHashMap.NO_VALUE) {
+                return true;
+            }
+            if (candidate == null) {
+                candidate = row.get();
+            }
+            if (Objects.deepEquals(candidate, rowById.apply(existingId))) {
+                return false;
+            }
+            probe = probe * PROBE_MULTIPLIER + 1;
+        }
+    }
+
+    /**
+     * Returns a copy of the rows without duplicates, keeping the first occurrence of every row.
+     *
+     * @param rows the rows, either primitive arrays or lists of values
+     * @param <R>  the type of a row
+     * @return the distinct rows in their original order
+     */
+    public static <R> List<R> distinct(List<R> rows) {
+        final var distinctRows = new ArrayList<R>(rows.size());
+        final var deduplicator = new RowDeduplicator<R>(rows.size(), distinctRows::get);
+        for (R row : rows) {
+            if (deduplicator.add(hashOf(row), () -> row, distinctRows.size())) {
+                distinctRows.add(row);
+            }
+        }
+        return distinctRows;
+    }
+
+    /**
+     * Computes a 64-bit hash of a row held as a primitive array or as a list of values.
+     * Rows equal by content always have equal hashes.
+     *
+     * @param row the row
+     * @return the hash of the row
+     */
+    public static long hashOf(Object row) {
+        return switch (row) {
+            case long[] values -> {
+                long hash = HASH_SEED ^ values.length;
+                for (long value : values) {
+                    hash = mix(hash, value);
+                }
+                yield hash;
+            }
+            case double[] values -> {
+                long hash = HASH_SEED ^ values.length;
+                for (double value : values) {
+                    hash = mix(hash, Double.doubleToLongBits(value));
+                }
+                yield hash;
+            }
+            case int[] values -> {
+                long hash = HASH_SEED ^ values.length;
+                for (int value : values) {
+                    hash = mix(hash, value);
+                }
+                yield hash;
+            }
+            case List<?> values -> {
+                long hash = HASH_SEED ^ values.size();
+                for (Object value : values) {
+                    hash = mix(hash, Objects.hashCode(value));
+                }
+                yield hash;
+            }
+            default -> mix(HASH_SEED, row.hashCode());
+        };
+    }
+
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * HASH_MULTIPLIER;
+        return hash ^ (hash >>> 29);
+    }
+}
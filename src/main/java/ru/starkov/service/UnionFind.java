@@ -1,13 +1,14 @@
 package ru.starkov.service;
 
-import ru.starkov.model.Key;
+import ru.starkov.service.collection.ColumnSketches;
+import ru.starkov.service.collection.HyperLogLog;
+import ru.starkov.service.collection.SketchedRows;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 /**
  * A class that implements the Union-Find (or Disjoint Set Union) data structure to group rows of data
@@ -15,11 +16,19 @@ import java.util.stream.Collectors;
  * <p>
  * Each unique non-empty value in a column is treated as an identifier, and rows with the same identifier
  * in the same column are grouped together. The groups are then represented as sets of lists.
+ * <p>
+ * Every column has its own map from a value to the first row containing it, so the column index takes no
+ * part in hashing. The number of distinct values of every column is estimated with a {@link HyperLogLog} sketch,
+ * and the maps are created at their final size. Rows read by a {@link ValidDataExtractor} carry the sketches
+ * recorded while their lines were parsed; other rows are sketched by the hash codes of their values before linking.
+ * This generic engine boxes every cell; numeric data is handled by {@link LongUnionFind} and
+ * {@link DoubleUnionFind} instead.
  */
-public class UnionFind<T> {
-    private final Map<Key<T>, Integer> columnValueToIndex = new HashMap<>();
-    private final int[] parent;
-    private final List<List<T>> rawData;
+public final class UnionFind<T> extends AbstractUnionFind<List<T>> {
+
+    private static final int MAX_EXPECTED_SIZE = 1 << 30;
+
+    private final List<Map<T, Integer>> columnValueToIndex = new ArrayList<>();
     private final Predicate<T> isNonEmptyFunction;
 
     /**
@@ -28,35 +37,23 @@ public class UnionFind<T> {
      * @param rawData a list of lists where each inner list represents a row of data, and each element is a column value.
      */
     public UnionFind(List<List<T>> rawData, Predicate<T> isNonEmptyFunction) {
-        this.rawData = rawData;
+        super(rawData);
         this.isNonEmptyFunction = isNonEmptyFunction;
-        this.parent = initializeParents(rawData.size());
         initializeUnionFind();
     }
 
-    /**
-     * Groups rows based on shared non-empty column values.
-     *
-     * @return a list of groups, where each group is a list of rows.
-     */
-    public List<List<List<T>>> groupValues() {
-        Map<Integer, List<List<T>>> groupedRows = groupRowsByRoot();
-        sortGroups(groupedRows);
-        return groupedRows.values()
-                .stream()
-                .sorted(this::compareGroups)
-                .collect(Collectors.toList());
+    @Override
+    public long getDistinctKeyCount() {
+        return columnValueToIndex.stream().mapToLong(Map::size).sum();
     }
 
-    private int[] initializeParents(int size) {
-        int[] parents = new int[size];
-        for (int i = 0; i < size; i++) {
-            parents[i] = i;
-        }
-        return parents;
+    @Override
+    protected int rowLength(List<T> row) {
+        return row.size();
     }
 
     private void initializeUnionFind() {
+        createColumnMaps();
         for (int rowIndex = 0; rowIndex < rawData.size(); rowIndex++) {
             processRow(rowIndex, rawData.get(rowIndex));
         }
@@ -72,56 +69,33 @@ public class UnionFind<T> {
     }
 
     private void handleNonEmptyValue(int rowIndex, int colIndex, T value) {
-        Key<T> key = new Key<>(colIndex, value);
-        columnValueToIndex.putIfAbsent(key, rowIndex);
-        int existingRow = columnValueToIndex.get(key);
-        union(rowIndex, existingRow);
-    }
-
-    private int find(int index) {
-        int root = index;
-        while (parent[root] != root) {
-            root = parent[root];
-        }
-        while (index != root) {
-            int next = parent[index];
-            parent[index] = root;
-            index = next;
-        }
-        return root;
-    }
-
-    private void union(int x, int y) {
-        int rootX = find(x);
-        int rootY = find(y);
-        if (rootX != rootY) {
-            parent[rootY] = rootX;
+        final Integer existingRow = columnValueToIndex.get(colIndex).putIfAbsent(value, rowIndex);
+        if (existingRow != null) {
+            union(rowIndex, existingRow);
         }
     }
 
-    private Map<Integer, List<List<T>>> groupRowsByRoot() {
-        Map<Integer, List<List<T>>> groups = new HashMap<>();
-        for (int i = 0; i < rawData.size(); i++) {
-            int root = find(i);
-            groups.computeIfAbsent(root, k -> new ArrayList<>()).add(rawData.get(i));
+    private void createColumnMaps() {
+        final ColumnSketches sketches =
+                rawData instanceof SketchedRows sketchedRows && sketchedRows.columnSketches() != null
+                        ? sketchedRows.columnSketches()
+                        : sketchRows();
+        for (long expectedSize : sketches.expectedKeys()) {
+            columnValueToIndex.add(HashMap.newHashMap((int) Math.min(expectedSize, MAX_EXPECTED_SIZE)));
         }
-        return groups;
     }
 
-    private void sortGroups(Map<Integer, List<List<T>>> groups) {
-        groups.values().forEach(group ->
-                group.sort((l1, l2) -> Integer.compare(l2.size(), l1.size()))
-        );
-    }
-
-    private int compareGroups(List<List<T>> group1, List<List<T>> group2) {
-        int groupCountComparison = Integer.compare(group2.size(), group1.size());
-        if (groupCountComparison != 0) {
-            return groupCountComparison;
+    private ColumnSketches sketchRows() {
+        final var sketches = new ColumnSketches();
+        for (List<T> row : rawData) {
+            sketches.ensureColumns(row.size());
+            for (int colIndex = 0; colIndex < row.size(); colIndex++) {
+                final T value = row.get(colIndex);
+                if (isNonEmptyFunction.test(value)) {
+                    sketches.add(colIndex, value.hashCode());
+                }
+            }
         }
-
-        long elementCountGroup1 = group1.stream().mapToLong(List::size).sum();
-        long elementCountGroup2 = group2.stream().mapToLong(List::size).sum();
-        return Long.compare(elementCountGroup2, elementCountGroup1);
+        return sketches;
     }
 }
@@ -0,0 +1,253 @@
+package ru.starkov.service;
+
+import ru.starkov.service.collection.ColumnValueIndex;
+import ru.starkov.service.collection.LongArrayList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The persisted state of a numeric Union-Find engine, from which a later run can resume by appending new rows.
+ * <p>
+ * A snapshot holds the distinct rows linked so far together with their hashes, the root of every row and
+ * the index of column values to the first row containing them. An engine resumed from a snapshot only
+ * deduplicates and links the appended rows; the rows of the snapshot are neither parsed nor linked again.
+ * Component sizes are not stored, as they are recomputed from the roots while they are adopted.
+ * <p>
+ * Only rows of {@code long[]} and {@code double[]} are supported; every cell is stored as its raw 64-bit pattern.
+ *
+ * @param <R> the type of a row
+ */
+public final class UnionFindSnapshot<R> {
+
+    private static final int MAGIC = 0x55465331;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Class<R> rowType;
+    private final List<R> rows;
+    private final long[] hashes;
+    private final int[] roots;
+    private final ColumnValueIndex index;
+
+    UnionFindSnapshot(Class<R> rowType, List<R> rows, long[] hashes, int[] roots, ColumnValueIndex index) {
+        this.rowType = checkRowType(rowType);
+        this.rows = rows;
+        this.hashes = hashes;
+        this.roots = roots;
+        this.index = index;
+    }
+
+    /**
+     * Returns a snapshot without rows, used to start the history.
+     *
+     * @param rowType the type of a row, {@code long[].class} or {@code double[].class}
+     * @param <R>     the type of a row
+     * @return an empty snapshot
+     * @throws IllegalArgumentException if the row type is not supported
+     */
+    public static <R> UnionFindSnapshot<R> empty(Class<R> rowType) {
+        return new UnionFindSnapshot<>(rowType, List.of(), new long[0], new int[0], new ColumnValueIndex());
+    }
+
+    /**
+     * Reads a snapshot from a file.
+     *
+     * @param path    the path of the snapshot
+     * @param rowType the expected type of a row, {@code long[].class} or {@code double[].class}
+     * @param <R>     the type of a row
+     * @return the snapshot
+     * @throws IOException if the file cannot be read, is not a snapshot or holds rows of another type
+     * @throws IllegalArgumentException if the row type is not supported
+     */
+    public static <R> UnionFindSnapshot<R> read(Path path, Class<R> rowType) throws IOException {
+        checkRowType(rowType);
+        try (final var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a union-find snapshot: " + path);
+            }
+            final var storedType = input.readUTF();
+            if (!storedType.equals(rowType.getSimpleName())) {
+                throw new IOException("Snapshot holds " + storedType + " rows, expected " + rowType.getSimpleName());
+            }
+            final int rowCount = input.readInt();
+            final var rows = new ArrayList<R>(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                final var cells = new long[input.readInt()];
+                for (int j = 0; j < cells.length; j++) {
+                    cells[j] = input.readLong();
+                }
+                rows.add(decode(cells, rowType));
+            }
+            final var hashes = new long[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                hashes[i] = input.readLong();
+            }
+            final var roots = new int[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                roots[i] = input.readInt();
+            }
+            final var index = new ColumnValueIndex();
+            final long indexSize = input.readLong();
+            for (long i = 0; i < indexSize; i++) {
+                index.putIfAbsent(input.readInt(), input.readLong(), input.readInt());
+            }
+            return new UnionFindSnapshot<>(rowType, rows, hashes, roots, index);
+        } catch (IOException e) {
+            System.err.printf("Error reading snapshot: %s", path.toAbsolutePath());
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the snapshot to a file. The snapshot is first written next to the target and then moved over it,
+     * so an interrupted write never damages the previous snapshot.
+     *
+     * @param path the path of the snapshot
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        final var target = path.toAbsolutePath();
+        final var temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (final var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+                output.writeInt(MAGIC);
+                output.writeUTF(rowType.getSimpleName());
+                output.writeInt(rows.size());
+                for (R row : rows) {
+                    final long[] cells = encode(row);
+                    output.writeInt(cells.length);
+                    for (long cell : cells) {
+                        output.writeLong(cell);
+                    }
+                }
+                for (long hash : hashes) {
+                    output.writeLong(hash);
+                }
+                for (int root : roots) {
+                    output.writeInt(root);
+                }
+                output.writeLong(index.size());
+                final var failure = new IOException[1];
+                index.forEach((colIndex, value, rowIndex) -> {
+                    if (failure[0] == null) {
+                        try {
+                            output.writeInt(colIndex);
+                            output.writeLong(value);
+                            output.writeInt(rowIndex);
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        }
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            System.err.printf("Error writing snapshot: %s", target);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of rows in the snapshot.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    Class<R> rowType() {
+        return rowType;
+    }
+
+    int[] roots() {
+        return roots;
+    }
+
+    /**
+     * Returns the index of the snapshot; the engine resuming from the snapshot keeps extending it.
+     */
+    ColumnValueIndex index() {
+        return index;
+    }
+
+    /**
+     * Appends the rows of the batch that are present neither in the snapshot nor earlier in the batch
+     * to the rows of the snapshot.
+     *
+     * @param batch the new rows
+     * @return the rows of the snapshot followed by the new distinct rows, together with their hashes
+     */
+    AppendedRows<R> appendDistinct(List<R> batch) {
+        Objects.requireNonNull(batch, "Batch can't be null");
+        final int capacity = rows.size() + batch.size();
+        final var combinedRows = new ArrayList<R>(capacity);
+        final var combinedHashes = new LongArrayList(capacity);
+        final var deduplicator = new RowDeduplicator<R>(capacity, combinedRows::get);
+        for (int i = 0; i < rows.size(); i++) {
+            final R row = rows.get(i);
+            deduplicator.add(hashes[i], () -> row, i);
+            combinedRows.add(row);
+            combinedHashes.add(hashes[i]);
+        }
+        for (R row : batch) {
+            final long hash = RowDeduplicator.hashOf(row);
+            if (deduplicator.add(hash, () -> row, combinedRows.size())) {
+                combinedRows.add(row);
+                combinedHashes.add(hash);
+            }
+        }
+        return new AppendedRows<>(combinedRows, combinedHashes.toArray());
+    }
+
+    private static <R> Class<R> checkRowType(Class<R> rowType) {
+        if (rowType != long[].class && rowType != double[].class) {
+            throw new IllegalArgumentException("Snapshots support long[] and double[] rows only: " + rowType.getSimpleName());
+        }
+        return rowType;
+    }
+
+    private static long[] encode(Object row) {
+        return switch (row) {
+            case long[] values -> values;
+            case double[] values -> {
+                final var cells = new long[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    cells[i] = Double.doubleToRawLongBits(values[i]);
+                }
+                yield cells;
+            }
+            default -> throw new IllegalArgumentException("Unsupported row type: " + row.getClass().getSimpleName());
+        };
+    }
+
+    private static <R> R decode(long[] cells, Class<R> rowType) {
+        if (rowType == long[].class) {
+            return rowType.cast(cells);
+        }
+        final var values = new double[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            values[i] = Double.longBitsToDouble(cells[i]);
+        }
+        return rowType.cast(values);
+    }
+
+    /**
+     * The rows of a snapshot extended with new distinct rows, and the hashes of all of them.
+     */
+    record AppendedRows<R>(List<R> rows, long[] hashes) {
+    }
+}
@@ -1,24 +1,50 @@
 package ru.starkov.service;
 
+import ru.starkov.service.collection.ColumnSketches;
+import ru.starkov.service.collection.SketchedRows;
+import ru.starkov.service.metrics.ExecutionMetrics;
+import ru.starkov.service.metrics.ExecutionMetrics.Counter;
+import ru.starkov.service.metrics.ExecutionMetrics.Phase;
+import ru.starkov.service.parser.CellCodec;
+
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * The {@code ValidDataExtractor} class is responsible for extracting valid lines from a file,
  * processing them, and transforming them into a list of numbers of type {@code T}.
+ * <p>
+ * Lines are split into cells without creating a string per cell, and every quoted cell is validated and
+ * parsed in a single pass by a {@link CellCodec}.
+ * <p>
+ * When more than one thread is configured, the lines are validated and parsed by a parallel stream
+ * running in a dedicated {@link ForkJoinPool}; the order of the lines is preserved.
+ * The cells of the valid lines are added to {@link ColumnSketches} while the lines are parsed, and the returned rows
+ * carry the sketches, so that the engines size their column indexes without reading the rows again.
+ * Files converted to the {@link ColumnarFile binary format} are read with {@link #getColumnarData}.
  *
  * @param <T> the type of the numbers to be extracted
  */
 public class ValidDataExtractor<T> {
 
-    private final Function<String, T> parser;
-    private final Predicate<String> validStringPredicate;
+    private final CellCodec<T> cellCodec;
+    private final int threads;
+    private final ExecutionMetrics metrics;
 
     /**
      * Constructs an instance of {@code ValidDataExtractor} with the specified parsing and validation functions.
@@ -27,13 +53,60 @@ public class ValidDataExtractor<T> {
      * @param validStringPredicate a predicate to validate the strings
      */
     public ValidDataExtractor(Function<String, T> parser, Predicate<String> validStringPredicate) {
-        this.parser = parser;
-        this.validStringPredicate = validStringPredicate;
+        this(parser, validStringPredicate, 1);
+    }
+
+    /**
+     * Constructs an instance of {@code ValidDataExtractor} processing lines on the given number of threads.
+     *
+     * @param parser              a function to parse strings into the type {@code T}
+     * @param validStringPredicate a predicate to validate the strings
+     * @param threads             the number of threads validating and parsing lines
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public ValidDataExtractor(Function<String, T> parser, Predicate<String> validStringPredicate, int threads) {
+        this(parser, validStringPredicate, threads, new ExecutionMetrics());
+    }
+
+    /**
+     * Constructs an instance of {@code ValidDataExtractor} validating and parsing cells with the given codec.
+     *
+     * @param cellCodec the codec validating and parsing quoted cells
+     * @param threads   the number of threads validating and parsing lines
+     * @param metrics   the metrics of the run
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public ValidDataExtractor(CellCodec<T> cellCodec, int threads, ExecutionMetrics metrics) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        this.cellCodec = cellCodec;
+        this.threads = threads;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Constructs an instance of {@code ValidDataExtractor} recording the reading and deduplication phases
+     * and the line counters into the given metrics.
+     *
+     * @param parser              a function to parse strings into the type {@code T}
+     * @param validStringPredicate a predicate to validate the strings
+     * @param threads             the number of threads validating and parsing lines
+     * @param metrics             the metrics of the run
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public ValidDataExtractor(
+            Function<String, T> parser,
+            Predicate<String> validStringPredicate,
+            int threads,
+            ExecutionMetrics metrics
+    ) {
+        this(CellCodec.of(validStringPredicate, parser), threads, metrics);
     }
 
     /**
      * Reads a file and extracts valid data. Each line of the file is split by semicolons,
-     * and only strings that match the given validation pattern are processed. Valid strings
+     * and only lines whose cells are all accepted by the cell codec are processed. Valid cells
      * are parsed into the type {@code T} and returned as a list of lists.
      *
      * @param file the file to read
@@ -42,21 +115,194 @@ public class ValidDataExtractor<T> {
      * @throws NullPointerException if the provided file is {@code null}
      */
     public List<List<T>> getValidData(File file) throws IOException {
+        return getValidData(file, Function.identity());
+    }
+
+    /**
+     * Reads a file and extracts valid data like {@link #getValidData(File)}, converting every parsed row
+     * with the given mapper before duplicates are removed. This allows rows to be kept in a compact
+     * representation, such as a primitive array, instead of a list of boxed values.
+     * <p>
+     * A gzip-compressed file is inflated by a {@link GzipBlockReader} on a background thread while its lines are
+     * parsed, whereas a plain file is read directly.
+     *
+     * @param file      the file to read
+     * @param rowMapper a function converting a parsed row into its stored representation
+     * @param <R>       the type of the stored row
+     * @return a list of distinct rows in their stored representation, implementing {@link SketchedRows}
+     * @throws IOException if an I/O error occurs while reading the file
+     * @throws NullPointerException if the provided file is {@code null}
+     */
+    public <R> List<R> getValidData(File file, Function<List<T>, R> rowMapper) throws IOException {
         Objects.requireNonNull(file, "File can't be null");
-        try (final var bufferedReader = new BufferedReader(new FileReader(file))) {
-            return bufferedReader.lines()
-                    .map(s -> s.split(";"))
-                    .map(List::of)
-                    .filter(strings -> strings.stream().allMatch(validStringPredicate))
-                    .map(strings -> strings.stream()
-                            .map(s -> s.replaceAll("\"", ""))
-                            .map(parser)
-                            .toList())
-                    .distinct()
-                    .toList();
+        final ParsedRows<R> parsed;
+        final var linesRead = new LongAdder();
+        try {
+            parsed = metrics.measure(Phase.READ, () -> readLines(file, rowMapper, linesRead));
         } catch (IOException e) {
             System.err.printf("Error reading file: %s", file.getAbsolutePath());
             throw e;
         }
+        final List<R> rows = parsed.rows();
+        metrics.add(Counter.LINES_READ, linesRead.sum());
+        metrics.add(Counter.LINES_REJECTED, linesRead.sum() - rows.size());
+        final List<R> distinctRows = metrics.measure(Phase.DEDUPLICATE, () -> RowDeduplicator.distinct(rows));
+        metrics.add(Counter.DUPLICATE_ROWS, rows.size() - distinctRows.size());
+        metrics.add(Counter.DISTINCT_ROWS, distinctRows.size());
+        return new SketchedList<>(distinctRows, parsed.sketches());
+    }
+
+    private <R> ParsedRows<R> readLines(File file, Function<List<T>, R> rowMapper, LongAdder linesRead) throws IOException {
+        try (final var bufferedReader = new BufferedReader(new InputStreamReader(open(file)))) {
+            final var lines = bufferedReader.lines().peek(line -> linesRead.increment());
+            if (threads == 1) {
+                return extract(lines, rowMapper);
+            }
+            try (final var pool = new ForkJoinPool(threads)) {
+                return pool.submit(() -> extract(lines.parallel(), rowMapper)).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading file", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException("Failed to read file", e.getCause());
+            }
+        }
+    }
+
+    private static InputStream open(File file) throws IOException {
+        return GzipBlockReader.isGzip(file) ? new GzipBlockReader(file).asInputStream() : new FileInputStream(file);
+    }
+
+    /**
+     * Reads the rows of a file in the {@link ColumnarFile binary format} by memory-mapping it, without
+     * validating or parsing any text. The rows of such a file are valid and distinct by construction; the line
+     * counters are those of the text file it was converted from.
+     *
+     * @param file    the file in the binary format
+     * @param rowType the type of a row, {@code long[].class} or {@code double[].class}
+     * @param <R>     the type of a row
+     * @return a list of distinct rows
+     * @throws IOException if the file cannot be read, is not in the binary format or holds rows of another type
+     * @throws NullPointerException if the provided file is {@code null}
+     */
+    public <R> List<R> getColumnarData(File file, Class<R> rowType) throws IOException {
+        Objects.requireNonNull(file, "File can't be null");
+        final ColumnarFile.ColumnarRows<R> columnar = metrics.measure(
+                Phase.READ,
+                () -> ColumnarFile.read(file, rowType, threads)
+        );
+        metrics.add(Counter.LINES_READ, columnar.sourceLines());
+        metrics.add(Counter.LINES_REJECTED, columnar.sourceLines() - columnar.validRows());
+        metrics.add(Counter.DUPLICATE_ROWS, columnar.validRows() - columnar.rows().size());
+        metrics.add(Counter.DISTINCT_ROWS, columnar.rows().size());
+        return columnar.rows();
+    }
+
+    private <R> ParsedRows<R> extract(Stream<String> lines, Function<List<T>, R> rowMapper) {
+        return lines
+                .map(this::parseLine)
+                .filter(Objects::nonNull)
+                .collect(
+                        () -> new ParsedRows<R>(new ArrayList<>(), new ColumnSketches()),
+                        (parsed, values) -> parsed.add(values, rowMapper),
+                        ParsedRows::addAll
+                );
+    }
+
+    /**
+     * Splits a line into cells the same way as {@code String.split(";")} and decodes every cell.
+     *
+     * @return the values of the cells, or {@code null} if any cell is invalid
+     */
+    private List<T> parseLine(String line) {
+        if (line.isEmpty()) {
+            final T value = cellCodec.decode(line, 0, 0, 0);
+            return value == null ? null : List.of(value);
+        }
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ';') {
+            end--;
+        }
+        final var values = new ArrayList<T>();
+        int cellStart = 0;
+        while (cellStart < end) {
+            int cellEnd = line.indexOf(';', cellStart);
+            if (cellEnd < 0 || cellEnd > end) {
+                cellEnd = end;
+            }
+            final T value = cellCodec.decode(line, cellStart, cellEnd, values.size());
+            if (value == null) {
+                return null;
+            }
+            values.add(value);
+            cellStart = cellEnd + 1;
+        }
+        return values;
+    }
+
+    /**
+     * Returns the key under which a value is sketched: the value itself for a {@code long}, the bits of the value
+     * for a {@code double} and the hash code of any other value, {@code 0} denoting an empty cell.
+     */
+    private static long sketchKey(Object value) {
+        return switch (value) {
+            case Long number -> number;
+            case Double number -> Double.doubleToLongBits(number);
+            default -> value.hashCode();
+        };
+    }
+
+    /**
+     * Valid rows in the order of their lines together with the sketches of their columns.
+     */
+    private record ParsedRows<R>(ArrayList<R> rows, ColumnSketches sketches) {
+
+        <T> void add(List<T> values, Function<List<T>, R> rowMapper) {
+            sketches.ensureColumns(values.size());
+            for (int colIndex = 0; colIndex < values.size(); colIndex++) {
+                final long key = sketchKey(values.get(colIndex));
+                if (key != 0L) {
+                    sketches.add(colIndex, key);
+                }
+            }
+            rows.add(rowMapper.apply(values));
+        }
+
+        void addAll(ParsedRows<R> other) {
+            rows.addAll(other.rows);
+            sketches.merge(other.sketches);
+        }
+    }
+
+    /**
+     * Distinct rows carrying the sketches of their columns.
+     */
+    private static final class SketchedList<R> extends AbstractList<R> implements RandomAccess, SketchedRows {
+
+        private final List<R> rows;
+        private final ColumnSketches columnSketches;
+
+        private SketchedList(List<R> rows, ColumnSketches columnSketches) {
+            this.rows = rows;
+            this.columnSketches = columnSketches;
+        }
+
+        @Override
+        public R get(int index) {
+            return rows.get(index);
+        }
+
+        @Override
+        public int size() {
+            return rows.size();
+        }
+
+        @Override
+        public ColumnSketches columnSketches() {
+            return columnSketches;
+        }
     }
 }
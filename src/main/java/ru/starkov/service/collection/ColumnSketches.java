@@ -0,0 +1,81 @@
+package ru.starkov.service.collection;
+
+import java.util.Arrays;
+
+/**
+ * A {@link HyperLogLog} sketch per column, estimating the number of distinct non-empty keys of every column
+ * of a set of rows.
+ * <p>
+ * The rows are sketched while they are read, so that the engines can size their column indexes without
+ * another pass over the rows. Every reading thread fills its own instance, and the instances are merged once
+ * the rows are read.
+ */
+public class ColumnSketches {
+
+    private static final int SKETCH_PRECISION = 12;
+    private static final int ESTIMATE_MARGIN_SHIFT = 4;
+
+    private HyperLogLog[] columns = new HyperLogLog[0];
+
+    /**
+     * Makes sure that the sketches cover at least the given number of columns, so that a column counts even if
+     * all its cells are empty.
+     *
+     * @param columnCount the number of columns of a row
+     */
+    public void ensureColumns(int columnCount) {
+        if (columnCount > columns.length) {
+            final int oldLength = columns.length;
+            columns = Arrays.copyOf(columns, columnCount);
+            for (int colIndex = oldLength; colIndex < columnCount; colIndex++) {
+                columns[colIndex] = new HyperLogLog(SKETCH_PRECISION);
+            }
+        }
+    }
+
+    /**
+     * Adds the key of a non-empty cell to the sketch of its column.
+     *
+     * @param colIndex the index of the column, less than the number of columns ensured so far
+     * @param key      the key of the cell
+     */
+    public void add(int colIndex, long key) {
+        columns[colIndex].add(key);
+    }
+
+    /**
+     * Adds all keys of other sketches to these ones, column by column.
+     *
+     * @param other the sketches to merge
+     */
+    public void merge(ColumnSketches other) {
+        ensureColumns(other.columns.length);
+        for (int colIndex = 0; colIndex < other.columns.length; colIndex++) {
+            columns[colIndex].merge(other.columns[colIndex]);
+        }
+    }
+
+    /**
+     * Returns the number of columns covered by the sketches.
+     *
+     * @return the number of columns
+     */
+    public int columnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Estimates the number of distinct keys of every column.
+     *
+     * @return the expected number of distinct keys of every column, including a margin for the error of the
+     * estimate; the length of the array is the number of columns
+     */
+    public long[] expectedKeys() {
+        final var expectedKeys = new long[columns.length];
+        for (int colIndex = 0; colIndex < columns.length; colIndex++) {
+            final long estimate = columns[colIndex].estimate();
+            expectedKeys[colIndex] = estimate + (estimate >> ESTIMATE_MARGIN_SHIFT);
+        }
+        return expectedKeys;
+    }
+}
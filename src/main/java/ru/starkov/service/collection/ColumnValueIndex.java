@@ -0,0 +1,96 @@
+package ru.starkov.service.collection;
+
+import java.util.Arrays;
+
+/**
+ * Maps a (column index, raw 64-bit value) pair to the first row in which that value was seen.
+ * <p>
+ * Every column gets its own {@link LongIntHashMap}, so the column index never takes part in hashing
+ * and a lookup touches only the table of a single column. Tables are created lazily when a column
+ * is first used, unless the expected number of values of every column is known in advance, in which case
+ * the tables are created at their final size and never rehashed.
+ */
+public class ColumnValueIndex {
+
+    private LongIntHashMap[] columns;
+
+    /**
+     * Constructs an empty index whose tables grow as values are recorded.
+     */
+    public ColumnValueIndex() {
+        this.columns = new LongIntHashMap[0];
+    }
+
+    /**
+     * Constructs an empty index with the table of every column sized for the expected number of its values.
+     *
+     * @param expectedSizes the expected number of distinct values of every column
+     */
+    public ColumnValueIndex(long[] expectedSizes) {
+        this.columns = new LongIntHashMap[expectedSizes.length];
+        for (int colIndex = 0; colIndex < expectedSizes.length; colIndex++) {
+            columns[colIndex] = new LongIntHashMap((int) Math.min(expectedSizes[colIndex], Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Records the row for the value in the given column unless the value has already been seen there.
+     *
+     * @param colIndex the index of the column
+     * @param value    the raw 64-bit value of the cell
+     * @param rowIndex the index of the row containing the value
+     * @return the row in which the value was first seen, or {@link LongIntHashMap#NO_VALUE} if it is new
+     */
+    public int putIfAbsent(int colIndex, long value, int rowIndex) {
+        return column(colIndex).putIfAbsent(value, rowIndex);
+    }
+
+    /**
+     * Returns the number of distinct (column index, value) pairs recorded.
+     *
+     * @return the number of recorded values
+     */
+    public long size() {
+        long size = 0;
+        for (LongIntHashMap column : columns) {
+            if (column != null) {
+                size += column.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Passes every recorded value to the consumer, column by column.
+     *
+     * @param consumer the consumer of the recorded values
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int colIndex = 0; colIndex < columns.length; colIndex++) {
+            if (columns[colIndex] != null) {
+                final int column = colIndex;
+                columns[colIndex].forEach((value, rowIndex) -> consumer.accept(column, value, rowIndex));
+            }
+        }
+    }
+
+    /**
+     * Receives a single recorded value of the index.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int colIndex, long value, int rowIndex);
+    }
+
+    private LongIntHashMap column(int colIndex) {
+        if (colIndex >= columns.length) {
+            columns = Arrays.copyOf(columns, colIndex + 1);
+        }
+        LongIntHashMap column = columns[colIndex];
+        if (column == null) {
+            column = new LongIntHashMap();
+            columns[colIndex] = column;
+        }
+        return column;
+    }
+}
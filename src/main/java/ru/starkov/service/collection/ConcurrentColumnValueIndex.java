@@ -0,0 +1,89 @@
+package ru.starkov.service.collection;
+
+/**
+ * A thread-safe variant of {@link ColumnValueIndex}.
+ * <p>
+ * Every column is split into a fixed number of stripes, each being a {@link LongIntHashMap} guarded by
+ * its own lock. A value always lands in the same stripe, so threads only contend when they touch the same
+ * column and stripe at the same time. The number of columns must be known in advance, and the stripes may be
+ * sized from the expected number of values of every column so that they are never rehashed.
+ */
+public class ConcurrentColumnValueIndex {
+
+    private final LongIntHashMap[][] columns;
+    private final int stripeMask;
+
+    /**
+     * Constructs an empty index.
+     *
+     * @param columnCount the number of columns
+     * @param stripes     the minimum number of stripes per column; rounded up to a power of two
+     */
+    public ConcurrentColumnValueIndex(int columnCount, int stripes) {
+        this(new long[columnCount], stripes);
+    }
+
+    /**
+     * Constructs an empty index with the stripes of every column sized for the expected number of its values.
+     *
+     * @param expectedSizes the expected number of distinct values of every column; its length is the number of columns
+     * @param stripes       the minimum number of stripes per column; rounded up to a power of two
+     */
+    public ConcurrentColumnValueIndex(long[] expectedSizes, int stripes) {
+        final int stripeCount = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripeMask = stripeCount - 1;
+        this.columns = new LongIntHashMap[expectedSizes.length][stripeCount];
+        for (int colIndex = 0; colIndex < expectedSizes.length; colIndex++) {
+            final long perStripe = (expectedSizes[colIndex] + stripeCount - 1) / stripeCount;
+            for (int i = 0; i < stripeCount; i++) {
+                columns[colIndex][i] = perStripe == 0
+                        ? new LongIntHashMap()
+                        : new LongIntHashMap((int) Math.min(perStripe, Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    /**
+     * Records the row for the value in the given column unless the value has already been seen there.
+     *
+     * @param colIndex the index of the column
+     * @param value    the raw 64-bit value of the cell
+     * @param rowIndex the index of the row containing the value
+     * @return the row in which the value was first recorded, or {@link LongIntHashMap#NO_VALUE} if it is new
+     */
+    public int putIfAbsent(int colIndex, long value, int rowIndex) {
+        final var stripe = columns[colIndex][stripe(value)];
+        synchronized (stripe) {
+            return stripe.putIfAbsent(value, rowIndex);
+        }
+    }
+
+    /**
+     * Returns the number of distinct (column index, value) pairs recorded.
+     * The result is exact only when no thread is recording values at the same time.
+     *
+     * @return the number of recorded values
+     */
+    public long size() {
+        long size = 0;
+        for (LongIntHashMap[] column : columns) {
+            for (LongIntHashMap stripe : column) {
+                synchronized (stripe) {
+                    size += stripe.size();
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Selects the stripe with a hash independent of the one used inside {@link LongIntHashMap},
+     * so that the values of one stripe still spread over its whole table.
+     */
+    private int stripe(long value) {
+        long h = value ^ (value >>> 33);
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h & stripeMask;
+    }
+}
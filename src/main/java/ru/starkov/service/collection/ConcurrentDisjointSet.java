@@ -0,0 +1,74 @@
+package ru.starkov.service.collection;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A lock-free disjoint set forest that can be linked from many threads at once.
+ * <p>
+ * Parents are kept in an {@link AtomicIntegerArray}. A root is always linked under a root with a smaller
+ * index, so concurrent links can never form a cycle, and a link only succeeds through a compare-and-set
+ * on a slot that still holds a root. {@link #find(int)} shortens paths by halving, which is safe to
+ * perform concurrently because it only ever replaces a parent with one of its ancestors.
+ */
+public class ConcurrentDisjointSet {
+
+    private final AtomicIntegerArray parent;
+
+    /**
+     * Constructs a forest of the given number of single-element sets.
+     *
+     * @param size the number of elements
+     */
+    public ConcurrentDisjointSet(int size) {
+        this.parent = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            parent.setPlain(i, i);
+        }
+    }
+
+    /**
+     * Returns the current root of the set containing the element.
+     *
+     * @param index the element
+     * @return the root of its set
+     */
+    public int find(int index) {
+        while (true) {
+            final int p = parent.get(index);
+            if (p == index) {
+                return index;
+            }
+            final int grandParent = parent.get(p);
+            if (p != grandParent) {
+                parent.compareAndSet(index, p, grandParent);
+            }
+            index = grandParent;
+        }
+    }
+
+    /**
+     * Merges the sets containing the two elements.
+     *
+     * @param x the first element
+     * @param y the second element
+     */
+    public void union(int x, int y) {
+        while (true) {
+            int rootX = find(x);
+            int rootY = find(y);
+            if (rootX == rootY) {
+                return;
+            }
+            if (rootX < rootY) {
+                final int tmp = rootX;
+                rootX = rootY;
+                rootY = tmp;
+            }
+            if (parent.compareAndSet(rootX, rootX, rootY)) {
+                return;
+            }
+            x = rootX;
+            y = rootY;
+        }
+    }
+}
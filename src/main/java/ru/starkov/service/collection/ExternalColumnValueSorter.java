@@ -0,0 +1,373 @@
+package ru.starkov.service.collection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the rows sharing a (column index, raw 64-bit value) pair by sorting the pairs instead of indexing them
+ * in a hash table, spilling sorted runs to disk once a memory budget is exhausted.
+ * <p>
+ * Cells are collected in three flat arrays sized from the budget. When they fill up, they are sorted by column
+ * and value, every row is linked to the first row holding the same pair, and only that first row is written
+ * to a run file, so a run holds every pair once. Once all cells are added, the runs are merged, at most
+ * {@value #MAX_MERGE_FAN_IN} at a time, and equal pairs adjacent in the merge are linked the same way. Memory
+ * therefore stays within the budget however many distinct values there are, and the input may be many times
+ * larger than it. If all cells fit into the arrays, nothing is written to disk.
+ */
+public class ExternalColumnValueSorter implements AutoCloseable {
+
+    /**
+     * The number of bytes taken in memory by a single collected cell.
+     */
+    public static final int CELL_BYTES = Long.BYTES + Integer.BYTES * 2;
+
+    private static final int MIN_BUFFERED_CELLS = 1 << 10;
+    private static final int MAX_BUFFERED_CELLS = Integer.MAX_VALUE - 8;
+    private static final int MAX_MERGE_FAN_IN = 64;
+    private static final int RUN_BUFFER_SIZE = 1 << 16;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final EdgeConsumer edges;
+    private final Deque<Run> runs = new ArrayDeque<>();
+    private int[] columns;
+    private long[] values;
+    private int[] rows;
+    private int size;
+    private Path directory;
+    private int spilledRunCount;
+
+    /**
+     * Constructs an empty sorter.
+     *
+     * @param memoryBudget the number of bytes the collected cells may occupy in memory
+     * @param edges        the receiver of every pair of rows found to share a value in the same column
+     */
+    public ExternalColumnValueSorter(long memoryBudget, EdgeConsumer edges) {
+        final int capacity = (int) Math.max(MIN_BUFFERED_CELLS, Math.min(memoryBudget / CELL_BYTES, MAX_BUFFERED_CELLS));
+        this.edges = edges;
+        this.columns = new int[capacity];
+        this.values = new long[capacity];
+        this.rows = new int[capacity];
+    }
+
+    /**
+     * Adds a cell, spilling the collected cells into a run file if the memory budget is exhausted.
+     *
+     * @param colIndex the index of the column
+     * @param value    the raw 64-bit value of the cell
+     * @param rowIndex the index of the row containing the value
+     * @throws IOException if a run file cannot be written
+     */
+    public void add(int colIndex, long value, int rowIndex) throws IOException {
+        if (size == rows.length) {
+            spill();
+        }
+        columns[size] = colIndex;
+        values[size] = value;
+        rows[size] = rowIndex;
+        size++;
+    }
+
+    /**
+     * Links the rows of the cells that are still collected or spilled, and releases the memory and the files.
+     *
+     * @return the number of distinct (column index, value) pairs added
+     * @throws IOException if a run file cannot be read or written
+     */
+    public long finish() throws IOException {
+        try {
+            if (runs.isEmpty()) {
+                sort(0, size);
+                return linkSorted(null);
+            }
+            spill();
+            columns = null;
+            values = null;
+            rows = null;
+            while (runs.size() > MAX_MERGE_FAN_IN) {
+                final var merged = new ArrayList<Run>(MAX_MERGE_FAN_IN);
+                for (int i = 0; i < MAX_MERGE_FAN_IN; i++) {
+                    merged.add(runs.poll());
+                }
+                runs.add(writeRun(output -> merge(merged, output)));
+            }
+            final var remaining = new ArrayList<>(runs);
+            runs.clear();
+            return merge(remaining, null);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Returns the number of run files written, including the ones written while merging.
+     *
+     * @return the number of spilled runs
+     */
+    public int getSpilledRunCount() {
+        return spilledRunCount;
+    }
+
+    /**
+     * Deletes the run files which have not been merged yet, and the directory holding them.
+     *
+     * @throws IOException if a file cannot be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        for (Run run : runs) {
+            Files.deleteIfExists(run.path());
+        }
+        runs.clear();
+        if (directory != null) {
+            Files.deleteIfExists(directory);
+            directory = null;
+        }
+    }
+
+    private void spill() throws IOException {
+        sort(0, size);
+        runs.add(writeRun(this::linkSorted));
+        size = 0;
+    }
+
+    private Run writeRun(RunContent content) throws IOException {
+        if (directory == null) {
+            directory = Files.createTempDirectory("column-values-");
+        }
+        final var path = Files.createTempFile(directory, "run-", ".bin");
+        final long cells;
+        try (final var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), RUN_BUFFER_SIZE))) {
+            cells = content.write(output);
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        spilledRunCount++;
+        return new Run(path, cells);
+    }
+
+    /**
+     * Links every collected row to the first row holding the same pair, and writes that first row of every pair
+     * if an output is given.
+     *
+     * @return the number of distinct pairs
+     */
+    private long linkSorted(DataOutputStream output) throws IOException {
+        long distinct = 0;
+        int first = 0;
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && columns[i] == columns[first] && values[i] == values[first]) {
+                edges.union(rows[first], rows[i]);
+                continue;
+            }
+            first = i;
+            distinct++;
+            if (output != null) {
+                writeCell(output, columns[i], values[i], rows[i]);
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Merges sorted runs, linking the rows of equal pairs, and writes the first row of every pair if an output
+     * is given. The merged runs are deleted.
+     *
+     * @return the number of distinct pairs
+     */
+    private long merge(List<Run> merged, DataOutputStream output) throws IOException {
+        final var readers = new ArrayList<RunReader>(merged.size());
+        try {
+            final var queue = new PriorityQueue<>(merged.size(), Comparator
+                    .comparingInt(RunReader::column)
+                    .thenComparingLong(RunReader::value));
+            for (Run run : merged) {
+                final var reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+            long distinct = 0;
+            boolean hasPrevious = false;
+            int column = 0;
+            long value = 0;
+            int firstRow = 0;
+            while (!queue.isEmpty()) {
+                final var reader = queue.poll();
+                if (hasPrevious && reader.column() == column && reader.value() == value) {
+                    edges.union(firstRow, reader.row());
+                } else {
+                    hasPrevious = true;
+                    column = reader.column();
+                    value = reader.value();
+                    firstRow = reader.row();
+                    distinct++;
+                    if (output != null) {
+                        writeCell(output, column, value, firstRow);
+                    }
+                }
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+            return distinct;
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+            for (Run run : merged) {
+                Files.deleteIfExists(run.path());
+            }
+        }
+    }
+
+    private static void writeCell(DataOutputStream output, int column, long value, int row) throws IOException {
+        output.writeInt(column);
+        output.writeLong(value);
+        output.writeInt(row);
+    }
+
+    /**
+     * Sorts a range of the collected cells by column and value with a quicksort that recurses into the smaller
+     * partition, so the stack stays logarithmic.
+     */
+    private void sort(int from, int to) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            final int middle = (from + to) >>> 1;
+            final int pivot = medianOfThree(from, middle, to - 1);
+            final int pivotColumn = columns[pivot];
+            final long pivotValue = values[pivot];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (compare(i, pivotColumn, pivotValue) < 0) {
+                    i++;
+                }
+                while (compare(j, pivotColumn, pivotValue) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (j + 1 - from < to - i) {
+                sort(from, j + 1);
+                from = i;
+            } else {
+                sort(i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && compare(j, columns[j - 1], values[j - 1]) < 0; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private int medianOfThree(int a, int b, int c) {
+        if (compare(a, columns[b], values[b]) < 0) {
+            if (compare(b, columns[c], values[c]) < 0) {
+                return b;
+            }
+            return compare(a, columns[c], values[c]) < 0 ? c : a;
+        }
+        if (compare(a, columns[c], values[c]) < 0) {
+            return a;
+        }
+        return compare(b, columns[c], values[c]) < 0 ? c : b;
+    }
+
+    private int compare(int index, int column, long value) {
+        final int columnComparison = Integer.compare(columns[index], column);
+        return columnComparison != 0 ? columnComparison : Long.compare(values[index], value);
+    }
+
+    private void swap(int i, int j) {
+        final int column = columns[i];
+        columns[i] = columns[j];
+        columns[j] = column;
+        final long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+        final int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+    }
+
+    /**
+     * Receives a pair of rows sharing a value in the same column.
+     */
+    @FunctionalInterface
+    public interface EdgeConsumer {
+        void union(int rowIndex, int otherRowIndex);
+    }
+
+    @FunctionalInterface
+    private interface RunContent {
+        long write(DataOutputStream output) throws IOException;
+    }
+
+    /**
+     * A run file and the number of cells in it.
+     */
+    private record Run(Path path, long cells) {
+    }
+
+    /**
+     * Reads the cells of a run one by one.
+     */
+    private static final class RunReader implements AutoCloseable {
+        private final DataInputStream input;
+        private long remaining;
+        private int column;
+        private long value;
+        private int row;
+
+        private RunReader(Run run) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.path()), RUN_BUFFER_SIZE));
+            this.remaining = run.cells();
+        }
+
+        private boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            column = input.readInt();
+            value = input.readLong();
+            row = input.readInt();
+            return true;
+        }
+
+        private int column() {
+            return column;
+        }
+
+        private long value() {
+            return value;
+        }
+
+        private int row() {
+            return row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
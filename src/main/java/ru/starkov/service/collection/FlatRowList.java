@@ -0,0 +1,480 @@
+package ru.starkov.service.collection;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A read-only list of rows whose cells are all kept in flat primitive arrays, the rows being delimited by
+ * an array of offsets, so rows may have different numbers of cells.
+ * <p>
+ * {@code long} values and the bits of {@code double} values take eight bytes per cell, {@code int} values and
+ * dictionary ids four, and every row adds only its four-byte offset, with no object header or reference per row.
+ * Rows of {@code long} values keep four-byte cells as long as every value fits into an {@code int}: the first value
+ * that does not promotes the pages built so far to eight-byte cells in place, page by page, so a file is parsed
+ * only once whatever the range of its values.
+ * The cells are laid out one after another in pages of {@value #PAGE_SIZE} cells, so the list grows without
+ * copying its cells and without allocating a single huge array.
+ * <p>
+ * Engines read the cells in place through {@link #rowLength(int)} and {@link #cellKey(int, int)}, or
+ * {@link #rowStart(int)} and {@link #cell(int)} when scanning whole rows, while
+ * {@link #get(int)} returns a fresh copy of a row which the caller may keep or discard.
+ * <p>
+ * A list built from parsed lines carries the {@link ColumnSketches} recorded while the lines were parsed.
+ *
+ * @param <R> the type of a row returned by {@link #get(int)}
+ */
+public abstract class FlatRowList<R> extends AbstractList<R> implements RandomAccess, SketchedRows {
+
+    private static final int PAGE_SHIFT = 15;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int MAX_PAGES = Integer.MAX_VALUE >>> PAGE_SHIFT;
+
+    private final int[] rowStarts;
+    private final int size;
+    private ColumnSketches columnSketches;
+
+    private FlatRowList(int[] rowStarts, int size) {
+        this.rowStarts = rowStarts;
+        this.size = size;
+    }
+
+    /**
+     * Creates an empty builder of {@code long[]} rows.
+     *
+     * @return the builder
+     */
+    public static Builder<long[]> longRows() {
+        return new Builder<>(true, true, (rowStarts, size, widePages, narrowPages) -> narrowPages != null
+                ? new NarrowLongRows(rowStarts, size, narrowPages)
+                : new LongRows(rowStarts, size, widePages));
+    }
+
+    /**
+     * Creates an empty builder of {@code double[]} rows, whose cells are kept as the bits of the values.
+     *
+     * @return the builder
+     */
+    public static Builder<double[]> doubleRows() {
+        return new Builder<>(false, false, (rowStarts, size, widePages, narrowPages) -> new DoubleRows(rowStarts, size, widePages));
+    }
+
+    /**
+     * Creates an empty builder of {@code int[]} rows.
+     *
+     * @return the builder
+     */
+    public static Builder<int[]> intRows() {
+        return new Builder<>(true, false, (rowStarts, size, widePages, narrowPages) -> new IntRows(rowStarts, size, narrowPages));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public ColumnSketches columnSketches() {
+        return columnSketches;
+    }
+
+    /**
+     * Returns the number of cells in the row.
+     *
+     * @param index the index of the row
+     * @return the number of cells
+     */
+    public int rowLength(int index) {
+        Objects.checkIndex(index, size);
+        return rowStarts[index + 1] - rowStarts[index];
+    }
+
+    /**
+     * Returns the raw 64-bit representation of a cell: the value itself for integral rows and the bits of the
+     * value for {@code double} rows.
+     *
+     * @param index    the index of the row
+     * @param colIndex the index of the column, less than the length of the row
+     * @return the bits of the cell
+     */
+    public long cellKey(int index, int colIndex) {
+        return cell(rowStart(index) + colIndex);
+    }
+
+    /**
+     * Returns the position of the row's first cell in the sequence of all cells, so that the cells of a row can
+     * be read with {@link #cell(int)} without locating the row again for every cell.
+     *
+     * @param index the index of the row
+     * @return the position of the first cell
+     */
+    public int rowStart(int index) {
+        return rowStarts[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * Returns the total number of cells of all rows.
+     *
+     * @return the number of cells
+     */
+    public int cellCount() {
+        return rowStarts[size];
+    }
+
+    /**
+     * Returns the raw 64-bit representation of the cell at the given position of the sequence of all cells.
+     *
+     * @param position the position of the cell, less than {@link #cellCount()}
+     * @return the bits of the cell
+     */
+    public abstract long cell(int position);
+
+    /**
+     * Tells whether the cells take four bytes each.
+     */
+    abstract boolean isNarrow();
+
+    /**
+     * Copies cells, all lying on one page, into an array of the page type, or into a {@code long[]} page when
+     * the cells are narrow.
+     */
+    abstract void copyCells(int position, Object target, int targetOffset, int length);
+
+    /**
+     * Drops the pages preceding the given one, whose cells are no longer read.
+     */
+    abstract void releasePages(int toPage);
+
+    /**
+     * Collects rows cell by cell into pages of flat arrays and turns them into a {@link FlatRowList}.
+     * The builder must not be used once the list is built.
+     *
+     * @param <R> the type of a row
+     */
+    public static final class Builder<R> {
+
+        private final boolean widenable;
+        private final RowsFactory<R> factory;
+        private boolean narrow;
+        private int[] rowStarts = new int[17];
+        private long[][] widePages = new long[1][];
+        private int[][] narrowPages = new int[1][];
+        private int size;
+        private int cellCount;
+        private ColumnSketches columnSketches;
+
+        private Builder(boolean narrow, boolean widenable, RowsFactory<R> factory) {
+            this.narrow = narrow;
+            this.widenable = widenable;
+            this.factory = factory;
+        }
+
+        /**
+         * Makes room for the given number of rows in total, so that adding them does not grow the offsets.
+         *
+         * @param rows the total number of rows expected
+         */
+        public void ensureCapacity(int rows) {
+            if (rows + 1 > rowStarts.length) {
+                rowStarts = Arrays.copyOf(rowStarts, rows + 1);
+            }
+        }
+
+        /**
+         * Appends a cell to the current row.
+         *
+         * @param bits the raw 64-bit representation of the cell, as returned by {@link FlatRowList#cellKey}
+         * @throws IllegalStateException if the builder already holds the largest supported number of cells
+         */
+        public void addCell(long bits) {
+            if (narrow && (int) bits != bits) {
+                widen();
+            }
+            final int offset = cellCount & PAGE_MASK;
+            if (offset == 0) {
+                addPage();
+            }
+            final int page = cellCount >>> PAGE_SHIFT;
+            if (narrow) {
+                narrowPages[page][offset] = (int) bits;
+            } else {
+                widePages[page][offset] = bits;
+            }
+            cellCount++;
+        }
+
+        /**
+         * Completes the current row, so that the next added cell starts a new one.
+         */
+        public void endRow() {
+            if (size + 2 > rowStarts.length) {
+                rowStarts = Arrays.copyOf(rowStarts, rowStarts.length + (rowStarts.length >> 1) + 1);
+            }
+            rowStarts[++size] = cellCount;
+        }
+
+        /**
+         * Appends a copy of a row of another list of the same type.
+         *
+         * @param rows  the list holding the row
+         * @param index the index of the row
+         */
+        public void addRow(FlatRowList<R> rows, int index) {
+            if (narrow && !rows.isNarrow()) {
+                widen();
+            }
+            int position = rows.rowStart(index);
+            int remaining = rows.rowLength(index);
+            while (remaining > 0) {
+                final int offset = cellCount & PAGE_MASK;
+                if (offset == 0) {
+                    addPage();
+                }
+                final int length = Math.min(remaining, PAGE_SIZE - Math.max(offset, position & PAGE_MASK));
+                final Object page = narrow ? narrowPages[cellCount >>> PAGE_SHIFT] : widePages[cellCount >>> PAGE_SHIFT];
+                rows.copyCells(position, page, offset, length);
+                position += length;
+                cellCount += length;
+                remaining -= length;
+            }
+            endRow();
+        }
+
+        /**
+         * Appends copies of the given rows of another list of the same type, releasing every page of that list
+         * as soon as the rows on it are copied, so that the cells are never held twice in full. The other list
+         * must not be used afterwards.
+         *
+         * @param rows    the list holding the rows
+         * @param indexes the indexes of the rows, in ascending order
+         * @param from    the position in {@code indexes} of the first row to append
+         * @param to      the position in {@code indexes} following the last row to append
+         */
+        public void moveRows(FlatRowList<R> rows, int[] indexes, int from, int to) {
+            for (int i = from; i < to; i++) {
+                rows.releasePages(rows.rowStart(indexes[i]) >>> PAGE_SHIFT);
+                addRow(rows, indexes[i]);
+            }
+            rows.releasePages(Integer.MAX_VALUE);
+        }
+
+        /**
+         * Returns the number of completed rows.
+         *
+         * @return the number of rows
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Attaches the sketches of the columns of the rows, recorded while they were parsed, to the list to build.
+         *
+         * @param columnSketches the sketches of the columns
+         */
+        public void setColumnSketches(ColumnSketches columnSketches) {
+            this.columnSketches = columnSketches;
+        }
+
+        /**
+         * Builds the list of the completed rows.
+         *
+         * @return the list of rows
+         */
+        public FlatRowList<R> build() {
+            final FlatRowList<R> rows = factory.create(rowStarts, size, widePages, narrowPages);
+            rows.columnSketches = columnSketches;
+            return rows;
+        }
+
+        /**
+         * Promotes the pages built so far to eight-byte cells, dropping every narrow page once it is copied.
+         */
+        private void widen() {
+            if (!widenable) {
+                throw new IllegalArgumentException("Rows of this type keep four-byte cells only");
+            }
+            widePages = new long[narrowPages.length][];
+            for (int page = 0; page < narrowPages.length && narrowPages[page] != null; page++) {
+                final int[] narrowPage = narrowPages[page];
+                final long[] widePage = new long[PAGE_SIZE];
+                for (int offset = 0; offset < PAGE_SIZE; offset++) {
+                    widePage[offset] = narrowPage[offset];
+                }
+                widePages[page] = widePage;
+                narrowPages[page] = null;
+            }
+            narrowPages = null;
+            narrow = false;
+        }
+
+        private void addPage() {
+            final int page = cellCount >>> PAGE_SHIFT;
+            if (page == MAX_PAGES) {
+                throw new IllegalStateException("Too many cells to keep in memory: read the file in the streaming mode");
+            }
+            final int pageCapacity = Math.min(MAX_PAGES, page + (page >> 1) + 1);
+            if (narrow) {
+                if (page == narrowPages.length) {
+                    narrowPages = Arrays.copyOf(narrowPages, pageCapacity);
+                }
+                narrowPages[page] = new int[PAGE_SIZE];
+            } else {
+                if (page == widePages.length) {
+                    widePages = Arrays.copyOf(widePages, pageCapacity);
+                }
+                widePages[page] = new long[PAGE_SIZE];
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowsFactory<R> {
+        FlatRowList<R> create(int[] rowStarts, int size, long[][] widePages, int[][] narrowPages);
+    }
+
+    /**
+     * Rows whose cells take eight bytes each.
+     */
+    private abstract static class WideRows<R> extends FlatRowList<R> {
+        private final long[][] pages;
+
+        private WideRows(int[] rowStarts, int size, long[][] pages) {
+            super(rowStarts, size);
+            this.pages = pages;
+        }
+
+        @Override
+        public final long cell(int position) {
+            return pages[position >>> PAGE_SHIFT][position & PAGE_MASK];
+        }
+
+        @Override
+        final boolean isNarrow() {
+            return false;
+        }
+
+        @Override
+        final void copyCells(int position, Object target, int targetOffset, int length) {
+            System.arraycopy(pages[position >>> PAGE_SHIFT], position & PAGE_MASK, target, targetOffset, length);
+        }
+
+        @Override
+        final void releasePages(int toPage) {
+            Arrays.fill(pages, 0, Math.min(toPage, pages.length), null);
+        }
+    }
+
+    private static final class LongRows extends WideRows<long[]> {
+
+        private LongRows(int[] rowStarts, int size, long[][] pages) {
+            super(rowStarts, size, pages);
+        }
+
+        @Override
+        public long[] get(int index) {
+            final int start = rowStart(index);
+            final var row = new long[rowLength(index)];
+            for (int colIndex = 0; colIndex < row.length; colIndex++) {
+                row[colIndex] = cell(start + colIndex);
+            }
+            return row;
+        }
+    }
+
+    private static final class DoubleRows extends WideRows<double[]> {
+
+        private DoubleRows(int[] rowStarts, int size, long[][] pages) {
+            super(rowStarts, size, pages);
+        }
+
+        @Override
+        public double[] get(int index) {
+            final int start = rowStart(index);
+            final var row = new double[rowLength(index)];
+            for (int colIndex = 0; colIndex < row.length; colIndex++) {
+                row[colIndex] = Double.longBitsToDouble(cell(start + colIndex));
+            }
+            return row;
+        }
+    }
+
+    /**
+     * Rows whose cells take four bytes each.
+     */
+    private abstract static class NarrowRows<R> extends FlatRowList<R> {
+        private final int[][] pages;
+
+        private NarrowRows(int[] rowStarts, int size, int[][] pages) {
+            super(rowStarts, size);
+            this.pages = pages;
+        }
+
+        @Override
+        public final long cell(int position) {
+            return pages[position >>> PAGE_SHIFT][position & PAGE_MASK];
+        }
+
+        @Override
+        final boolean isNarrow() {
+            return true;
+        }
+
+        @Override
+        final void copyCells(int position, Object target, int targetOffset, int length) {
+            final int[] page = pages[position >>> PAGE_SHIFT];
+            final int offset = position & PAGE_MASK;
+            if (target instanceof long[] widePage) {
+                for (int i = 0; i < length; i++) {
+                    widePage[targetOffset + i] = page[offset + i];
+                }
+            } else {
+                System.arraycopy(page, offset, target, targetOffset, length);
+            }
+        }
+
+        @Override
+        final void releasePages(int toPage) {
+            Arrays.fill(pages, 0, Math.min(toPage, pages.length), null);
+        }
+    }
+
+    private static final class IntRows extends NarrowRows<int[]> {
+
+        private IntRows(int[] rowStarts, int size, int[][] pages) {
+            super(rowStarts, size, pages);
+        }
+
+        @Override
+        public int[] get(int index) {
+            final int start = rowStart(index);
+            final var row = new int[rowLength(index)];
+            for (int colIndex = 0; colIndex < row.length; colIndex++) {
+                row[colIndex] = (int) cell(start + colIndex);
+            }
+            return row;
+        }
+    }
+
+    /**
+     * Rows of {@code long} values which all fit into an {@code int}.
+     */
+    private static final class NarrowLongRows extends NarrowRows<long[]> {
+
+        private NarrowLongRows(int[] rowStarts, int size, int[][] pages) {
+            super(rowStarts, size, pages);
+        }
+
+        @Override
+        public long[] get(int index) {
+            final int start = rowStart(index);
+            final var row = new long[rowLength(index)];
+            for (int colIndex = 0; colIndex < row.length; colIndex++) {
+                row[colIndex] = cell(start + colIndex);
+            }
+            return row;
+        }
+    }
+}
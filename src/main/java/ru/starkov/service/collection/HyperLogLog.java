@@ -0,0 +1,96 @@
+package ru.starkov.service.collection;
+
+/**
+ * A HyperLogLog sketch estimating the number of distinct 64-bit values added to it.
+ * <p>
+ * Values are hashed internally, so they need not be uniformly distributed. The sketch keeps
+ * {@code 2^precision} one-byte registers regardless of the number of values, and its relative standard
+ * error is about {@code 1.04 / sqrt(2^precision)}. Small cardinalities are estimated by linear counting.
+ * Sketches of the same precision built over parts of the values can be merged.
+ */
+public class HyperLogLog {
+
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Constructs an empty sketch.
+     *
+     * @param precision the number of bits selecting a register, from 4 to 18
+     * @throws IllegalArgumentException if the precision is out of range
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds a value to the sketch.
+     *
+     * @param value the value
+     */
+    public void add(long value) {
+        final long hash = mix(value);
+        final int register = (int) (hash >>> (Long.SIZE - precision));
+        final int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[register]) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    /**
+     * Adds all values of another sketch to this one.
+     *
+     * @param other the sketch to merge
+     * @throws IllegalArgumentException if the sketches have different precisions
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches of precision " + other.precision + " and " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of distinct values added to the sketch.
+     *
+     * @return the estimated number of distinct values
+     */
+    public long estimate() {
+        final int m = registers.length;
+        double sum = 0;
+        int emptyRegisters = 0;
+        for (byte rank : registers) {
+            sum += Math.scalb(1.0, -rank);
+            if (rank == 0) {
+                emptyRegisters++;
+            }
+        }
+        final double alpha = 0.7213 / (1 + 1.079 / m);
+        final double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && emptyRegisters > 0) {
+            return Math.round(m * Math.log((double) m / emptyRegisters));
+        }
+        return Math.round(estimate);
+    }
+
+    private static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,70 @@
+package ru.starkov.service.collection;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A growable list of primitive {@code long} values backed by a single array.
+ */
+public class LongArrayList {
+
+    private long[] values;
+    private int size;
+
+    /**
+     * Constructs an empty list with a default initial capacity.
+     */
+    public LongArrayList() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty list with the given initial capacity.
+     *
+     * @param capacity the initial capacity
+     */
+    public LongArrayList(int capacity) {
+        this.values = new long[Math.max(1, capacity)];
+    }
+
+    /**
+     * Appends a value to the end of the list.
+     *
+     * @param value the value to append
+     */
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length + (values.length >> 1) + 1);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Returns the value at the given position.
+     *
+     * @param index the position of the value
+     * @return the value
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public long get(int index) {
+        return values[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * Returns the number of values in the list.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an array holding exactly the values of the list.
+     *
+     * @return the values of the list
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,168 @@
+package ru.starkov.service.collection;
+
+/**
+ * An open-addressing hash map from primitive {@code long} keys to non-negative {@code int} values.
+ * <p>
+ * Keys and values are kept in two flat arrays and collisions are resolved with linear probing,
+ * so no key, value or entry objects are allocated per mapping. The key {@code 0} marks a free slot
+ * in the table and is therefore stored separately.
+ */
+public class LongIntHashMap {
+
+    /**
+     * Returned by lookups when the key is not present in the map.
+     */
+    public static final int NO_VALUE = -1;
+
+    private static final long FREE_KEY = 0L;
+    private static final long PHI = 0x9E3779B97F4A7C15L;
+    private static final int DEFAULT_EXPECTED_SIZE = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private long[] keys;
+    private int[] values;
+    private int shift;
+    private int mask;
+    private int resizeThreshold;
+    private int size;
+    private int freeKeyValue = NO_VALUE;
+
+    /**
+     * Constructs an empty map with a default initial capacity.
+     */
+    public LongIntHashMap() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    /**
+     * Constructs an empty map able to hold the given number of mappings without rehashing.
+     *
+     * @param expectedSize the number of mappings the map is expected to hold
+     */
+    public LongIntHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Associates the value with the key unless the key is already mapped.
+     *
+     * @param key   the key
+     * @param value the non-negative value to store
+     * @return the value already mapped to the key, or {@link #NO_VALUE} if the new mapping was stored
+     */
+    public int putIfAbsent(long key, int value) {
+        if (key == FREE_KEY) {
+            if (freeKeyValue != NO_VALUE) {
+                return freeKeyValue;
+            }
+            freeKeyValue = value;
+            size++;
+            return NO_VALUE;
+        }
+        int slot = slot(key);
+        while (keys[slot] != FREE_KEY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Returns the value mapped to the key.
+     *
+     * @param key the key
+     * @return the mapped value, or {@link #NO_VALUE} if the key is absent
+     */
+    public int get(long key) {
+        if (key == FREE_KEY) {
+            return freeKeyValue;
+        }
+        int slot = slot(key);
+        while (keys[slot] != FREE_KEY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Returns the number of mappings in the map.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Passes every mapping of the map to the consumer, in no particular order.
+     *
+     * @param consumer the consumer of the mappings
+     */
+    public void forEach(EntryConsumer consumer) {
+        if (freeKeyValue != NO_VALUE) {
+            consumer.accept(FREE_KEY, freeKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private int slot(long key) {
+        return (int) ((key * PHI) >>> shift);
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity > MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("LongIntHashMap cannot grow beyond " + MAXIMUM_CAPACITY + " slots");
+        }
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE_KEY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != FREE_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        shift = Long.numberOfLeadingZeros(mask);
+        resizeThreshold = (int) (capacity * 0.75f);
+    }
+
+    /**
+     * Receives a single mapping of the map.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long required = Math.max(2L, (long) Math.ceil(Math.max(expectedSize, 1) / 0.75d) + 1);
+        if (required > MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        return Integer.highestOneBit((int) required - 1) << 1;
+    }
+}
@@ -0,0 +1,89 @@
+package ru.starkov.service.collection;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A thread-safe map holding at most a fixed number of entries, evicting the least recently used one when full.
+ * <p>
+ * Entries are kept in a {@link LinkedHashMap} in access order, so both reads and writes move an entry to the
+ * most recently used end. Evicted and replaced entries are passed to a listener, for example to release the
+ * resources their values hold.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class LruCache<K, V> {
+
+    private final Map<K, V> entries;
+    private final BiConsumer<K, V> evictionListener;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param capacity         the maximum number of entries
+     * @param evictionListener the receiver of every evicted or replaced entry
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public LruCache(int capacity, BiConsumer<K, V> evictionListener) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.evictionListener = evictionListener;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                evictionListener.accept(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the value of the key, marking the entry as the most recently used.
+     *
+     * @param key the key
+     * @return the value, or {@code null} if the key is not cached
+     */
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Caches the value of the key as the most recently used entry, evicting the least recently used entry if
+     * the cache is full.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public synchronized void put(K key, V value) {
+        final V replaced = entries.put(key, value);
+        if (replaced != null && replaced != value) {
+            evictionListener.accept(key, replaced);
+        }
+    }
+
+    /**
+     * Removes the entry of the key if it still holds the given value, without passing it to the listener.
+     *
+     * @param key   the key
+     * @param value the expected value
+     * @return {@code true} if the entry was removed
+     */
+    public synchronized boolean remove(K key, V value) {
+        return entries.remove(key, value);
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,15 @@
+package ru.starkov.service.collection;
+
+/**
+ * A list of rows whose columns may have been sketched while the rows were read, so that an engine sizes its
+ * column index from the sketches instead of passing over the rows once more.
+ */
+public interface SketchedRows {
+
+    /**
+     * Returns the sketches of the columns of the rows recorded while they were read.
+     *
+     * @return the sketches of the columns, or {@code null} if the rows were not sketched
+     */
+    ColumnSketches columnSketches();
+}
@@ -0,0 +1,199 @@
+package ru.starkov.service.collection;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A dictionary of byte strings stored off-heap, handing out a dense {@code int} id for every distinct value.
+ * <p>
+ * The bytes of every distinct value are copied once into direct {@link ByteBuffer} arenas, so the heap only
+ * holds the hash tables and the locations of the values. The empty value always has the id {@link #EMPTY_ID}.
+ * The dictionary is split into stripes selected by the hash of the value, each with its own lock, table and
+ * arenas, so values can be interned from many threads at once. Values may be read concurrently once all
+ * interning threads have finished.
+ */
+public class StringDictionary {
+
+    /**
+     * The id of the empty value.
+     */
+    public static final int EMPTY_ID = 0;
+
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPE_MASK = (1 << STRIPE_BITS) - 1;
+    private static final int ARENA_SIZE = 1 << 22;
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    /**
+     * Constructs an empty dictionary.
+     */
+    public StringDictionary() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Returns the id of the value, adding the value to the dictionary if it is not present yet.
+     *
+     * @param bytes  an array holding the value in its first {@code length} bytes
+     * @param length the length of the value
+     * @param hash   the 64-bit hash of the value; equal values must have equal hashes
+     * @return the id of the value
+     */
+    public int intern(byte[] bytes, int length, long hash) {
+        if (length == 0) {
+            return EMPTY_ID;
+        }
+        final int stripe = (int) (hash >>> (Long.SIZE - STRIPE_BITS));
+        return (stripes[stripe].intern(bytes, length, hash) << STRIPE_BITS) | stripe;
+    }
+
+    /**
+     * Returns the length of the value in bytes.
+     *
+     * @param id the id of the value
+     * @return the length of the value
+     */
+    public int length(int id) {
+        if (id == EMPTY_ID) {
+            return 0;
+        }
+        return stripes[id & STRIPE_MASK].length(id >>> STRIPE_BITS);
+    }
+
+    /**
+     * Copies the bytes of the value into the array.
+     *
+     * @param id     the id of the value
+     * @param target the array to copy the value into
+     * @param offset the position in the array at which the value starts
+     */
+    public void copy(int id, byte[] target, int offset) {
+        if (id != EMPTY_ID) {
+            stripes[id & STRIPE_MASK].copy(id >>> STRIPE_BITS, target, offset);
+        }
+    }
+
+    /**
+     * Returns the value decoded as UTF-8.
+     *
+     * @param id the id of the value
+     * @return the value as a string
+     */
+    public String value(int id) {
+        final var bytes = new byte[length(id)];
+        copy(id, bytes, 0);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of bytes allocated off-heap for the values.
+     *
+     * @return the number of off-heap bytes
+     */
+    public long offHeapBytes() {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            total += stripe.offHeapBytes();
+        }
+        return total;
+    }
+
+    /**
+     * A part of the dictionary holding the values whose hashes share the top bits.
+     * Local ids start from {@code 1}, so that no value gets the id of the empty value.
+     */
+    private static final class Stripe {
+        private final List<ByteBuffer> arenas = new ArrayList<>();
+        private final LongArrayList locations = new LongArrayList();
+        private final LongArrayList hashes = new LongArrayList();
+        private int[] table = new int[16];
+        private int size;
+
+        private Stripe() {
+            locations.add(0L);
+            hashes.add(0L);
+        }
+
+        private synchronized int intern(byte[] bytes, int length, long hash) {
+            final int mask = table.length - 1;
+            int slot = (int) hash & mask;
+            while (table[slot] != 0) {
+                final int localId = table[slot];
+                if (hashes.get(localId) == hash && equalsValue(localId, bytes, length)) {
+                    return localId;
+                }
+                slot = (slot + 1) & mask;
+            }
+            final int localId = append(bytes, length, hash);
+            table[slot] = localId;
+            if (++size > table.length >> 1) {
+                rehash();
+            }
+            return localId;
+        }
+
+        private int length(int localId) {
+            final long location = locations.get(localId);
+            return arenas.get((int) (location >>> 32)).getInt((int) location);
+        }
+
+        private void copy(int localId, byte[] target, int offset) {
+            final long location = locations.get(localId);
+            final var arena = arenas.get((int) (location >>> 32));
+            final int position = (int) location;
+            arena.get(position + Integer.BYTES, target, offset, arena.getInt(position));
+        }
+
+        private long offHeapBytes() {
+            return arenas.stream().mapToLong(ByteBuffer::capacity).sum();
+        }
+
+        private boolean equalsValue(int localId, byte[] bytes, int length) {
+            final long location = locations.get(localId);
+            final var arena = arenas.get((int) (location >>> 32));
+            final int position = (int) location;
+            if (arena.getInt(position) != length) {
+                return false;
+            }
+            return arena.slice(position + Integer.BYTES, length).equals(ByteBuffer.wrap(bytes, 0, length));
+        }
+
+        private int append(byte[] bytes, int length, long hash) {
+            final int required = Integer.BYTES + length;
+            ByteBuffer arena = arenas.isEmpty() ? null : arenas.get(arenas.size() - 1);
+            if (arena == null || arena.remaining() < required) {
+                arena = ByteBuffer.allocateDirect(Math.max(ARENA_SIZE, required));
+                arenas.add(arena);
+            }
+            final int position = arena.position();
+            arena.putInt(length).put(bytes, 0, length);
+            final int localId = locations.size();
+            if (localId > Integer.MAX_VALUE >>> STRIPE_BITS) {
+                throw new IllegalStateException("StringDictionary cannot hold more than " + (Integer.MAX_VALUE >>> STRIPE_BITS) + " values per stripe");
+            }
+            locations.add(((long) (arenas.size() - 1) << 32) | position);
+            hashes.add(hash);
+            return localId;
+        }
+
+        private void rehash() {
+            final int[] newTable = new int[table.length << 1];
+            final int mask = newTable.length - 1;
+            for (int localId : table) {
+                if (localId != 0) {
+                    int slot = (int) hashes.get(localId) & mask;
+                    while (newTable[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newTable[slot] = localId;
+                }
+            }
+            table = newTable;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package ru.starkov.service.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the wall time, heap allocation and garbage collection time of every phase of a run,
+ * together with counters describing the processed data, and renders them as JSON.
+ * <p>
+ * Allocation is reported both for the thread that ran the phase and for all threads of the JVM, so that
+ * the work done by parallel workers is accounted for as well. A phase may be measured several times,
+ * in which case its figures are summed. Counters may be updated from any thread.
+ */
+public class ExecutionMetrics {
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = threadMXBean();
+    private static final String METRICS_SUFFIX = ".metrics.json";
+
+    private final Map<String, Object> attributes = new LinkedHashMap<>();
+    private final Map<Phase, PhaseStats> phases = new EnumMap<>(Phase.class);
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+
+    /**
+     * Constructs a collector with all counters set to zero.
+     */
+    public ExecutionMetrics() {
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+    }
+
+    /**
+     * Measures a phase computing a value on the current thread. The phase is recorded even if the computation
+     * fails.
+     *
+     * @param phase  the phase to measure
+     * @param action the computation of the phase
+     * @param <V>    the type of the computed value
+     * @param <E>    the type of the exception the computation may throw
+     * @return the computed value
+     * @throws E if the computation fails
+     */
+    public <V, E extends Exception> V measure(Phase phase, PhaseComputation<V, E> action) throws E {
+        final var start = Snapshot.take();
+        try {
+            return action.compute();
+        } finally {
+            record(phase, start, Snapshot.take());
+        }
+    }
+
+    /**
+     * Measures a phase performing an action on the current thread. The phase is recorded even if the action
+     * fails.
+     *
+     * @param phase  the phase to measure
+     * @param action the action of the phase
+     * @param <E>    the type of the exception the action may throw
+     * @throws E if the action fails
+     */
+    public <E extends Exception> void measure(Phase phase, PhaseAction<E> action) throws E {
+        final var start = Snapshot.take();
+        try {
+            action.perform();
+        } finally {
+            record(phase, start, Snapshot.take());
+        }
+    }
+
+    /**
+     * Adds the value to a counter.
+     *
+     * @param counter the counter
+     * @param value   the value to add
+     */
+    public void add(Counter counter, long value) {
+        counters.get(counter).add(value);
+    }
+
+    /**
+     * Returns the current value of a counter.
+     *
+     * @param counter the counter
+     * @return the value of the counter
+     */
+    public long get(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    /**
+     * Records a descriptive attribute of the run, such as the detected data type. Numbers and booleans are
+     * rendered as JSON numbers and booleans, collections as arrays and any other value as a string.
+     *
+     * @param name  the name of the attribute
+     * @param value the value of the attribute
+     */
+    public synchronized void attribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    /**
+     * Returns the file the metrics of a run are written to, next to its output file: {@code Output.txt}
+     * is accompanied by {@code Output.metrics.json}.
+     *
+     * @param outputFile the output file of the run
+     * @return the metrics file
+     */
+    public static Path metricsFileFor(Path outputFile) {
+        final var name = outputFile.getFileName().toString();
+        final int extension = name.lastIndexOf('.');
+        return outputFile.resolveSibling((extension > 0 ? name.substring(0, extension) : name) + METRICS_SUFFIX);
+    }
+
+    /**
+     * Renders the attributes, the measured phases in their natural order and the counters as a JSON object.
+     * Counters of a phase the run did not go through, such as the snapshot counters of a run without
+     * a snapshot, are left out.
+     *
+     * @return the JSON document
+     */
+    public synchronized String toJson() {
+        final var json = new StringBuilder("{\n");
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            json.append("  \"").append(attribute.getKey()).append("\": ");
+            appendValue(json, attribute.getValue());
+            json.append(",\n");
+        }
+        json.append("  \"phases\": {");
+        String separator = "\n";
+        for (Map.Entry<Phase, PhaseStats> phase : phases.entrySet()) {
+            final var stats = phase.getValue();
+            json.append(separator)
+                    .append("    \"").append(phase.getKey().jsonName).append("\": {")
+                    .append("\"wallTimeNanos\": ").append(stats.wallTimeNanos)
+                    .append(", \"threadAllocatedBytes\": ").append(stats.threadAllocatedBytes)
+                    .append(", \"allocatedBytes\": ").append(stats.allocatedBytes)
+                    .append(", \"gcTimeMillis\": ").append(stats.gcTimeMillis)
+                    .append(", \"gcCount\": ").append(stats.gcCount)
+                    .append('}');
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"counters\": {");
+        separator = "\n";
+        for (Counter counter : Counter.values()) {
+            if (counter.phase != null && !phases.containsKey(counter.phase)) {
+                continue;
+            }
+            json.append(separator)
+                    .append("    \"").append(counter.jsonName).append("\": ").append(get(counter));
+            separator = ",\n";
+        }
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    private synchronized void record(Phase phase, Snapshot start, Snapshot end) {
+        final var stats = phases.computeIfAbsent(phase, ignored -> new PhaseStats());
+        stats.wallTimeNanos += end.nanoTime - start.nanoTime;
+        stats.threadAllocatedBytes += end.threadAllocatedBytes - start.threadAllocatedBytes;
+        stats.allocatedBytes += end.allocatedBytes - start.allocatedBytes;
+        stats.gcTimeMillis += end.gcTimeMillis - start.gcTimeMillis;
+        stats.gcCount += end.gcCount - start.gcCount;
+    }
+
+    private static void appendValue(StringBuilder json, Object value) {
+        if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else if (value instanceof Collection<?> values) {
+            json.append('[');
+            String separator = "";
+            for (Object element : values) {
+                json.append(separator);
+                appendValue(json, element);
+                separator = ", ";
+            }
+            json.append(']');
+        } else {
+            json.append('"').append(escape(String.valueOf(value))).append('"');
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+
+    /**
+     * The phases of a run. Reading covers validating and parsing the lines, as both happen in one pass
+     * over the file; in the streaming mode lines are parsed again during the later phases.
+     */
+    public enum Phase {
+        DETECT_TYPE("detectType"),
+        READ("read"),
+        DEDUPLICATE("deduplicate"),
+        LOAD_SNAPSHOT("loadSnapshot"),
+        UNION("union"),
+        SAVE_SNAPSHOT("saveSnapshot"),
+        GROUP("group"),
+        WRITE("write"),
+        WRITE_INDEX("writeIndex");
+
+        private final String jsonName;
+
+        Phase(String jsonName) {
+            this.jsonName = jsonName;
+        }
+    }
+
+    /**
+     * The counters describing the processed data. A counter belonging to a phase is reported only by runs
+     * which went through that phase.
+     */
+    public enum Counter {
+        LINES_READ("linesRead"),
+        LINES_REJECTED("linesRejected"),
+        DUPLICATE_ROWS("duplicateRows"),
+        DISTINCT_ROWS("distinctRows"),
+        DISTINCT_KEYS("distinctKeys"),
+        COMPONENTS("components"),
+        MULTI_ELEMENT_COMPONENTS("multiElementComponents"),
+        APPENDED_ROWS("appendedRows", Phase.LOAD_SNAPSHOT),
+        CHANGED_COMPONENTS("changedComponents", Phase.LOAD_SNAPSHOT),
+        SPILLED_RUNS("spilledRuns");
+
+        private final String jsonName;
+        private final Phase phase;
+
+        Counter(String jsonName) {
+            this(jsonName, null);
+        }
+
+        Counter(String jsonName, Phase phase) {
+            this.jsonName = jsonName;
+            this.phase = phase;
+        }
+    }
+
+    /**
+     * The computation of a measured phase.
+     *
+     * @param <V> the type of the computed value
+     * @param <E> the type of the exception the computation may throw
+     */
+    @FunctionalInterface
+    public interface PhaseComputation<V, E extends Exception> {
+        V compute() throws E;
+    }
+
+    /**
+     * The action of a measured phase computing no value.
+     *
+     * @param <E> the type of the exception the action may throw
+     */
+    @FunctionalInterface
+    public interface PhaseAction<E extends Exception> {
+        void perform() throws E;
+    }
+
+    private static final class PhaseStats {
+        private long wallTimeNanos;
+        private long threadAllocatedBytes;
+        private long allocatedBytes;
+        private long gcTimeMillis;
+        private long gcCount;
+    }
+
+    private record Snapshot(long nanoTime, long threadAllocatedBytes, long allocatedBytes, long gcTimeMillis, long gcCount) {
+
+        private static Snapshot take() {
+            long gcTime = 0;
+            long gcCount = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcTime += Math.max(0, collector.getCollectionTime());
+                gcCount += Math.max(0, collector.getCollectionCount());
+            }
+            final long threadAllocated = THREAD_MX_BEAN == null ? 0 : THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+            final long allocated = THREAD_MX_BEAN == null ? 0 : THREAD_MX_BEAN.getTotalThreadAllocatedBytes();
+            return new Snapshot(System.nanoTime(), threadAllocated, allocated, gcTime, gcCount);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ru.starkov.service.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Presents the bytes of a buffer as characters, one per byte as in ISO-8859-1, so that the {@link CellCodec}s
+ * scan the cells of a mapped file in place. Bytes outside of ASCII become characters above {@code 0x7F}, which
+ * no numeric codec accepts. Both the {@link RowParser}s and the type detection hand cells to the codecs through
+ * this class, so the codecs see a single kind of text while a mapped file is read. An instance is rewrapped
+ * for every buffer and must not be shared between threads.
+ */
+public final class ByteBufferChars implements CharSequence {
+
+    private ByteBuffer buffer;
+
+    /**
+     * Makes this sequence present the bytes of the given buffer.
+     *
+     * @param buffer the buffer
+     * @return this sequence
+     */
+    public ByteBufferChars wrap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        return this;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(index) & 0xFF);
+    }
+
+    @Override
+    public int length() {
+        return buffer.limit();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        final var bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
@@ -0,0 +1,118 @@
+package ru.starkov.service.parser;
+
+import ru.starkov.model.ColumnType;
+import ru.starkov.model.DataType;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Validates and parses a single cell of a line, quotes included, in one pass over its characters.
+ * <p>
+ * A cell is given as a range of the text of its line, so neither the cell nor its unquoted value is copied
+ * into an intermediate string; no regular expressions are involved. The corresponding {@link RowParser}s scan
+ * numeric cells with the same codecs over the bytes of a mapped file, so both readers accept exactly the same
+ * cells and produce the same values.
+ *
+ * @param <T> the type of the value of a cell
+ */
+@FunctionalInterface
+public interface CellCodec<T> {
+
+    /**
+     * Validates and parses the cell occupying the range {@code [start, end)} of the text.
+     *
+     * @param text  the text holding the cell
+     * @param start the index of the first character of the cell
+     * @param end   the index following the last character of the cell
+     * @return the value of the cell, or {@code null} if the cell is invalid
+     */
+    T decode(CharSequence text, int start, int end);
+
+    /**
+     * Validates and parses the cell occupying the range {@code [start, end)} of the text as a cell of the given
+     * column. Only codecs whose columns differ in type take the column into account.
+     *
+     * @param text     the text holding the cell
+     * @param start    the index of the first character of the cell
+     * @param end      the index following the last character of the cell
+     * @param colIndex the index of the column of the cell
+     * @return the value of the cell, or {@code null} if the cell is invalid
+     */
+    default T decode(CharSequence text, int start, int end, int colIndex) {
+        return decode(text, start, end);
+    }
+
+    /**
+     * Returns the codec of {@code long} cells: a run of decimal digits enclosed in double quotes, possibly
+     * empty, in which case the value is {@code 0}.
+     *
+     * @return the codec of {@code long} cells
+     */
+    static CellCodec<Long> longs() {
+        return LongCellCodec.INSTANCE;
+    }
+
+    /**
+     * Returns the codec of {@code double} cells: a quote followed by an integer part, or a decimal number
+     * enclosed in double quotes.
+     *
+     * @return the codec of {@code double} cells
+     */
+    static CellCodec<Double> doubles() {
+        return DoubleCellCodec.INSTANCE;
+    }
+
+    /**
+     * Returns the codec of string cells: any non-empty cell, whose value is the cell with all double
+     * quotes removed.
+     *
+     * @return the codec of string cells
+     */
+    static CellCodec<String> strings() {
+        return StringCellCodec.INSTANCE;
+    }
+
+    /**
+     * Returns the codec of a file mixing integer and decimal columns: every cell is decoded by the codec of the
+     * type of its column into a raw 64-bit key, the value itself for an integer column and the bits of the value
+     * for a decimal one, as {@link MixedRowParser} stores it.
+     *
+     * @param columnTypes the types of the columns of the file
+     * @return the codec of the cells of the file
+     */
+    static CellCodec<Long> mixed(List<ColumnType> columnTypes) {
+        return new MixedCellCodec(columnTypes);
+    }
+
+    /**
+     * Returns the codec of the given type of data.
+     *
+     * @param dataType the type of data
+     * @return the codec of cells of the type
+     */
+    static CellCodec<?> forType(DataType dataType) {
+        return switch (dataType) {
+            case LONG -> longs();
+            case DOUBLE -> doubles();
+            case STRING -> strings();
+        };
+    }
+
+    /**
+     * Adapts a validation predicate of a whole quoted cell and a parser of its value with all double quotes
+     * removed into a codec. The cell and its value are copied into strings.
+     *
+     * @param validator the predicate validating a quoted cell
+     * @param parser    the function parsing the value of a valid cell
+     * @param <T>       the type of the value of a cell
+     * @return the codec
+     */
+    static <T> CellCodec<T> of(Predicate<String> validator, Function<String, T> parser) {
+        return (text, start, end) -> {
+            final var cell = text.subSequence(start, end).toString();
+            return validator.test(cell) ? parser.apply(cell.replace("\"", "")) : null;
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package ru.starkov.service.parser;
+
+/**
+ * Validates and parses {@code double} cells. Numbers with up to 15 significant digits are computed directly
+ * from the characters, which yields the same correctly rounded result as {@link Double#parseDouble(String)};
+ * longer numbers fall back to it. The scanning is shared by the text reader, through {@link #decode}, and by
+ * {@link DoubleRowParser}, through {@link #parse} over the bytes of a mapped file.
+ */
+final class DoubleCellCodec implements CellCodec<Double> {
+
+    static final DoubleCellCodec INSTANCE = new DoubleCellCodec();
+
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private DoubleCellCodec() {
+    }
+
+    @Override
+    public Double decode(CharSequence text, int start, int end) {
+        final double value = parse(text, start, end);
+        return Double.isNaN(value) ? null : value;
+    }
+
+    /**
+     * Validates and parses the cell occupying the range {@code [start, end)} of the text without boxing its value.
+     *
+     * @param text  the text holding the cell
+     * @param start the index of the first character of the cell
+     * @param end   the index following the last character of the cell
+     * @return the value of the cell, or {@link Double#NaN} if the cell is invalid
+     */
+    double parse(CharSequence text, int start, int end) {
+        if (end - start < 2 || text.charAt(start) != '"') {
+            return Double.NaN;
+        }
+        int digitsEnd = start + 1;
+        while (digitsEnd < end && isDigit(text.charAt(digitsEnd))) {
+            digitsEnd++;
+        }
+        if (digitsEnd == start + 1) {
+            return Double.NaN;
+        }
+        int numberEnd = end;
+        if (digitsEnd < end) {
+            if (text.charAt(digitsEnd) != '.' || text.charAt(end - 1) != '"' || digitsEnd + 1 >= end - 1) {
+                return Double.NaN;
+            }
+            for (int i = digitsEnd + 1; i < end - 1; i++) {
+                if (!isDigit(text.charAt(i))) {
+                    return Double.NaN;
+                }
+            }
+            numberEnd = end - 1;
+        }
+        return parseNumber(text, start + 1, numberEnd);
+    }
+
+    private static double parseNumber(CharSequence text, int start, int end) {
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c == '.') {
+                fractionDigits = 0;
+                continue;
+            }
+            if (mantissa != 0 || c != '0') {
+                digits++;
+            }
+            if (digits > MAX_EXACT_DIGITS || fractionDigits >= MAX_EXACT_DIGITS) {
+                return Double.parseDouble(text.subSequence(start, end).toString());
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (fractionDigits <= 0) {
+            return mantissa;
+        }
+        return mantissa / POWERS_OF_TEN[fractionDigits];
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,46 @@
+package ru.starkov.service.parser;
+
+import ru.starkov.service.collection.FlatRowList;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Parses rows of {@code double} values.
+ * <p>
+ * A valid cell is either a quote followed by an integer part, or a decimal number enclosed in double
+ * quotes, which mirrors the {@code ^"\d+(\.\d+"$)?} pattern used by the text reader. Cells are validated
+ * and parsed by the same codec as {@link CellCodec#doubles()}.
+ */
+public class DoubleRowParser extends RowParser<double[]> {
+
+    private double[] values = new double[16];
+
+    @Override
+    protected boolean parseCell(ByteBuffer buffer, int start, int end, int colIndex) {
+        final double value = DoubleCellCodec.INSTANCE.parse(lineChars(), start, end);
+        if (Double.isNaN(value)) {
+            return false;
+        }
+        if (colIndex >= values.length) {
+            values = Arrays.copyOf(values, values.length << 1);
+        }
+        values[colIndex] = value;
+        return true;
+    }
+
+    @Override
+    protected long cellBits(int colIndex) {
+        return Double.doubleToLongBits(values[colIndex]);
+    }
+
+    @Override
+    protected double[] buildRow(int columns) {
+        return Arrays.copyOf(values, columns);
+    }
+
+    @Override
+    public FlatRowList.Builder<double[]> newFlatRows() {
+        return FlatRowList.doubleRows();
+    }
+}
@@ -0,0 +1,53 @@
+package ru.starkov.service.parser;
+
+/**
+ * Validates and parses {@code long} cells. Cells whose value does not fit into a {@code long} are invalid.
+ * The scanning is shared by the text reader, through {@link #decode}, and by {@link LongRowParser}, through
+ * {@link #parse} over the bytes of a mapped file.
+ */
+final class LongCellCodec implements CellCodec<Long> {
+
+    static final LongCellCodec INSTANCE = new LongCellCodec();
+
+    /**
+     * Returned by {@link #parse} for an invalid cell; valid values are never negative.
+     */
+    static final long INVALID = -1;
+
+    private static final long MAX_BEFORE_MULTIPLY = Long.MAX_VALUE / 10;
+
+    private LongCellCodec() {
+    }
+
+    @Override
+    public Long decode(CharSequence text, int start, int end) {
+        final long value = parse(text, start, end);
+        return value == INVALID ? null : value;
+    }
+
+    /**
+     * Validates and parses the cell occupying the range {@code [start, end)} of the text without boxing its value.
+     *
+     * @param text  the text holding the cell
+     * @param start the index of the first character of the cell
+     * @param end   the index following the last character of the cell
+     * @return the value of the cell, or {@link #INVALID} if the cell is invalid
+     */
+    long parse(CharSequence text, int start, int end) {
+        if (end - start < 2 || text.charAt(start) != '"' || text.charAt(end - 1) != '"') {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = start + 1; i < end - 1; i++) {
+            final char c = text.charAt(i);
+            if (c < '0' || c > '9' || value > MAX_BEFORE_MULTIPLY) {
+                return INVALID;
+            }
+            value = value * 10 + (c - '0');
+            if (value < 0) {
+                return INVALID;
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,46 @@
+package ru.starkov.service.parser;
+
+import ru.starkov.service.collection.FlatRowList;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Parses rows of {@code long} values.
+ * <p>
+ * A valid cell is a run of decimal digits enclosed in double quotes, possibly empty. An empty cell
+ * is parsed as {@code 0}. Cells whose value does not fit into a {@code long} make the line invalid.
+ * Cells are validated and parsed by the same codec as {@link CellCodec#longs()}.
+ */
+public class LongRowParser extends RowParser<long[]> {
+
+    private long[] values = new long[16];
+
+    @Override
+    protected boolean parseCell(ByteBuffer buffer, int start, int end, int colIndex) {
+        final long value = LongCellCodec.INSTANCE.parse(lineChars(), start, end);
+        if (value == LongCellCodec.INVALID) {
+            return false;
+        }
+        if (colIndex >= values.length) {
+            values = Arrays.copyOf(values, values.length << 1);
+        }
+        values[colIndex] = value;
+        return true;
+    }
+
+    @Override
+    protected long cellBits(int colIndex) {
+        return values[colIndex];
+    }
+
+    @Override
+    protected long[] buildRow(int columns) {
+        return Arrays.copyOf(values, columns);
+    }
+
+    @Override
+    public FlatRowList.Builder<long[]> newFlatRows() {
+        return FlatRowList.longRows();
+    }
+}
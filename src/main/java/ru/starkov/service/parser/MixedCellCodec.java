@@ -0,0 +1,36 @@
+package ru.starkov.service.parser;
+
+import ru.starkov.model.ColumnType;
+
+import java.util.List;
+
+/**
+ * Validates and parses the cells of a file mixing integer and decimal columns into the same raw 64-bit keys as
+ * {@link MixedRowParser}: the value itself in an integer column and the bits of the value in a decimal column.
+ * A cell whose column is not known is decoded as a decimal cell, the type of such a file.
+ */
+final class MixedCellCodec implements CellCodec<Long> {
+
+    private static final int UNKNOWN_COLUMN = Integer.MAX_VALUE;
+
+    private final List<ColumnType> columnTypes;
+
+    MixedCellCodec(List<ColumnType> columnTypes) {
+        this.columnTypes = List.copyOf(columnTypes);
+    }
+
+    @Override
+    public Long decode(CharSequence text, int start, int end) {
+        return decode(text, start, end, UNKNOWN_COLUMN);
+    }
+
+    @Override
+    public Long decode(CharSequence text, int start, int end, int colIndex) {
+        if (ColumnType.isIntegerColumn(columnTypes, colIndex)) {
+            final long value = LongCellCodec.INSTANCE.parse(text, start, end);
+            return value == LongCellCodec.INVALID ? null : value;
+        }
+        final double value = DoubleCellCodec.INSTANCE.parse(text, start, end);
+        return Double.isNaN(value) ? null : Double.doubleToLongBits(value);
+    }
+}
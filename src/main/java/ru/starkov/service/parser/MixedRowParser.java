@@ -0,0 +1,72 @@
+package ru.starkov.service.parser;
+
+import ru.starkov.model.ColumnType;
+import ru.starkov.model.TypeProfile;
+import ru.starkov.service.collection.FlatRowList;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses rows of a {@link TypeProfile#isMixed() mixed} file, whose columns hold either integers or decimals.
+ * <p>
+ * Every cell is validated and parsed by the codec of the type of its column, as decided by
+ * {@link ColumnType#isIntegerColumn}, and stored as its raw 64-bit key: the value itself in an integer column and
+ * the bits of the value in a decimal column, as {@link DoubleRowParser} does. An empty cell is {@code 0} in
+ * either column.
+ */
+public class MixedRowParser extends RowParser<long[]> {
+
+    private final boolean[] integerColumns;
+    private long[] values = new long[16];
+
+    /**
+     * Constructs a parser of a file with the given column types.
+     *
+     * @param columnTypes the types of the columns of the file
+     */
+    public MixedRowParser(List<ColumnType> columnTypes) {
+        this.integerColumns = new boolean[columnTypes.size()];
+        for (int colIndex = 0; colIndex < integerColumns.length; colIndex++) {
+            integerColumns[colIndex] = ColumnType.isIntegerColumn(columnTypes, colIndex);
+        }
+    }
+
+    @Override
+    protected boolean parseCell(ByteBuffer buffer, int start, int end, int colIndex) {
+        final long key;
+        if (colIndex < integerColumns.length && integerColumns[colIndex]) {
+            key = LongCellCodec.INSTANCE.parse(lineChars(), start, end);
+            if (key == LongCellCodec.INVALID) {
+                return false;
+            }
+        } else {
+            final double value = DoubleCellCodec.INSTANCE.parse(lineChars(), start, end);
+            if (Double.isNaN(value)) {
+                return false;
+            }
+            key = Double.doubleToLongBits(value);
+        }
+        if (colIndex >= values.length) {
+            values = Arrays.copyOf(values, values.length << 1);
+        }
+        values[colIndex] = key;
+        return true;
+    }
+
+    @Override
+    protected long cellBits(int colIndex) {
+        return values[colIndex];
+    }
+
+    @Override
+    protected long[] buildRow(int columns) {
+        return Arrays.copyOf(values, columns);
+    }
+
+    @Override
+    public FlatRowList.Builder<long[]> newFlatRows() {
+        return FlatRowList.longRows();
+    }
+}
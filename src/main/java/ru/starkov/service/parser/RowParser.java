@@ -0,0 +1,190 @@
+package ru.starkov.service.parser;
+
+import ru.starkov.service.collection.ColumnSketches;
+import ru.starkov.service.collection.FlatRowList;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses a single line of semicolon-separated cells straight from the bytes of a buffer,
+ * without creating intermediate strings.
+ * <p>
+ * Lines are split the same way as by {@code String.split(";")}: trailing empty cells are dropped,
+ * while an empty line yields a single empty cell. Subclasses validate and parse the individual cells,
+ * the numeric ones with the {@link CellCodec}s used by the text reader.
+ * A 64-bit hash of the parsed values is computed for every valid row, so that duplicate rows can be
+ * detected without keeping the rows themselves, and the cells of a valid row can be added to the
+ * {@link ColumnSketches} of the file while it is parsed.
+ * Instances keep per-row scratch state and must not be shared between threads.
+ *
+ * @param <R> the type of a parsed row
+ */
+public abstract class RowParser<R> {
+
+    protected static final byte SEPARATOR = ';';
+    protected static final byte QUOTE = '"';
+
+    private static final long HASH_SEED = 0x9E3779B97F4A7C15L;
+    private static final long HASH_MULTIPLIER = 0xC2B2AE3D27D4EB4FL;
+
+    private final ByteBufferChars lineChars = new ByteBufferChars();
+    private long lastRowHash;
+    private int lastRowLength;
+
+    /**
+     * Parses the line occupying the range {@code [start, end)} of the buffer.
+     *
+     * @param buffer the buffer holding the line
+     * @param start  the index of the first byte of the line
+     * @param end    the index following the last byte of the line, excluding the line terminator
+     * @return the parsed row, or {@code null} if any cell of the line is invalid
+     */
+    public R parseLine(ByteBuffer buffer, int start, int end) {
+        final int columns = parseCells(buffer, start, end);
+        return columns < 0 ? null : buildRow(columns);
+    }
+
+    /**
+     * Parses the line occupying the range {@code [start, end)} of the buffer and appends its row to the builder,
+     * so that no row object is created.
+     *
+     * @param buffer the buffer holding the line
+     * @param start  the index of the first byte of the line
+     * @param end    the index following the last byte of the line, excluding the line terminator
+     * @param rows   the builder receiving the cells of a valid row
+     * @return {@code true} if the row was appended, {@code false} if any cell of the line is invalid
+     */
+    public boolean parseLine(ByteBuffer buffer, int start, int end, FlatRowList.Builder<R> rows) {
+        final int columns = parseCells(buffer, start, end);
+        if (columns < 0) {
+            return false;
+        }
+        for (int colIndex = 0; colIndex < columns; colIndex++) {
+            rows.addCell(cellBits(colIndex));
+        }
+        rows.endRow();
+        return true;
+    }
+
+    /**
+     * Creates an empty builder of flat rows of the type this parser produces.
+     *
+     * @return the builder
+     */
+    public abstract FlatRowList.Builder<R> newFlatRows();
+
+    /**
+     * Returns the hash of the values of the row most recently parsed by {@link #parseLine}.
+     * Equal rows always have equal hashes.
+     *
+     * @return the 64-bit hash of the last parsed row
+     */
+    public long lastRowHash() {
+        return lastRowHash;
+    }
+
+    /**
+     * Returns the number of cells of the row most recently parsed by {@link #parseLine}.
+     *
+     * @return the number of cells of the last parsed row
+     */
+    public int lastRowLength() {
+        return lastRowLength;
+    }
+
+    /**
+     * Adds the non-empty cells of the row most recently parsed by {@link #parseLine} to the sketches of their
+     * columns, so that the rows need not be read again to estimate the number of distinct values of a column.
+     *
+     * @param sketches the sketches of the columns
+     */
+    public void sketchLastRow(ColumnSketches sketches) {
+        sketches.ensureColumns(lastRowLength);
+        for (int colIndex = 0; colIndex < lastRowLength; colIndex++) {
+            final long bits = cellBits(colIndex);
+            if (bits != 0L) {
+                sketches.add(colIndex, bits);
+            }
+        }
+    }
+
+    /**
+     * Validates and parses the cell occupying the range {@code [start, end)} of the buffer,
+     * quotes included, and stores its value as the given column of the current row.
+     *
+     * @param buffer   the buffer holding the cell
+     * @param start    the index of the first byte of the cell
+     * @param end      the index following the last byte of the cell
+     * @param colIndex the index of the column
+     * @return {@code true} if the cell is valid, {@code false} otherwise
+     */
+    protected abstract boolean parseCell(ByteBuffer buffer, int start, int end, int colIndex);
+
+    /**
+     * Returns the 64-bit representation of the given column of the current row, such that two values
+     * are equal exactly when their representations are.
+     *
+     * @param colIndex the index of the column
+     * @return the bits of the value
+     */
+    protected abstract long cellBits(int colIndex);
+
+    /**
+     * Returns the bytes of the buffer whose line is being parsed as characters, one per byte, so that
+     * {@link #parseCell} can hand a cell to a {@link CellCodec} with the same indexes.
+     *
+     * @return the characters of the buffer
+     */
+    protected final CharSequence lineChars() {
+        return lineChars;
+    }
+
+    /**
+     * Builds a row from the first {@code columns} values stored by {@link #parseCell}.
+     *
+     * @param columns the number of columns in the row
+     * @return the row
+     */
+    protected abstract R buildRow(int columns);
+
+    /**
+     * Parses and hashes the cells of a line.
+     *
+     * @return the number of columns, or {@code -1} if any cell is invalid
+     */
+    private int parseCells(ByteBuffer buffer, int start, int end) {
+        lineChars.wrap(buffer);
+        if (start == end) {
+            return parseCell(buffer, start, end, 0) ? completeRow(1) : -1;
+        }
+        int effectiveEnd = end;
+        while (effectiveEnd > start && buffer.get(effectiveEnd - 1) == SEPARATOR) {
+            effectiveEnd--;
+        }
+        int columns = 0;
+        int cellStart = start;
+        for (int i = start; i < effectiveEnd; i++) {
+            if (buffer.get(i) == SEPARATOR) {
+                if (!parseCell(buffer, cellStart, i, columns++)) {
+                    return -1;
+                }
+                cellStart = i + 1;
+            }
+        }
+        if (effectiveEnd > start && !parseCell(buffer, cellStart, effectiveEnd, columns++)) {
+            return -1;
+        }
+        return completeRow(columns);
+    }
+
+    private int completeRow(int columns) {
+        long hash = HASH_SEED ^ columns;
+        for (int i = 0; i < columns; i++) {
+            hash = (hash ^ cellBits(i)) * HASH_MULTIPLIER;
+            hash ^= hash >>> 29;
+        }
+        lastRowHash = hash;
+        lastRowLength = columns;
+        return columns;
+    }
+}
@@ -0,0 +1,40 @@
+package ru.starkov.service.parser;
+
+/**
+ * Validates and parses string cells. A cell without inner double quotes is copied from the text in one step,
+ * other cells character by character.
+ */
+final class StringCellCodec implements CellCodec<String> {
+
+    static final StringCellCodec INSTANCE = new StringCellCodec();
+
+    private StringCellCodec() {
+    }
+
+    @Override
+    public String decode(CharSequence text, int start, int end) {
+        if (end == start) {
+            return null;
+        }
+        int quotes = 0;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        if (quotes == 0) {
+            return text.subSequence(start, end).toString();
+        }
+        if (quotes == 2 && text.charAt(start) == '"' && text.charAt(end - 1) == '"') {
+            return text.subSequence(start + 1, end - 1).toString();
+        }
+        final var value = new StringBuilder(end - start - quotes);
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c != '"') {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+}
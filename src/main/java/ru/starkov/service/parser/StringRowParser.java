@@ -0,0 +1,78 @@
+package ru.starkov.service.parser;
+
+import ru.starkov.service.collection.FlatRowList;
+import ru.starkov.service.collection.StringDictionary;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Parses rows of string values into ids of a shared {@link StringDictionary}.
+ * <p>
+ * Any non-empty cell is valid. The value of a cell is its bytes with all double quotes removed, the same
+ * as produced by the text reader; a cell without any other bytes gets the id of the empty value.
+ */
+public class StringRowParser extends RowParser<int[]> {
+
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final StringDictionary dictionary;
+    private byte[] bytes = new byte[64];
+    private int[] ids = new int[16];
+
+    /**
+     * Constructs a parser interning values into the given dictionary.
+     *
+     * @param dictionary the dictionary shared by all parsers of the input
+     */
+    public StringRowParser(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    protected boolean parseCell(ByteBuffer buffer, int start, int end, int colIndex) {
+        if (end == start) {
+            return false;
+        }
+        if (end - start > bytes.length) {
+            bytes = new byte[Math.max(end - start, bytes.length << 1)];
+        }
+        int length = 0;
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            final byte b = buffer.get(i);
+            if (b != QUOTE) {
+                bytes[length++] = b;
+                hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+            }
+        }
+        if (colIndex >= ids.length) {
+            ids = Arrays.copyOf(ids, ids.length << 1);
+        }
+        ids[colIndex] = dictionary.intern(bytes, length, mix(hash));
+        return true;
+    }
+
+    @Override
+    protected long cellBits(int colIndex) {
+        return ids[colIndex];
+    }
+
+    @Override
+    protected int[] buildRow(int columns) {
+        return Arrays.copyOf(ids, columns);
+    }
+
+    @Override
+    public FlatRowList.Builder<int[]> newFlatRows() {
+        return FlatRowList.intRows();
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,147 @@
+package ru.starkov.infrastructure.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.starkov.model.ColumnType;
+import ru.starkov.model.DataType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that groups are encoded into exactly the text the original {@link String#format}-based writer produced,
+ * boundary values and the half-up rounding of {@code %.1f} included.
+ */
+class GroupEncoderTest {
+
+    private static final int BUFFER_SIZE = 1;
+    private static final String NL = System.lineSeparator();
+
+    private Locale originalLocale;
+
+    @BeforeEach
+    void useRootLocale() {
+        originalLocale = Locale.getDefault(Locale.Category.FORMAT);
+        Locale.setDefault(Locale.Category.FORMAT, Locale.ROOT);
+    }
+
+    @AfterEach
+    void restoreLocale() {
+        Locale.setDefault(Locale.Category.FORMAT, originalLocale);
+    }
+
+    @Test
+    void longCellsAtTheLimitsOfLong() throws IOException {
+        final List<long[]> rows = List.of(
+                new long[]{0, 1, 9, 10, Long.MAX_VALUE},
+                new long[]{1_000_000_000_000_000_000L, 0}
+        );
+
+        assertEquals("Group 12:" + NL
+                        + "\"           \";\"1\";\"9\";\"10\";\"9223372036854775807\"" + NL
+                        + "\"1000000000000000000\";\"           \"" + NL + NL,
+                encode(DataType.LONG, 12, rows));
+    }
+
+    @Test
+    void doubleCellsAreRoundedHalfUpFromTheirShortestRepresentation() throws IOException {
+        final List<double[]> rows = List.of(
+                new double[]{0.05, 0.15, 0.25, 0.35, 1.45, 2.5, 0.95, 9.95, 99.95},
+                new double[]{0, 0.04, 0.0001, 123.0, 1e14 + 0.05, 999999999999999.9}
+        );
+
+        assertEquals("Group 1:" + NL
+                        + "\"0.1\";\"0.2\";\"0.3\";\"0.4\";\"1.5\";\"2.5\";\"1.0\";\"10.0\";\"100.0\"" + NL
+                        + "\"\";\"0.0\";\"0.0\";\"123.0\";\"100000000000000.1\";\"999999999999999.9\"" + NL + NL,
+                encode(DataType.DOUBLE, 1, rows));
+        assertEquals(formatted(rows), encode(DataType.DOUBLE, 1, rows));
+    }
+
+    @Test
+    void doubleCellsMatchFormatAcrossMagnitudes() throws IOException {
+        final var random = new Random(13);
+        final var rows = new ArrayList<double[]>();
+        for (int i = 0; i < 20_000; i++) {
+            final var row = new double[4];
+            row[0] = random.nextInt(1_000_000) / 100.0 + 0.05;
+            row[1] = random.nextDouble() * Math.pow(10, random.nextInt(40) - 20);
+            row[2] = Math.rint(random.nextDouble() * 1e6) / 1e6 * Math.pow(10, random.nextInt(12));
+            row[3] = Double.longBitsToDouble(random.nextLong() & Long.MAX_VALUE);
+            rows.add(row);
+        }
+        rows.add(new double[]{Double.MIN_VALUE, Double.MAX_VALUE, 1e15, 1e16});
+        rows.add(new double[]{Double.POSITIVE_INFINITY, Double.NaN, -1.25, 0.1 + 0.2});
+
+        assertEquals(formatted(rows), encode(DataType.DOUBLE, 1, rows));
+    }
+
+    @Test
+    void decimalSeparatorAndDigitsFollowTheLocale() throws IOException {
+        final List<double[]> rows = List.of(new double[]{1.25, 1234.56, 0.05});
+        for (final var locale : List.of(Locale.forLanguageTag("ru-RU"), Locale.forLanguageTag("th-TH-u-nu-thai"))) {
+            Locale.setDefault(Locale.Category.FORMAT, locale);
+
+            assertEquals(formatted(rows), encode(DataType.DOUBLE, 1, rows), locale.toLanguageTag());
+        }
+    }
+
+    @Test
+    void emptyCellsOfMixedRowsAreWrittenAsInDataOfTheirColumnType() throws IOException {
+        final var columnTypes = List.of(ColumnType.LONG, ColumnType.DOUBLE, ColumnType.INT);
+        final List<long[]> rows = List.of(
+                new long[]{0, 0, 0},
+                new long[]{12, Double.doubleToLongBits(2.25), 7}
+        );
+        final String integerEmpty = encode(DataType.LONG, 1, List.of(new long[]{0}));
+        final String decimalEmpty = encode(DataType.DOUBLE, 1, List.of(new double[]{0}));
+
+        assertEquals("Group 1:" + NL
+                        + "\"           \";\"\";\"           \"" + NL
+                        + "\"12\";\"2.3\";\"7\"" + NL + NL,
+                encode(DataType.DOUBLE, columnTypes, 1, rows));
+        assertEquals("Group 1:" + NL + "\"           \"" + NL + NL, integerEmpty);
+        assertEquals("Group 1:" + NL + "\"\"" + NL + NL, decimalEmpty);
+    }
+
+    @Test
+    void stringCellsAreEncodedAsUtf8() throws IOException {
+        final List<List<String>> rows = List.of(List.of("abc", "строка", ""), List.of("\"q\""));
+
+        assertEquals("Group 3:" + NL + "abc;строка;" + NL + "\"q\"" + NL + NL, encode(DataType.STRING, 3, rows));
+    }
+
+    private static String encode(DataType dataType, int number, List<?> rows) throws IOException {
+        return encode(dataType, List.of(), number, rows);
+    }
+
+    private static String encode(DataType dataType, List<ColumnType> columnTypes, int number, List<?> rows) throws IOException {
+        final var output = new ByteArrayOutputStream();
+        final var encoder = new GroupEncoder(dataType, null, columnTypes, BUFFER_SIZE, (bytes, length) -> output.write(bytes, 0, length));
+        encoder.writeGroup(number, rows);
+        encoder.flush();
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Formats rows of decimals as the original writer did.
+     */
+    private static String formatted(List<double[]> rows) {
+        final var text = new StringBuilder(String.format("Group %d:%n", 1));
+        for (final double[] row : rows) {
+            final var cells = new ArrayList<String>(row.length);
+            for (final double value : row) {
+                cells.add(value == 0 ? "\"\"" : String.format("\"%.1f\"", value));
+            }
+            text.append(String.join(";", cells)).append(NL);
+        }
+        return text.append(NL).toString();
+    }
+}
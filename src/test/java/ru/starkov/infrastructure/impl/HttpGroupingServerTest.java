@@ -0,0 +1,149 @@
+package ru.starkov.infrastructure.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.starkov.infrastructure.GroupingServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the server runs a job once per input content and options: a repeated job is served from the cache,
+ * and identical jobs submitted while the first one runs wait for its result instead of running again.
+ */
+class HttpGroupingServerTest {
+
+    private static final String NL = System.lineSeparator();
+    private static final String GROUPS = "Group 1:" + NL + "\"1\";\"2\"" + NL + NL;
+    private static final int CONCURRENT_JOBS = 4;
+    private static final long ARRIVAL_MILLIS = 500;
+
+    @TempDir
+    Path directory;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void repeatedJobIsServedFromCache() throws Exception {
+        final var input = Files.writeString(directory.resolve("input.txt"), "\"1\";\"2\"" + NL);
+        final var copy = Files.copy(input, directory.resolve("copy.txt"));
+        final var runs = new AtomicInteger();
+
+        try (final var server = startServer((options, outputFile) -> {
+            runs.incrementAndGet();
+            writeResult(outputFile);
+        })) {
+            final var miss = submit(server, input.toString());
+            final var hit = submit(server, input.toString());
+            final var hitUnderAnotherPath = submit(server, copy.toString());
+            final var otherOptions = submit(server, input + NL + "--top=1");
+
+            assertEquals(200, miss.statusCode());
+            assertEquals("MISS", cacheHeader(miss));
+            assertEquals("LONG", miss.headers().firstValue("X-Data-Type").orElseThrow());
+            assertEquals("HIT", cacheHeader(hit));
+            assertEquals("HIT", cacheHeader(hitUnderAnotherPath));
+            assertEquals("MISS", cacheHeader(otherOptions));
+            assertEquals(2, runs.get());
+            assertTrue(miss.body().contains("Execution time (excluding file writing): 42 seconds"), miss.body());
+            assertEquals(
+                    "Number of groups with more than 1 element: 1" + NL
+                            + LocalPathFileWriter.executionTimeLine(Duration.ZERO) + NL + GROUPS,
+                    hit.body(),
+                    "A cached result reports the time taken to serve it"
+            );
+        }
+    }
+
+    @Test
+    void concurrentIdenticalJobsRunOnce() throws Exception {
+        final var input = Files.writeString(directory.resolve("input.txt"), "\"1\";\"2\"" + NL);
+        final var runs = new AtomicInteger();
+        final var started = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+
+        try (final var server = startServer((options, outputFile) -> {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            writeResult(outputFile);
+        })) {
+            final var responses = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+            for (int i = 0; i < CONCURRENT_JOBS; i++) {
+                responses.add(client.sendAsync(request(server, input.toString()), HttpResponse.BodyHandlers.ofString()));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS), "The job must start");
+            Thread.sleep(ARRIVAL_MILLIS);
+            release.countDown();
+
+            for (final var response : responses) {
+                final var result = response.get(10, TimeUnit.SECONDS);
+                assertEquals(200, result.statusCode());
+                assertEquals("MISS", cacheHeader(result), "Every job arrived while the first one was running");
+                assertTrue(result.body().endsWith(GROUPS), result.body());
+            }
+            assertEquals(1, runs.get());
+        }
+    }
+
+    @Test
+    void invalidJobIsRefused() throws Exception {
+        final var input = Files.writeString(directory.resolve("input.txt"), "\"1\"" + NL);
+
+        try (final var server = startServer((options, outputFile) -> writeResult(outputFile))) {
+            assertEquals(400, submit(server, input + NL + "--snapshot=" + directory.resolve("s")).statusCode());
+            assertEquals(400, submit(server, "--threads=1").statusCode());
+            assertEquals(405, client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + "/group")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString()
+            ).statusCode());
+        }
+    }
+
+    private static GroupingServer startServer(GroupingServer.Job job) throws IOException {
+        final var server = new HttpGroupingServer(0, 2, 4, job);
+        server.start();
+        return server;
+    }
+
+    /**
+     * Writes a result in the layout of the output file, reporting an execution time no cached response reports.
+     */
+    private static void writeResult(Path outputFile) throws IOException {
+        Files.writeString(outputFile, "Number of groups with more than 1 element: 1" + NL
+                + "Execution time (excluding file writing): 42 seconds" + NL + NL + GROUPS);
+    }
+
+    private HttpResponse<String> submit(GroupingServer server, String body) throws IOException, InterruptedException {
+        return client.send(request(server, body), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpRequest request(GroupingServer server, String body) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + "/group"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static String cacheHeader(HttpResponse<String> response) {
+        return response.headers().firstValue("X-Cache").orElseThrow();
+    }
+}
@@ -0,0 +1,110 @@
+package ru.starkov.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.starkov.model.DataType;
+import ru.starkov.service.parser.DoubleRowParser;
+import ru.starkov.service.parser.LongRowParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that converting a text file into the binary columnar format and reading it back yields the distinct
+ * valid rows of the text file, in the same order, with the counters of the text file.
+ */
+class ColumnarFileTest {
+
+    private static final int LINES = 150_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void longRowsSurviveRoundTrip() throws IOException {
+        final var text = directory.resolve("input.txt");
+        Files.write(text, randomLines(new Random(21), false));
+        final var binary = directory.resolve("input" + ColumnarFile.EXTENSION);
+
+        final int written = ColumnarFile.convert(text.toFile(), binary, DataType.LONG, 2);
+        final var expected = new MappedDataExtractor<>(LongRowParser::new).getValidData(text.toFile());
+        final var columnar = ColumnarFile.read(binary.toFile(), long[].class, 3);
+
+        assertTrue(ColumnarFile.isColumnar(binary.toFile()));
+        assertFalse(ColumnarFile.isColumnar(text.toFile()));
+        assertEquals(DataType.LONG, ColumnarFile.readDataType(binary.toFile()));
+        assertEquals(expected.size(), written);
+        assertEquals(LINES, columnar.sourceLines());
+        assertTrue(columnar.validRows() > written, "The input must hold duplicate rows");
+        assertTrue(columnar.sourceLines() > columnar.validRows(), "The input must hold invalid lines");
+        assertEquals(expected.stream().map(Arrays::toString).toList(), columnar.rows().stream().map(Arrays::toString).toList());
+    }
+
+    @Test
+    void doubleRowsSurviveRoundTrip() throws IOException {
+        final var text = directory.resolve("input.txt");
+        Files.write(text, randomLines(new Random(22), true));
+        final var binary = directory.resolve("input" + ColumnarFile.EXTENSION);
+
+        ColumnarFile.convert(text.toFile(), binary, DataType.DOUBLE, 1);
+        final var expected = new MappedDataExtractor<>(DoubleRowParser::new).getValidData(text.toFile());
+        final var columnar = ColumnarFile.read(binary.toFile(), double[].class, 2);
+
+        assertEquals(DataType.DOUBLE, ColumnarFile.readDataType(binary.toFile()));
+        assertEquals(expected.stream().map(Arrays::toString).toList(), columnar.rows().stream().map(Arrays::toString).toList());
+    }
+
+    @Test
+    void rowsOfAnotherTypeAndStringDataAreRejected() throws IOException {
+        final var text = directory.resolve("input.txt");
+        Files.write(text, List.of("\"1\";\"2\"", "\"3\""));
+        final var binary = directory.resolve("input" + ColumnarFile.EXTENSION);
+        ColumnarFile.convert(text.toFile(), binary, DataType.LONG, 1);
+
+        assertThrows(IOException.class, () -> ColumnarFile.read(binary.toFile(), double[].class, 1));
+        assertThrows(IOException.class, () -> ColumnarFile.readDataType(text.toFile()));
+        assertThrows(IllegalArgumentException.class, () -> ColumnarFile.convert(text.toFile(), binary, DataType.STRING, 1));
+    }
+
+    /**
+     * Generates lines of different lengths with empty and trailing empty cells, repeated lines and about one
+     * invalid line in a hundred.
+     */
+    private static List<String> randomLines(Random random, boolean decimals) {
+        final var lines = new ArrayList<String>(LINES);
+        for (int i = 0; i < LINES; i++) {
+            if (i > 0 && random.nextInt(20) == 0) {
+                lines.add(lines.get(random.nextInt(i)));
+                continue;
+            }
+            final var line = new StringBuilder();
+            final int columns = 1 + random.nextInt(6);
+            for (int colIndex = 0; colIndex < columns; colIndex++) {
+                if (colIndex > 0) {
+                    line.append(';');
+                }
+                if (random.nextInt(4) == 0) {
+                    line.append("\"\"");
+                } else if (random.nextInt(100) == 0) {
+                    line.append("\"1\"2\"");
+                } else if (decimals) {
+                    line.append('"').append(random.nextInt(100_000)).append('.').append(1 + random.nextInt(9)).append('"');
+                } else {
+                    line.append('"').append(random.nextLong(Long.MAX_VALUE)).append('"');
+                }
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+}
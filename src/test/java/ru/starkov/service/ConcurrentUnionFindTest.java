@@ -0,0 +1,95 @@
+package ru.starkov.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that linking rows concurrently produces exactly the same groups as linking them sequentially.
+ */
+class ConcurrentUnionFindTest {
+
+    private static final int ROWS = 60_000;
+    private static final int MAX_COLUMNS = 5;
+    private static final int DISTINCT_VALUES = 20_000;
+    private static final int THREADS = 4;
+    private static final long[] SEEDS = {1, 42, 2024};
+
+    @Test
+    void longRowsFormTheSameGroupsOnAnyNumberOfThreads() {
+        for (long seed : SEEDS) {
+            final List<long[]> rows = randomLongRows(new Random(seed));
+            final var sequential = new LongUnionFind(rows, 1);
+            final var concurrent = new LongUnionFind(rows, THREADS);
+
+            assertSameComponents(rows, sequential, concurrent);
+        }
+    }
+
+    @Test
+    void doubleRowsFormTheSameGroupsOnAnyNumberOfThreads() {
+        for (long seed : SEEDS) {
+            final List<double[]> rows = randomLongRows(new Random(seed)).stream()
+                    .map(ConcurrentUnionFindTest::toDecimalRow)
+                    .toList();
+            final var sequential = new DoubleUnionFind(rows, 1);
+            final var concurrent = new DoubleUnionFind(rows, THREADS);
+
+            assertSameComponents(rows, sequential, concurrent);
+        }
+    }
+
+    private static <R> void assertSameComponents(List<R> rows, AbstractUnionFind<R> expected, AbstractUnionFind<R> actual) {
+        assertTrue(expected.getMultiElementComponentCount() > 0, "The rows must share values");
+        assertTrue(expected.getComponentCount() < rows.size() / 2, "The rows must form large groups");
+        assertEquals(expected.getComponentCount(), actual.getComponentCount());
+        assertEquals(expected.getMultiElementComponentCount(), actual.getMultiElementComponentCount());
+        assertEquals(expected.getDistinctKeyCount(), actual.getDistinctKeyCount());
+        assertEquals(rowIndexes(rows, expected.groupValues()), rowIndexes(rows, actual.groupValues()));
+    }
+
+    /**
+     * Replaces every row of the groups with its index in the data, so that groups of different engines can be
+     * compared.
+     */
+    private static <R> List<List<Integer>> rowIndexes(List<R> rows, List<List<R>> groups) {
+        final var indexes = new IdentityHashMap<R, Integer>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            indexes.put(rows.get(i), i);
+        }
+        final var result = new ArrayList<List<Integer>>(groups.size());
+        for (List<R> group : groups) {
+            result.add(group.stream().map(indexes::get).toList());
+        }
+        return result;
+    }
+
+    /**
+     * Generates rows of different lengths whose values repeat across rows, with about one cell in five empty.
+     */
+    private static List<long[]> randomLongRows(Random random) {
+        final var rows = new ArrayList<long[]>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            final var row = new long[1 + random.nextInt(MAX_COLUMNS)];
+            for (int colIndex = 0; colIndex < row.length; colIndex++) {
+                row[colIndex] = random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(DISTINCT_VALUES);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static double[] toDecimalRow(long[] row) {
+        final var decimals = new double[row.length];
+        for (int colIndex = 0; colIndex < row.length; colIndex++) {
+            decimals[colIndex] = row[colIndex] / 10.0;
+        }
+        return decimals;
+    }
+}
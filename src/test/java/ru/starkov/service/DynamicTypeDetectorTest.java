@@ -0,0 +1,101 @@
+package ru.starkov.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.starkov.model.ColumnType;
+import ru.starkov.model.DataType;
+import ru.starkov.model.TypeProfile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a few stray cells do not decide the type of a column or of the whole file.
+ */
+class DynamicTypeDetectorTest {
+
+    private static final int LINES = 1_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void strayDecimalInIntegerColumnIsMalformed() throws IOException {
+        final TypeProfile profile = detect(longLines(), "\"10000000001.5\";\"7\"");
+
+        assertEquals(DataType.LONG, profile.dataType());
+        assertEquals(List.of(ColumnType.LONG, ColumnType.INT), profile.columnTypes());
+    }
+
+    @Test
+    void strayIntegerInDecimalColumnIsMalformed() throws IOException {
+        final var lines = new ArrayList<String>();
+        for (int i = 0; i < LINES; i++) {
+            lines.add("\"" + i + ".5\";\"" + (i % 10) + ".25\"");
+        }
+        final TypeProfile profile = detect(lines, "\"42\";\"1.5\"");
+
+        assertEquals(DataType.DOUBLE, profile.dataType());
+        assertEquals(List.of(ColumnType.DOUBLE, ColumnType.DOUBLE), profile.columnTypes());
+        assertFalse(profile.isMixed());
+    }
+
+    @Test
+    void strayNonNumericCellIsMalformed() throws IOException {
+        final TypeProfile profile = detect(longLines(), "\"100\"200\";\"7\"");
+
+        assertEquals(DataType.LONG, profile.dataType());
+        assertEquals(List.of(ColumnType.LONG, ColumnType.INT), profile.columnTypes());
+    }
+
+    @Test
+    void columnOfManyNonNumericCellsHoldsStrings() throws IOException {
+        final var lines = longLines();
+        for (int i = 0; i < LINES / 10; i++) {
+            lines.add("\"name" + i + "\";\"7\"");
+        }
+        final TypeProfile profile = detect(lines);
+
+        assertEquals(DataType.STRING, profile.dataType());
+        assertEquals(ColumnType.STRING, profile.columnTypes().get(0));
+    }
+
+    @Test
+    void integerAndDecimalColumnsMakeMixedFile() throws IOException {
+        final var lines = new ArrayList<String>();
+        for (int i = 0; i < LINES; i++) {
+            lines.add("\"" + i + "\";\"" + i + ".5\"");
+        }
+        final TypeProfile profile = detect(lines);
+
+        assertEquals(DataType.DOUBLE, profile.dataType());
+        assertEquals(List.of(ColumnType.INT, ColumnType.DOUBLE), profile.columnTypes());
+        assertTrue(profile.isMixed());
+    }
+
+    /**
+     * Lines of a large integer column followed by a small one.
+     */
+    private static List<String> longLines() {
+        final var lines = new ArrayList<String>();
+        for (int i = 0; i < LINES; i++) {
+            lines.add("\"" + (10_000_000_000L + i) + "\";\"" + (i % 10) + "\"");
+        }
+        return lines;
+    }
+
+    private TypeProfile detect(List<String> lines, String... extraLines) throws IOException {
+        final var file = directory.resolve("input.txt");
+        final var allLines = new ArrayList<>(lines);
+        allLines.addAll(List.of(extraLines));
+        Files.write(file, allLines);
+        return DynamicTypeDetector.detect(file.toFile(), Integer.MAX_VALUE, 1);
+    }
+}
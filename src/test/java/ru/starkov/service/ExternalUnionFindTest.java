@@ -0,0 +1,100 @@
+package ru.starkov.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that linking rows through runs sorted on disk, as under a tiny memory budget, produces exactly the same
+ * groups as linking them through the column index held in memory.
+ */
+class ExternalUnionFindTest {
+
+    private static final int ROWS = 40_000;
+    private static final int MAX_COLUMNS = 5;
+    private static final int DISTINCT_VALUES = 15_000;
+    private static final long TINY_BUDGET = 1 << 10;
+
+    @Test
+    void tinyBudgetFormsTheSameGroupsAsInMemoryIndex() {
+        final List<long[]> rows = randomRows(new Random(3));
+        final var inMemory = new LongUnionFind(rows, 1);
+        final var external = new LongUnionFind(rows, 1, TINY_BUDGET);
+
+        assertEquals(0, inMemory.getSpilledRunCount());
+        assertTrue(external.getSpilledRunCount() > 64, "The runs must be merged in more than one pass");
+        assertSameComponents(rows, inMemory, external);
+    }
+
+    @Test
+    void budgetFittingAllCellsKeepsThemInMemory() {
+        final List<long[]> rows = List.of(
+                new long[]{1, 2, 3},
+                new long[]{4, 2},
+                new long[]{0, 0, 3},
+                new long[]{7},
+                new long[]{4, 0, 9},
+                new long[]{8, 5}
+        );
+        final var inMemory = new LongUnionFind(rows, 1);
+        final var external = new LongUnionFind(rows, 1, 1);
+
+        assertEquals(0, external.getSpilledRunCount());
+        assertSameComponents(rows, inMemory, external);
+    }
+
+    @Test
+    void doubleRowsUnderTinyBudgetFormTheSameGroups() {
+        final List<double[]> rows = randomRows(new Random(5)).stream()
+                .map(row -> {
+                    final var decimals = new double[row.length];
+                    for (int colIndex = 0; colIndex < row.length; colIndex++) {
+                        decimals[colIndex] = row[colIndex] / 4.0;
+                    }
+                    return decimals;
+                })
+                .toList();
+
+        assertSameComponents(rows, new DoubleUnionFind(rows, 1), new DoubleUnionFind(rows, 1, TINY_BUDGET));
+    }
+
+    private static <R> void assertSameComponents(List<R> rows, AbstractUnionFind<R> expected, AbstractUnionFind<R> actual) {
+        assertTrue(expected.getMultiElementComponentCount() > 0, "The rows must share values");
+        assertEquals(expected.getComponentCount(), actual.getComponentCount());
+        assertEquals(expected.getDistinctKeyCount(), actual.getDistinctKeyCount());
+        assertEquals(rowIndexes(rows, expected.groupValues()), rowIndexes(rows, actual.groupValues()));
+    }
+
+    /**
+     * Replaces every row of the groups with its index in the data, so that groups of different engines can be
+     * compared.
+     */
+    private static <R> List<List<Integer>> rowIndexes(List<R> rows, List<List<R>> groups) {
+        final var indexes = new IdentityHashMap<R, Integer>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            indexes.put(rows.get(i), i);
+        }
+        return groups.stream().map(group -> group.stream().map(indexes::get).toList()).toList();
+    }
+
+    /**
+     * Generates rows of different lengths whose values repeat across rows, with about one cell in five empty.
+     */
+    private static List<long[]> randomRows(Random random) {
+        final var rows = new ArrayList<long[]>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            final var row = new long[1 + random.nextInt(MAX_COLUMNS)];
+            for (int colIndex = 0; colIndex < row.length; colIndex++) {
+                row[colIndex] = random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(DISTINCT_VALUES);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,104 @@
+package ru.starkov.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.starkov.Main;
+import ru.starkov.model.DataType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the group query index finds the group of every written value, and no group for values that were
+ * not written.
+ */
+class GroupQueryIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void longValuesAreFoundInTheirColumnOnly() throws IOException {
+        final List<List<long[]>> groups = List.of(
+                List.of(new long[]{11, 22}, new long[]{11, 0, 33}),
+                List.of(new long[]{44}),
+                List.of(new long[]{0, 55})
+        );
+        final var path = directory.resolve("groups.index");
+        GroupQueryIndex.write(path, DataType.LONG, groups, 6);
+        final var index = GroupQueryIndex.open(path);
+
+        assertEquals(DataType.LONG, index.dataType());
+        assertEquals(3, index.groupCount());
+        assertEquals(0, index.findGroup(0, 11));
+        assertEquals(0, index.findGroup(2, "\"33\""));
+        assertEquals(1, index.findGroup(0, "44"));
+        assertEquals(2, index.findGroup(1, 55));
+        assertEquals(GroupQueryIndex.NOT_FOUND, index.findGroup(1, 11), "Value of another column");
+        assertEquals(GroupQueryIndex.NOT_FOUND, index.findGroup(0, 99), "Value never written");
+        assertEquals(GroupQueryIndex.NOT_FOUND, index.findGroup(1, 0), "Empty cell");
+        assertEquals(GroupQueryIndex.NOT_FOUND, index.findGroup(7, 11), "Column beyond every row");
+        final List<long[]> rows = index.groupRows(0, long[].class);
+        assertEquals(2, rows.size());
+        assertArrayEquals(new long[]{11, 0, 33}, rows.get(1));
+        assertThrows(IllegalArgumentException.class, () -> index.findGroup(0, "1.5"));
+    }
+
+    @Test
+    void doubleValuesAreFoundByTheirText() throws IOException {
+        final List<List<double[]>> groups = List.of(
+                List.of(new double[]{1.5, 2.25}),
+                List.of(new double[]{0.0, 1234.5})
+        );
+        final var path = directory.resolve("groups.index");
+        GroupQueryIndex.write(path, DataType.DOUBLE, groups, 3);
+        final var index = GroupQueryIndex.open(path);
+
+        assertEquals(0, index.findGroup(1, "2.25"));
+        assertEquals(1, index.findGroup(1, "\"1234.5\""));
+        assertEquals(GroupQueryIndex.NOT_FOUND, index.findGroup(0, "2.25"));
+        assertArrayEquals(new double[]{0.0, 1234.5}, index.groupRows(1, double[].class).get(0));
+    }
+
+    @Test
+    void findOptionPrintsTheGroupOfHitAndReportsMiss() throws IOException {
+        final var input = directory.resolve("input.txt");
+        Files.write(input, List.of(
+                "\"100\";\"200\"",
+                "\"300\";\"200\"",
+                "\"400\";\"500\""
+        ));
+        final var indexPath = directory.resolve("groups.index").toString();
+        final var output = directory.resolve("output.txt").toString();
+        runMain(input.toString(), "--index=" + indexPath, "--output=" + output);
+
+        final String hit = runMain("--index=" + indexPath, "--find=2:200");
+        final String miss = runMain("--index=" + indexPath, "--find=1:200");
+
+        assertTrue(hit.startsWith("Group 1"), hit);
+        assertTrue(hit.contains("\"100\";\"200\"") && hit.contains("\"300\";\"200\""), hit);
+        assertEquals("No group contains 200 in column 1" + System.lineSeparator(), miss);
+    }
+
+    private static String runMain(String... args) throws IOException {
+        final var captured = new ByteArrayOutputStream();
+        final var original = System.out;
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            Main.main(args);
+        } finally {
+            System.setOut(original);
+        }
+        return captured.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,130 @@
+package ru.starkov.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.starkov.service.metrics.ExecutionMetrics;
+import ru.starkov.service.parser.CellCodec;
+import ru.starkov.service.parser.LongRowParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a gzip-compressed file spanning several blocks is inflated into exactly the bytes of the plain
+ * file, cut into blocks of whole lines, and that both readers extract the same rows from either file.
+ */
+class GzipBlockReaderTest {
+
+    private static final int PLAIN_SIZE = 10 << 20;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void blocksHoldTheBytesOfThePlainFileCutAtLineEnds() throws IOException {
+        final byte[] plain = randomText(new Random(23), "\r\n");
+        final var compressed = compress(directory.resolve("input.txt.gz"), plain);
+
+        final var inflated = new ByteArrayOutputStream(plain.length);
+        int blocks = 0;
+        try (final var reader = new GzipBlockReader(compressed.toFile())) {
+            for (var block = reader.next(); block != null; block = reader.next()) {
+                final var bytes = Arrays.copyOf(block.bytes(), block.length());
+                assertEquals(block.length(), block.buffer().remaining());
+                assertEquals('\n', bytes[bytes.length - 1], "Every block must end with a whole line");
+                inflated.writeBytes(bytes);
+                blocks++;
+            }
+            assertNull(reader.next());
+        }
+
+        assertTrue(blocks > 2, "The file must span several blocks");
+        assertArrayEquals(plain, inflated.toByteArray());
+    }
+
+    @Test
+    void streamHoldsTheBytesOfThePlainFile() throws IOException {
+        final byte[] plain = randomText(new Random(24), "\n");
+        final var compressed = compress(directory.resolve("input.txt.gz"), plain);
+
+        try (final var stream = new GzipBlockReader(compressed.toFile()).asInputStream()) {
+            assertArrayEquals(plain, stream.readAllBytes());
+        }
+    }
+
+    @Test
+    void readersExtractTheSameRowsAsFromThePlainFile() throws IOException {
+        final byte[] plain = randomText(new Random(25), "\n");
+        final var plainFile = Files.write(directory.resolve("input.txt"), plain).toFile();
+        final var compressed = compress(directory.resolve("input.txt.gz"), plain).toFile();
+        final var mapped = new MappedDataExtractor<>(LongRowParser::new);
+        final var streaming = new ValidDataExtractor<>(CellCodec.longs(), 2, new ExecutionMetrics());
+
+        assertTrue(GzipBlockReader.isGzip(compressed));
+        assertFalse(GzipBlockReader.isGzip(plainFile));
+        assertEquals(
+                mapped.getValidData(plainFile).stream().map(Arrays::toString).toList(),
+                mapped.getValidData(compressed).stream().map(Arrays::toString).toList()
+        );
+        assertEquals(streaming.getValidData(plainFile), streaming.getValidData(compressed));
+    }
+
+    @Test
+    void truncatedFileFailsToRead() throws IOException {
+        final byte[] plain = randomText(new Random(26), "\n");
+        final var compressed = compress(directory.resolve("input.txt.gz"), plain);
+        final byte[] bytes = Files.readAllBytes(compressed);
+        Files.write(compressed, Arrays.copyOf(bytes, bytes.length / 2));
+
+        try (final var reader = new GzipBlockReader(compressed.toFile())) {
+            assertThrows(IOException.class, () -> {
+                while (reader.next() != null) {
+                    // reads until the truncated stream fails
+                }
+            });
+        }
+    }
+
+    private static Path compress(Path path, byte[] plain) throws IOException {
+        try (final var output = new GZIPOutputStream(Files.newOutputStream(path))) {
+            output.write(plain);
+        }
+        return path;
+    }
+
+    /**
+     * Generates lines of up to four quoted integers, about one cell in two hundred invalid, until the text exceeds
+     * {@value #PLAIN_SIZE} bytes.
+     */
+    private static byte[] randomText(Random random, String lineTerminator) {
+        final var text = new StringBuilder(PLAIN_SIZE + 64);
+        while (text.length() < PLAIN_SIZE) {
+            final int columns = 1 + random.nextInt(4);
+            for (int colIndex = 0; colIndex < columns; colIndex++) {
+                if (colIndex > 0) {
+                    text.append(';');
+                }
+                if (random.nextInt(200) == 0) {
+                    text.append("\"1\"2\"");
+                } else {
+                    text.append('"').append(random.nextInt(1_000_000)).append('"');
+                }
+            }
+            text.append(lineTerminator);
+        }
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
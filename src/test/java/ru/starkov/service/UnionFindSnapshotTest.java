@@ -0,0 +1,116 @@
+package ru.starkov.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that linking the rows of a file in batches, resuming every time from the saved snapshot, produces the
+ * same groups as linking all rows at once.
+ */
+class UnionFindSnapshotTest {
+
+    private static final int ROWS = 20_000;
+    private static final int MAX_COLUMNS = 4;
+    private static final int DISTINCT_VALUES = 8_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void longBatchesFormTheSameGroupsAsSingleRun() throws IOException {
+        final var random = new Random(11);
+        final List<long[]> first = randomRows(random, ROWS);
+        final List<long[]> second = randomRows(random, ROWS);
+        second.addAll(first.subList(0, 100));
+        final var snapshotPath = directory.resolve("groups.snapshot");
+
+        final var firstRun = new LongUnionFind(UnionFindSnapshot.empty(long[].class), first);
+        firstRun.snapshot().write(snapshotPath);
+        final var secondRun = new LongUnionFind(UnionFindSnapshot.read(snapshotPath, long[].class), second);
+        final var all = new ArrayList<>(first);
+        all.addAll(second);
+        final var singleRun = new LongUnionFind(RowDeduplicator.distinct(all));
+
+        final int firstDistinct = RowDeduplicator.distinct(first).size();
+        assertEquals(firstDistinct, firstRun.getAppendedRowCount());
+        assertEquals(singleRun.rawData.size() - firstDistinct, secondRun.getAppendedRowCount(),
+                "Rows of the first batch must not be appended again");
+        assertTrue(secondRun.getChangedComponentCount() <= secondRun.getComponentCount());
+        assertEquals(singleRun.getComponentCount(), secondRun.getComponentCount());
+        assertEquals(singleRun.getDistinctKeyCount(), secondRun.getDistinctKeyCount());
+        assertEquals(cells(singleRun.groupValues()), cells(secondRun.groupValues()));
+    }
+
+    @Test
+    void doubleBatchesFormTheSameGroupsAsSingleRun() throws IOException {
+        final var random = new Random(12);
+        final List<double[]> first = randomRows(random, ROWS).stream().map(UnionFindSnapshotTest::toDecimalRow).toList();
+        final List<double[]> second = randomRows(random, ROWS).stream().map(UnionFindSnapshotTest::toDecimalRow).toList();
+        final var snapshotPath = directory.resolve("groups.snapshot");
+
+        new DoubleUnionFind(UnionFindSnapshot.empty(double[].class), first).snapshot().write(snapshotPath);
+        final var secondRun = new DoubleUnionFind(UnionFindSnapshot.read(snapshotPath, double[].class), second);
+        final var all = new ArrayList<>(first);
+        all.addAll(second);
+        final var singleRun = new DoubleUnionFind(RowDeduplicator.distinct(all));
+
+        assertEquals(singleRun.getComponentCount(), secondRun.getComponentCount());
+        assertEquals(cells(singleRun.groupValues()), cells(secondRun.groupValues()));
+    }
+
+    @Test
+    void snapshotOfOtherRowTypeIsRejected() throws IOException {
+        final var snapshotPath = directory.resolve("groups.snapshot");
+        new LongUnionFind(UnionFindSnapshot.empty(long[].class), List.of(new long[]{1, 2})).snapshot().write(snapshotPath);
+
+        assertThrows(IOException.class, () -> UnionFindSnapshot.read(snapshotPath, double[].class));
+    }
+
+    /**
+     * Replaces every row of the groups with the text of its cells, so that groups of different engines can be
+     * compared by content.
+     */
+    private static <R> List<List<String>> cells(List<List<R>> groups) {
+        return groups.stream()
+                .map(group -> group.stream().map(UnionFindSnapshotTest::rowText).toList())
+                .toList();
+    }
+
+    private static String rowText(Object row) {
+        return row instanceof long[] values ? Arrays.toString(values) : Arrays.toString((double[]) row);
+    }
+
+    /**
+     * Generates rows of different lengths whose values repeat across rows, with about one cell in five empty.
+     */
+    private static List<long[]> randomRows(Random random, int count) {
+        final var rows = new ArrayList<long[]>(count);
+        for (int i = 0; i < count; i++) {
+            final var row = new long[1 + random.nextInt(MAX_COLUMNS)];
+            for (int colIndex = 0; colIndex < row.length; colIndex++) {
+                row[colIndex] = random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(DISTINCT_VALUES);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static double[] toDecimalRow(long[] row) {
+        final var decimals = new double[row.length];
+        for (int colIndex = 0; colIndex < row.length; colIndex++) {
+            decimals[colIndex] = row[colIndex] / 10.0;
+        }
+        return decimals;
+    }
+}
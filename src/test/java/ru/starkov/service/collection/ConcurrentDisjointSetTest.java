@@ -0,0 +1,107 @@
+package ru.starkov.service.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that unions performed from many threads at once build the same sets as the same unions performed
+ * one after another.
+ */
+class ConcurrentDisjointSetTest {
+
+    private static final int ELEMENTS = 100_000;
+    private static final int UNIONS = 80_000;
+    private static final int THREADS = 8;
+
+    @Test
+    void concurrentUnionsBuildTheSameSetsAsSequentialOnes() throws Exception {
+        final var random = new Random(7);
+        final int[][] pairs = new int[UNIONS][];
+        for (int i = 0; i < UNIONS; i++) {
+            pairs[i] = new int[]{random.nextInt(ELEMENTS), random.nextInt(ELEMENTS)};
+        }
+        final int[] expectedRoots = sequentialRoots(pairs);
+
+        final var disjointSet = new ConcurrentDisjointSet(ELEMENTS);
+        final var start = new CountDownLatch(1);
+        final var tasks = new ArrayList<Callable<Void>>(THREADS);
+        for (int thread = 0; thread < THREADS; thread++) {
+            final int first = thread;
+            tasks.add(() -> {
+                start.await();
+                for (int i = first; i < UNIONS; i += THREADS) {
+                    disjointSet.union(pairs[i][0], pairs[i][1]);
+                    disjointSet.find(pairs[(i + 1) % UNIONS][0]);
+                }
+                return null;
+            });
+        }
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        }
+
+        for (int i = 0; i < ELEMENTS; i++) {
+            assertEquals(expectedRoots[i], disjointSet.find(i), "Root of element " + i);
+        }
+    }
+
+    @Test
+    void everySetIsRootedAtItsSmallestElement() {
+        final var disjointSet = new ConcurrentDisjointSet(10);
+        disjointSet.union(9, 4);
+        disjointSet.union(4, 7);
+        disjointSet.union(7, 2);
+        disjointSet.union(5, 6);
+
+        assertEquals(2, disjointSet.find(9));
+        assertEquals(2, disjointSet.find(4));
+        assertEquals(5, disjointSet.find(6));
+        assertEquals(3, disjointSet.find(3));
+    }
+
+    /**
+     * Returns the smallest element of the set of every element, which is the root a {@link ConcurrentDisjointSet}
+     * ends up with.
+     */
+    private static int[] sequentialRoots(int[][] pairs) {
+        final int[] parent = new int[ELEMENTS];
+        for (int i = 0; i < ELEMENTS; i++) {
+            parent[i] = i;
+        }
+        for (int[] pair : pairs) {
+            final int rootX = root(parent, pair[0]);
+            final int rootY = root(parent, pair[1]);
+            parent[Math.max(rootX, rootY)] = Math.min(rootX, rootY);
+        }
+        final int[] roots = new int[ELEMENTS];
+        for (int i = 0; i < ELEMENTS; i++) {
+            roots[i] = root(parent, i);
+        }
+        return roots;
+    }
+
+    private static int root(int[] parent, int index) {
+        while (parent[index] != index) {
+            parent[index] = parent[parent[index]];
+            index = parent[index];
+        }
+        return index;
+    }
+}
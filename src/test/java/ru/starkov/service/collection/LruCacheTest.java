@@ -0,0 +1,64 @@
+package ru.starkov.service.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the cache evicts the least recently used entry, reads included, and reports every evicted or
+ * replaced value to its listener exactly once.
+ */
+class LruCacheTest {
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        final var evicted = new ArrayList<String>();
+        final var cache = new LruCache<String, Integer>(2, (key, value) -> evicted.add(key + "=" + value));
+
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(1, cache.get("a"));
+        cache.put("c", 3);
+
+        assertEquals(List.of("b=2"), evicted);
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.get("a"));
+        assertEquals(3, cache.get("c"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void replacedValueIsReportedUnlessItIsTheSame() {
+        final var evicted = new ArrayList<String>();
+        final var cache = new LruCache<String, String>(2, (key, value) -> evicted.add(value));
+        final var value = "first";
+
+        cache.put("a", value);
+        cache.put("a", value);
+        cache.put("a", "second");
+
+        assertEquals(List.of("first"), evicted);
+        assertEquals("second", cache.get("a"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void removalOfStaleValueIsIgnoredAndNotReported() {
+        final var evicted = new ArrayList<String>();
+        final var cache = new LruCache<String, String>(1, (key, value) -> evicted.add(value));
+        cache.put("a", "current");
+
+        assertFalse(cache.remove("a", "stale"));
+        assertTrue(cache.remove("a", "current"));
+        assertEquals(0, cache.size());
+        assertEquals(List.of(), evicted);
+        assertThrows(IllegalArgumentException.class, () -> new LruCache<String, String>(0, (key, v) -> { }));
+    }
+}
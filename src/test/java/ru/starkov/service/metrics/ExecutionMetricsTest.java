@@ -0,0 +1,48 @@
+package ru.starkov.service.metrics;
+
+import org.junit.jupiter.api.Test;
+import ru.starkov.model.ColumnType;
+import ru.starkov.model.DataType;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that attributes are rendered as JSON values of their own type and that the snapshot counters are
+ * reported by runs with a snapshot only.
+ */
+class ExecutionMetricsTest {
+
+    @Test
+    void attributesKeepTheirJsonType() {
+        final var metrics = new ExecutionMetrics();
+        metrics.attribute("dataType", DataType.LONG);
+        metrics.attribute("columnTypes", List.of(ColumnType.LONG, ColumnType.INT));
+        metrics.attribute("threads", 4);
+        metrics.attribute("path", "C:\\data \"x\"");
+
+        final String json = metrics.toJson();
+
+        assertTrue(json.contains("\"dataType\": \"LONG\",\n"), json);
+        assertTrue(json.contains("\"columnTypes\": [\"LONG\", \"INT\"],\n"), json);
+        assertTrue(json.contains("\"threads\": 4,\n"), json);
+        assertTrue(json.contains("\"path\": \"C:\\\\data \\\"x\\\"\",\n"), json);
+    }
+
+    @Test
+    void snapshotCountersAreReportedOnlyWithSnapshot() {
+        final var withoutSnapshot = new ExecutionMetrics();
+        withoutSnapshot.add(ExecutionMetrics.Counter.COMPONENTS, 2);
+        final var withSnapshot = new ExecutionMetrics();
+        withSnapshot.measure(ExecutionMetrics.Phase.LOAD_SNAPSHOT, () -> null);
+        withSnapshot.add(ExecutionMetrics.Counter.APPENDED_ROWS, 3);
+
+        assertTrue(withoutSnapshot.toJson().contains("\"components\": 2"));
+        assertFalse(withoutSnapshot.toJson().contains("appendedRows"));
+        assertFalse(withoutSnapshot.toJson().contains("changedComponents"));
+        assertTrue(withSnapshot.toJson().contains("\"appendedRows\": 3"));
+        assertTrue(withSnapshot.toJson().contains("\"changedComponents\": 0"));
+    }
+}
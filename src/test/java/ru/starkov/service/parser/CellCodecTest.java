@@ -0,0 +1,124 @@
+package ru.starkov.service.parser;
+
+import org.junit.jupiter.api.Test;
+import ru.starkov.model.ColumnType;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks that the cell codecs accept exactly the cells accepted by the regular expressions of the original
+ * implementation and parse them into the same values, boundary cases included.
+ */
+class CellCodecTest {
+
+    private static final CellCodec<Long> ORIGINAL_LONGS = CellCodec.of(
+            s -> s.matches("^\"\\d*\"$"),
+            s -> s.isEmpty() ? 0L : Long.parseLong(s)
+    );
+    private static final CellCodec<Double> ORIGINAL_DOUBLES = CellCodec.of(
+            s -> s.matches("^\"\\d+(\\.\\d+\"$)?"),
+            s -> s.isEmpty() ? 0.0 : Double.parseDouble(s)
+    );
+    private static final List<String> CELLS = List.of(
+            "", "\"", "\"\"", "\"\"\"", "\"0\"", "\"007\"", "\"123\"", "\"123", "123\"", "123", "\"12a\"", "\"-1\"",
+            "\"+1\"", "\" 1\"", "\"1.5\"", "\"1.5", "\"1.\"", "\".5\"", "\"1.5.5\"", "\"1,5\"", "\"0.0\"", "\"1e5\"",
+            "\"1\"2\"", "\"1.5\"\"", "\"9223372036854775807\"", "\"000000000000000000009\""
+    );
+
+    @Test
+    void longCellsMatchOriginalRegex() {
+        for (final String cell : CELLS) {
+            assertEquals(ORIGINAL_LONGS.decode(cell, 0, cell.length()), CellCodec.longs().decode(cell, 0, cell.length()), cell);
+        }
+    }
+
+    @Test
+    void longCellsAtTheLimitsOfLong() {
+        assertEquals(0L, decodeLong("\"\""));
+        assertEquals(Long.MAX_VALUE, decodeLong("\"9223372036854775807\""));
+        assertNull(decodeLong("\"9223372036854775808\""), "One past the maximum");
+        assertNull(decodeLong("\"92233720368547758070\""), "Ten times the maximum");
+        assertNull(decodeLong("\"99999999999999999999\""));
+        assertEquals(LongCellCodec.INVALID, LongCellCodec.INSTANCE.parse("\"1x\"", 0, 4));
+    }
+
+    @Test
+    void doubleCellsMatchOriginalRegexIncludingItsQuirk() {
+        for (final String cell : CELLS) {
+            assertEquals(ORIGINAL_DOUBLES.decode(cell, 0, cell.length()), CellCodec.doubles().decode(cell, 0, cell.length()), cell);
+        }
+        assertNull(decodeDouble("\"123\""), "A quoted integer is not a decimal cell");
+        assertNull(decodeDouble("\"\""), "An empty cell is not a decimal cell");
+        assertEquals(123.0, decodeDouble("\"123"), "A quote followed by an integer part is");
+        assertEquals(Double.NaN, DoubleCellCodec.INSTANCE.parse("\"\"", 0, 2));
+    }
+
+    @Test
+    void doubleCellsAreRoundedLikeParseDouble() {
+        final var random = new Random(16);
+        for (int i = 0; i < 100_000; i++) {
+            final int integerDigits = 1 + random.nextInt(10);
+            final int fractionDigits = 1 + random.nextInt(17);
+            final var number = new StringBuilder();
+            for (int digit = 0; digit < integerDigits + fractionDigits; digit++) {
+                if (digit == integerDigits) {
+                    number.append('.');
+                }
+                number.append(random.nextInt(10));
+            }
+            assertEquals(Double.parseDouble(number.toString()), decodeDouble("\"" + number + "\""), number.toString());
+        }
+        assertEquals(0.1, decodeDouble("\"0.1\""));
+        assertEquals(999999999999999.9, decodeDouble("\"999999999999999.9\""), "Sixteen significant digits");
+        assertEquals(1.2345678901234568E19, decodeDouble("\"12345678901234567890"));
+        assertEquals(Double.parseDouble("0.30000000000000004"), decodeDouble("\"0.30000000000000004\""));
+    }
+
+    @Test
+    void cellsAreDecodedWithinTheirRangeOfTheLine() {
+        final var line = "\"12\";\"3.5\";\"\"";
+
+        assertEquals(12L, CellCodec.longs().decode(line, 0, 4));
+        assertEquals(3.5, CellCodec.doubles().decode(line, 5, 10));
+        assertEquals(0L, CellCodec.longs().decode(line, 11, 13));
+        assertNull(CellCodec.longs().decode(line, 0, 5));
+    }
+
+    @Test
+    void stringCellsLoseTheirQuotes() {
+        assertEquals("abc", decodeString("\"abc\""));
+        assertEquals("abc", decodeString("abc"));
+        assertEquals("a b", decodeString("\"a\" b\""));
+        assertEquals("", decodeString("\"\""));
+        assertNull(decodeString(""), "A missing cell");
+    }
+
+    @Test
+    void mixedCellsAreDecodedByTheTypeOfTheirColumn() {
+        final var codec = CellCodec.mixed(List.of(ColumnType.INT, ColumnType.DOUBLE, ColumnType.LONG));
+
+        assertEquals(7L, codec.decode("\"7\"", 0, 3, 0));
+        assertEquals(0L, codec.decode("\"\"", 0, 2, 2));
+        assertNull(codec.decode("\"1.5\"", 0, 5, 0), "A decimal cell in an integer column");
+        assertEquals(Double.doubleToLongBits(1.5), codec.decode("\"1.5\"", 0, 5, 1));
+        assertNull(codec.decode("\"7\"", 0, 3, 1), "A quoted integer in a decimal column");
+        assertEquals(Double.doubleToLongBits(2.5), codec.decode("\"2.5\"", 0, 5, 5), "A column beyond the known ones");
+        assertEquals(Double.doubleToLongBits(2.5), codec.decode("\"2.5\"", 0, 5));
+    }
+
+    private static Long decodeLong(String cell) {
+        return CellCodec.longs().decode(cell, 0, cell.length());
+    }
+
+    private static Double decodeDouble(String cell) {
+        return CellCodec.doubles().decode(cell, 0, cell.length());
+    }
+
+    private static String decodeString(String cell) {
+        return CellCodec.strings().decode(cell, 0, cell.length());
+    }
+}